@@ -0,0 +1,165 @@
+package jvlang;
+
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.ClassExpr;
+import jvlang.expr.ConcatExpr;
+import jvlang.expr.Expression;
+import jvlang.expr.FieldAccess;
+import jvlang.expr.FuncCall;
+import jvlang.expr.Literal;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.MethodCall;
+import jvlang.expr.NativeCall;
+import jvlang.expr.ThisExpr;
+import jvlang.expr.UnaryExpr;
+import jvlang.expr.Variable;
+import jvlang.model.FieldDeclaration;
+import jvlang.stmt.Assignment;
+import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.ExprStatement;
+import jvlang.stmt.FuncDefinition;
+import jvlang.stmt.IfStatement;
+import jvlang.stmt.LoopStatement;
+import jvlang.stmt.ReturnStatement;
+import jvlang.stmt.Statement;
+import jvlang.stmt.VarDeclaration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 复制语法树：只保留Parser与Optimizer的结果，
+ * Resolver计算的地址、执行时捕获的作用域、推断的变量类型、调用点缓存、JIT与记忆化的结果都不复制
+ * 同一棵语法树执行时会写入这些状态，因此每次执行使用一份副本（见Program.copy）；
+ * 字面量不可变，由副本共享
+ * @author Yumerain
+ */
+class Copier {
+
+    Program copy(Program program) {
+        Names previous = Names.enter(program.names);
+        try {
+            return new Program(statements(program.statements), program.names);
+        } finally {
+            Names.restore(previous);
+        }
+    }
+
+    private List<Statement> statements(List<Statement> statements) {
+        List<Statement> result = new ArrayList<>(statements.size());
+        for (Statement stmt : statements) {
+            result.add(statement(stmt));
+        }
+        return result;
+    }
+
+    private Statement statement(Statement stmt) {
+        if (stmt instanceof VarDeclaration) {
+            VarDeclaration declaration = (VarDeclaration) stmt;
+            VarDeclaration copy = new VarDeclaration(declaration.identifier, expression(declaration.initializer));
+            copy.type = declaration.type;
+            return copy;
+        }
+        if (stmt instanceof Assignment) {
+            Assignment assignment = (Assignment) stmt;
+            return new Assignment(expression(assignment.target), expression(assignment.value));
+        }
+        if (stmt instanceof ExprStatement) {
+            return new ExprStatement(expression(((ExprStatement) stmt).expression));
+        }
+        if (stmt instanceof ReturnStatement) {
+            return new ReturnStatement(expression(((ReturnStatement) stmt).expression));
+        }
+        if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            return new IfStatement(expression(ifStmt.condition), statements(ifStmt.thenBranch),
+                    ifStmt.elseBranch != null ? statements(ifStmt.elseBranch) : null);
+        }
+        if (stmt instanceof LoopStatement) {
+            LoopStatement loop = (LoopStatement) stmt;
+            return new LoopStatement(expression(loop.condition), statements(loop.body));
+        }
+        if (stmt instanceof FuncDefinition) {
+            return function((FuncDefinition) stmt);
+        }
+        if (stmt instanceof ClassDefinition) {
+            ClassDefinition classDef = (ClassDefinition) stmt;
+            List<FieldDeclaration> fields = new ArrayList<>(classDef.fields.size());
+            for (FieldDeclaration field : classDef.fields) {
+                fields.add(new FieldDeclaration(field.id, expression(field.initializer)));
+            }
+            List<FuncDefinition> methods = new ArrayList<>(classDef.methods.size());
+            for (FuncDefinition method : classDef.methods) {
+                methods.add(function(method));
+            }
+            return new ClassDefinition(classDef.name, fields, methods);
+        }
+        throw new JvsException("Unsupported statement: " + stmt.getClass().getSimpleName());
+    }
+
+    private FuncDefinition function(FuncDefinition function) {
+        return new FuncDefinition(function.name, function.parameters, statements(function.body));
+    }
+
+    private List<Expression> expressions(List<Expression> expressions) {
+        List<Expression> result = new ArrayList<>(expressions.size());
+        for (Expression expr : expressions) {
+            result.add(expression(expr));
+        }
+        return result;
+    }
+
+    private Expression expression(Expression expr) {
+        if (expr == null || expr instanceof Literal) {
+            return expr;
+        }
+        if (expr instanceof Variable) {
+            return new Variable(((Variable) expr).id);
+        }
+        if (expr instanceof ThisExpr) {
+            return new ThisExpr();
+        }
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            return new BinaryExpr(expression(binary.left), binary.operator, expression(binary.right));
+        }
+        if (expr instanceof LogicalExpr) {
+            LogicalExpr logical = (LogicalExpr) expr;
+            return new LogicalExpr(expression(logical.left), logical.operator, expression(logical.right));
+        }
+        if (expr instanceof ConcatExpr) {
+            return new ConcatExpr(expressions(((ConcatExpr) expr).parts));
+        }
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            return new UnaryExpr(unary.operator, expression(unary.right));
+        }
+        if (expr instanceof FuncCall) {
+            FuncCall call = (FuncCall) expr;
+            return new FuncCall(call.id, expressions(call.args));
+        }
+        if (expr instanceof NativeCall) {
+            NativeCall call = (NativeCall) expr;
+            return new NativeCall(call.function, expressions(call.args));
+        }
+        if (expr instanceof MethodCall) {
+            MethodCall call = (MethodCall) expr;
+            return new MethodCall(expression(call.target), call.methodId, expressions(call.arguments));
+        }
+        if (expr instanceof FieldAccess) {
+            FieldAccess field = (FieldAccess) expr;
+            return new FieldAccess(expression(field.target), field.fieldId);
+        }
+        if (expr instanceof ClassExpr) {
+            ClassExpr classExpr = (ClassExpr) expr;
+            Map<String, Expression> initializers = new LinkedHashMap<>();
+            for (Map.Entry<String, Expression> entry : classExpr.fieldInitializers.entrySet()) {
+                initializers.put(entry.getKey(), expression(entry.getValue()));
+            }
+            return new ClassExpr(classExpr.className, initializers);
+        }
+        throw new JvsException("Unsupported expression: " + expr.getClass().getSimpleName());
+    }
+}
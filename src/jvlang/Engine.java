@@ -0,0 +1,20 @@
+package jvlang;
+
+/**
+ * 执行引擎：AST为树遍历解释器（参考实现），VM为字节码虚拟机，
+ * JIT把顶层函数与类方法编译为JVM字节码（隐藏类），其余代码仍由解释器执行
+ * 通过系统属性jvs.engine选择，例如 -Djvs.engine=vm
+ * @author Yumerain
+ */
+public enum Engine {
+
+    AST,
+    VM,
+    JIT;
+
+    public static Engine current() {
+        String name = System.getProperty("jvs.engine");
+        return name == null ? AST : valueOf(name.trim().toUpperCase());
+    }
+
+}
@@ -1,17 +1,20 @@
 package jvlang;
 
-public class ExecutionResult {
-    public static final ExecutionResult CONTINUE = new ExecutionResult(null, false);
+/**
+ * 语句执行的完成状态
+ * 返回值不随状态传递，由return语句写入函数作用域的返回值寄存器，每次返回不再分配对象
+ * @author Yumerain
+ */
+public final class ExecutionResult {
 
-    public final Object returnValue;
-    public final boolean isReturn;
+    // 正常执行完毕，继续执行下一条语句
+    public static final int CONTINUE = 0;
+    // 执行了return，返回值已写入函数作用域
+    public static final int RETURN = 1;
+    // return后是函数或方法调用：被调函数与实参已写入函数作用域，由FuncDefinition.call继续执行
+    public static final int TAIL_CALL = 2;
 
-    private ExecutionResult(Object returnValue, boolean isReturn) {
-        this.returnValue = returnValue;
-        this.isReturn = isReturn;
+    private ExecutionResult() {
     }
 
-    public static ExecutionResult returnWith(Object value) {
-        return new ExecutionResult(value, true);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,193 @@
+package jvlang;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * 由MethodHandle实现的原生函数：把Java的静态方法或实例方法绑定为脚本函数，经Natives.bind注册
+ * 参数与返回值的转换在绑定时按方法签名组合进MethodHandle，调用时不再反射或逐个判断类型：
+ * 整数参数(long、int、short、byte)接受整数，浮点参数(double、float)接受数字，boolean接受布尔值，
+ * 其它引用类型按类型检查；返回的int等整数转为Long，float转为Double，char转为String，void返回null
+ * @author Yumerain
+ */
+public final class HostFunction implements NativeFunction {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType INVOKER = MethodType.methodType(Object.class, Object[].class);
+
+    private final String name;
+    // 已组合转换的调用：(Object[])Object
+    private final MethodHandle invoker;
+
+    private HostFunction(String name, MethodHandle invoker) {
+        this.name = name;
+        this.invoker = invoker;
+    }
+
+    @Override
+    public Object call(Output output, Object[] args) {
+        try {
+            return (Object) invoker.invokeExact(args);
+        } catch (JvsException | Error e) {
+            throw e;
+        } catch (ClassCastException e) {
+            throw new JvsException("Invalid argument for function " + name + ": " + e.getMessage(), e);
+        } catch (Throwable e) {
+            throw new JvsException("Function " + name + " failed: " + e, e);
+        }
+    }
+
+    // 为handle组合参数与返回值转换，实例方法需先bindTo接收者
+    public static Native of(String name, MethodHandle handle) {
+        MethodType type = handle.type();
+        int arity = type.parameterCount();
+        MethodHandle adapted = handle;
+        for (int i = 0; i < arity; i++) {
+            MethodHandle converter = argument(type.parameterType(i));
+            if (converter != null) {
+                adapted = MethodHandles.filterArguments(adapted, i, converter);
+            }
+        }
+        MethodHandle result = result(type.returnType());
+        if (result != null) {
+            adapted = MethodHandles.filterReturnValue(adapted, result);
+        }
+        adapted = adapted.asType(adapted.type().generic()).asSpreader(Object[].class, arity).asType(INVOKER);
+        return new Native(name, arity, new HostFunction(name, adapted));
+    }
+
+    // 按名称查找公开方法，同名的公开方法只能有一个
+    static Method method(Class<?> type, String method, boolean isStatic) {
+        Method found = null;
+        for (Method candidate : type.getMethods()) {
+            if (!candidate.getName().equals(method) || Modifier.isStatic(candidate.getModifiers()) != isStatic) {
+                continue;
+            }
+            if (found != null) {
+                throw new JvsException("Ambiguous method " + type.getName() + "." + method);
+            }
+            found = candidate;
+        }
+        if (found == null) {
+            throw new JvsException("No public " + (isStatic ? "static " : "") + "method "
+                    + type.getName() + "." + method);
+        }
+        return found;
+    }
+
+    static MethodHandle unreflect(Method method) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new JvsException("Cannot access method " + method, e);
+        }
+    }
+
+    // 脚本值转为参数类型的转换，不需要转换时返回null
+    private static MethodHandle argument(Class<?> type) {
+        String name;
+        if (type == long.class || type == Long.class) name = "toLong";
+        else if (type == int.class || type == Integer.class) name = "toInt";
+        else if (type == short.class || type == Short.class) name = "toShort";
+        else if (type == byte.class || type == Byte.class) name = "toByte";
+        else if (type == double.class || type == Double.class) name = "toDouble";
+        else if (type == float.class || type == Float.class) name = "toFloat";
+        else if (type == boolean.class || type == Boolean.class) name = "toBoolean";
+        // 其它引用类型由asType检查，String等照常传入
+        else return null;
+        Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+        return converter(name, primitive, Object.class).asType(MethodType.methodType(type, Object.class));
+    }
+
+    // 返回值转为脚本值的转换，不需要转换时返回null
+    private static MethodHandle result(Class<?> type) {
+        if (type == long.class || type == int.class || type == short.class || type == byte.class) {
+            return converter("fromLong", Object.class, long.class).asType(MethodType.methodType(Object.class, type));
+        }
+        if (type == float.class) return converter("fromDouble", Object.class, double.class)
+                .asType(MethodType.methodType(Object.class, float.class));
+        if (type == char.class) return converter("fromChar", Object.class, char.class);
+        if (type == Integer.class || type == Short.class || type == Byte.class
+                || type == Float.class || type == Character.class) {
+            return converter("fromBoxed", Object.class, Object.class).asType(MethodType.methodType(Object.class, type));
+        }
+        return null;
+    }
+
+    private static MethodHandle converter(String name, Class<?> returnType, Class<?> parameterType) {
+        try {
+            return LOOKUP.findStatic(HostFunction.class, name, MethodType.methodType(returnType, parameterType));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long toLong(Object value) {
+        if (!(value instanceof Long)) {
+            throw new JvsException("Expected integer argument but got " + value);
+        }
+        return (Long) value;
+    }
+
+    private static int toInt(Object value) {
+        long number = toLong(value);
+        if (number != (int) number) {
+            throw new JvsException("Integer argument out of range: " + number);
+        }
+        return (int) number;
+    }
+
+    private static short toShort(Object value) {
+        long number = toLong(value);
+        if (number != (short) number) {
+            throw new JvsException("Integer argument out of range: " + number);
+        }
+        return (short) number;
+    }
+
+    private static byte toByte(Object value) {
+        long number = toLong(value);
+        if (number != (byte) number) {
+            throw new JvsException("Integer argument out of range: " + number);
+        }
+        return (byte) number;
+    }
+
+    private static double toDouble(Object value) {
+        if (!(value instanceof Long) && !(value instanceof Double)) {
+            throw new JvsException("Expected number argument but got " + value);
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    private static float toFloat(Object value) {
+        return (float) toDouble(value);
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (!(value instanceof Boolean)) {
+            throw new JvsException("Expected boolean argument but got " + value);
+        }
+        return (Boolean) value;
+    }
+
+    private static Object fromLong(long value) {
+        return Numbers.box(value);
+    }
+
+    private static Object fromDouble(double value) {
+        return value;
+    }
+
+    private static Object fromChar(char value) {
+        return String.valueOf(value);
+    }
+
+    // 装箱的Integer等同样转为脚本的数字与字符串，null照常返回
+    private static Object fromBoxed(Object value) {
+        return Numbers.toScript(value);
+    }
+}
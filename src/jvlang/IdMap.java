@@ -0,0 +1,114 @@
+package jvlang;
+
+import java.util.Arrays;
+
+/**
+ * 以名称编号(Names)为键的散列表，键为int，开放寻址，不装箱键也不比较字符串
+ * 作用域中的函数、类与变量声明，类定义中的方法与字段槽位都以此保存；非线程安全
+ * @author Yumerain
+ */
+public final class IdMap<V> {
+
+    // 键+1，0为空
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public IdMap() {
+        this(8);
+    }
+
+    public IdMap(int expected) {
+        int capacity = 8;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int id) {
+        int[] keys = this.keys;
+        int mask = keys.length - 1;
+        for (int i = index(id, mask); ; i = (i + 1) & mask) {
+            int key = keys[i];
+            if (key == id + 1) return (V) values[i];
+            if (key == 0) return null;
+        }
+    }
+
+    public boolean containsKey(int id) {
+        int mask = keys.length - 1;
+        for (int i = index(id, mask); ; i = (i + 1) & mask) {
+            int key = keys[i];
+            if (key == id + 1) return true;
+            if (key == 0) return false;
+        }
+    }
+
+    // 返回被替换的值
+    @SuppressWarnings("unchecked")
+    public V put(int id, V value) {
+        int mask = keys.length - 1;
+        int i = index(id, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == id + 1) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = id + 1;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 所有的键，顺序不定
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != 0) result[n++] = key - 1;
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = index(oldKeys[j] - 1, mask);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    // 编号连续，乘以黄金分割常数打散
+    private static int index(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
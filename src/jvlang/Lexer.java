@@ -1,73 +1,227 @@
 package jvlang;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * 词法分析器
+ * 源码可以是String，也可以从Reader或内存映射的文件中流式读取：只在缓冲区中保留当前标记开始之后的字符，
+ * 配合stream()由Parser按需取标记，源码与标记都不必整体放在内存中。
+ * 字符串字面量中不能有未转义的换行，注释在换行处结束，换行总是标记之间的分界，
+ * 因此很大的String源码可以在换行处分段，由scan(ForkJoinPool)并行扫描后拼接
  * @author Yumerain
  */
 public class Lexer {
 
+    private static final int BUFFER_SIZE = 8192;
+
+    // 并行扫描的最小源码长度，较短的源码分段的开销超过收益
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+    // 并行扫描时每段的最小长度
+    private static final int MIN_CHUNK = 256 << 10;
+
     private final String source;
+    // 标识符登记的符号表
+    final Names names;
+    // String源码的扫描范围止于end（不含）
+    private final int end;
+    // 流式读取时的源码：buffer[0]是源码的第offset个字符，共limit个有效字符
+    private final Reader reader;
+    private char[] buffer;
+    private CharBuffer window;
+    private int offset;
+    private int limit;
+    private boolean drained;
+
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
+    // 标识符登记在当前符号表中（通常为全局符号表）
     public Lexer(String source) {
+        this(source, Names.current());
+    }
+
+    public Lexer(String source, Names names) {
+        this(source, 0, source.length(), names);
+    }
+
+    // 只扫描source中from到end的部分，行号从1开始
+    private Lexer(String source, int from, int end, Names names) {
         this.source = source;
+        this.names = names;
+        this.end = end;
+        this.reader = null;
+        this.start = from;
+        this.current = from;
     }
 
+    // 从reader流式读取源码，不关闭reader
+    public Lexer(Reader reader) {
+        this(reader, Names.current());
+    }
+
+    public Lexer(Reader reader, Names names) {
+        this.source = null;
+        this.names = names;
+        this.end = 0;
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+        this.window = CharBuffer.wrap(buffer);
+    }
+
+    // 以内存映射读取UTF-8编码的脚本文件
+    public static Lexer map(Path file) throws IOException {
+        return new Lexer(new MappedReader(file));
+    }
+
+    // 标记对象的列表，由scan()的结果转换
     public List<Token> tokenize() {
-        List<Token> tokens = new ArrayList<>();
-        Token token;
-        do {
-            token = nextToken();
-            tokens.add(token);
-        } while (token.symbol != Symbol.EOF);
+        return scan().toList();
+    }
+
+    // 扫描全部源码，标记保存为标记流中的偏移与长度，不创建标记对象
+    public TokenStream scan() {
+        TokenStream tokens = reader == null ? new TokenStream(source, current, end, names) : new TokenStream(this, false);
+        while (next(tokens) != Symbol.EOF) {
+            // 继续扫描
+        }
         return tokens;
     }
 
-    private Token nextToken() {
+    // 在公共ForkJoinPool中并行扫描，结果与scan()相同
+    public TokenStream scanParallel() {
+        return scan(ForkJoinPool.commonPool());
+    }
+
+    // 程序缓存与预编译缓存默认顺序扫描，系统属性jvs.parallelLex=true时使用scanParallel()
+    public static boolean parallel() {
+        return "true".equalsIgnoreCase(System.getProperty("jvs.parallelLex"));
+    }
+
+    // 在换行处把源码分段，各段在pool中并行扫描后按顺序拼接，行号按之前各段的行数调整；
+    // 源码较短、从Reader读取、pool只有一个线程或只有一个处理器时顺序扫描（单核上分段扫描比顺序扫描慢）。
+    // 有段扫描出错时重新顺序扫描，以得到与scan()相同的异常与行号
+    public TokenStream scan(ForkJoinPool pool) {
+        if (reader != null || end - current < PARALLEL_THRESHOLD || pool.getParallelism() < 2
+                || Runtime.getRuntime().availableProcessors() < 2) {
+            return scan();
+        }
+        int[] bounds = split(Math.max(MIN_CHUNK, (end - current) / (pool.getParallelism() * 4)));
+        int count = bounds.length - 1;
+        List<ForkJoinTask<Lexer>> tasks = new ArrayList<>(count);
+        TokenStream[] parts = new TokenStream[count];
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            Lexer lexer = new Lexer(source, bounds[i], bounds[i + 1], names);
+            tasks.add(pool.submit(() -> {
+                parts[index] = lexer.scan();
+                return lexer;
+            }));
+        }
+        int[] lineOffsets = new int[count];
+        int lines = line - 1;
+        try {
+            for (int i = 0; i < count; i++) {
+                lineOffsets[i] = lines;
+                lines += tasks.get(i).join().line - 1;
+            }
+        } catch (JvsException e) {
+            for (ForkJoinTask<Lexer> task : tasks) {
+                task.cancel(false);
+            }
+            return scan();
+        }
+        line = lines + 1;
+        start = current = end;
+        return TokenStream.concat(source, parts, lineOffsets, pool);
+    }
+
+    // 分段的边界：每段约size个字符，除最后一段外都止于换行之后
+    private int[] split(int size) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(current);
+        int from = current;
+        while (end - from > size + size / 2) {
+            int newline = source.indexOf('\n', from + size);
+            if (newline < 0 || newline + 1 >= end) {
+                break;
+            }
+            from = newline + 1;
+            bounds.add(from);
+        }
+        bounds.add(end);
+        int[] result = new int[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // 流式的标记流：Parser取用时才扫描，只保留最近的标记；适合很大的脚本，new Parser(lexer.stream()).parse()
+    public TokenStream stream() {
+        return new TokenStream(this, true);
+    }
+
+    // 扫描下一个标记加入标记流
+    Symbol next(TokenStream tokens) {
+        return nextToken(tokens);
+    }
+
+    private Symbol nextToken(TokenStream tokens) {
         skipWhitespace();
-        if (isAtEnd()) return new Token(Symbol.EOF, line);
+        if (isAtEnd()) return add(tokens, Symbol.EOF);
 
         start = current;
         char c = advance();
 
         // 数字字面量
-        if (Character.isDigit(c)) return number();
+        if (Character.isDigit(c)) return number(tokens);
         // 标识符or关键字
-        if (Character.isLetter(c)) return identifier();
+        if (Character.isLetter(c)) return identifier(tokens);
         // 字符串字面量
-        if (c == '"') return string();
+        if (c == '"') return string(tokens);
         // 处理单字符符号
         switch (c) {
-            case '+': return new Token(Symbol.PLUS, line);
-            case '-': return new Token(Symbol.MINUS, line);
-            case '*': return new Token(Symbol.MULTIPLY, line);
-            case '/': return new Token(Symbol.DIVIDE, line);
-            case '%': return new Token(Symbol.MODULO, line);
-            case '=': return checkNext('=') ? new Token(Symbol.EQUAL, line) : new Token(Symbol.ASSIGN, line);
-            case '!': return checkNext('=') ? new Token(Symbol.NOTEQUAL, line) : new Token(Symbol.NOT, line);
-            case '<': return checkNext('=') ? new Token(Symbol.LESS_EQUAL, line) : new Token(Symbol.LESS, line);
-            case '>': return checkNext('=') ? new Token(Symbol.GREATER_EQUAL, line) : new Token(Symbol.GREATER, line);
-            case '(': return new Token(Symbol.LPAREN, line);
-            case ')': return new Token(Symbol.RPAREN, line);
-            case '{': return new Token(Symbol.LBRACE, line);
-            case '}': return new Token(Symbol.RBRACE, line);
-            case ',': return new Token(Symbol.COMMA, line);
-            case ';': return new Token(Symbol.SEMICOLON, line);
-            case '.': return new Token(Symbol.DOT, line);
+            case '+': return add(tokens, Symbol.PLUS);
+            case '-': return add(tokens, Symbol.MINUS);
+            case '*': return add(tokens, Symbol.MULTIPLY);
+            case '/': return add(tokens, Symbol.DIVIDE);
+            case '%': return add(tokens, Symbol.MODULO);
+            case '=': return add(tokens, checkNext('=') ? Symbol.EQUAL : Symbol.ASSIGN);
+            case '!': return add(tokens, checkNext('=') ? Symbol.NOTEQUAL : Symbol.NOT);
+            case '<': return add(tokens, checkNext('=') ? Symbol.LESS_EQUAL : Symbol.LESS);
+            case '>': return add(tokens, checkNext('=') ? Symbol.GREATER_EQUAL : Symbol.GREATER);
+            case '(': return add(tokens, Symbol.LPAREN);
+            case ')': return add(tokens, Symbol.RPAREN);
+            case '{': return add(tokens, Symbol.LBRACE);
+            case '}': return add(tokens, Symbol.RBRACE);
+            case ',': return add(tokens, Symbol.COMMA);
+            case ';': return add(tokens, Symbol.SEMICOLON);
+            case '.': return add(tokens, Symbol.DOT);
             case '&':
                 if (checkNext('&')) {
-                    return new Token(Symbol.AND, line);
+                    return add(tokens, Symbol.AND);
                 } else {
                     throw new JvsException("Single '&' is not supported at line " + line);
                 }
             case '|':
                 if (checkNext('|')) {
-                    return new Token(Symbol.OR, line);
+                    return add(tokens, Symbol.OR);
                 } else {
                     throw new JvsException("Single '|' is not supported at line " + line);
                 }
@@ -75,7 +229,27 @@ public class Lexer {
         throw new JvsException("Unexpected character '" + c + "' at line " + line + " position " + current);
     }
 
-    private Token number() {
+    // 记录从start到current的标记
+    private Symbol add(TokenStream tokens, Symbol symbol) {
+        return add(tokens, symbol, start, current, -1);
+    }
+
+    // 标记流不读取源码时（流式读取或stream()），值在字符离开缓冲区之前取出
+    private Symbol add(TokenStream tokens, Symbol symbol, int from, int to, int id) {
+        if (!tokens.keepsValues()) {
+            tokens.add(symbol, from, to - from, line, id);
+        } else if (id >= 0) {
+            tokens.add(symbol, from, to - from, line, id, names.nameOf(id));
+        } else if (reader == null) {
+            tokens.add(symbol, from, to - from, line, id, TokenStream.value(symbol, source, from, to, line, names));
+        } else {
+            tokens.add(symbol, from, to - from, line, id, TokenStream.value(symbol, window, from - offset, to - offset, line, names));
+        }
+        return symbol;
+    }
+
+    // 只检查格式，值由TokenStream从源码字符解析
+    private Symbol number(TokenStream tokens) {
         while (Character.isDigit(peek())) advance();
 
         // 检查是否有小数点
@@ -86,75 +260,73 @@ public class Lexer {
             }
             advance(); // 吃掉小数点
             while (Character.isDigit(peek())) advance();
-            return new Token(Symbol.NUMBER, Double.parseDouble(source.substring(start, current)), line);
         }
-        return new Token(Symbol.NUMBER, Long.parseLong(source.substring(start, current)), line);
+        return add(tokens, Symbol.NUMBER);
     }
 
-    private Token identifier() {
+    private Symbol identifier(TokenStream tokens) {
         while (Character.isLetterOrDigit(peek()) || peek() == '_') advance();
-        String text = source.substring(start, current);
         // 关键字
-        Symbol keyword = Symbol.keyword(text);
+        Symbol keyword = reader == null
+                ? Symbol.keyword(source, start, current - start)
+                : Symbol.keyword(window, start - offset, current - start);
         if (keyword != null) {
-            if (keyword == Symbol.TRUE) {
-                return new Token(Symbol.TRUE, true, line);
-            } else if (keyword == Symbol.FALSE) {
-                return new Token(Symbol.FALSE, false, line);
-            } else {
-                return new Token(keyword, null, line);
-            }
+            return add(tokens, keyword);
         }
-        // 自定义变量
-        return new Token(Symbol.IDENTIFIER, text, line);
+        // 自定义变量：名称登记到符号表，已登记时不创建字符串
+        int id = reader == null
+                ? names.intern(source, start, current)
+                : names.intern(window, start - offset, current - offset);
+        return add(tokens, Symbol.IDENTIFIER, start, current, id);
     }
 
-    private Token string() {
-        StringBuilder sb = new StringBuilder();
+    // 只检查转义序列，标记的范围为引号之间的内容
+    private Symbol string(TokenStream tokens) {
         while (peek() != '"' && !isAtEnd()) {
             char c = advance();
             if (c == '\\') {
-                // 处理转义字符
+                // 检查转义字符
                 if (isAtEnd()) throw new JvsException("Unterminated escape sequence");
                 char esc = advance();
                 switch (esc) {
-                    case 'n': sb.append('\n'); break;
-                    case 't': sb.append('\t'); break;
-                    case 'r': sb.append('\r'); break;
-                    case 'b': sb.append('\b'); break;
-                    case '"': sb.append('"'); break;
-                    case '\\': sb.append('\\'); break;
+                    case 'n':
+                    case 't':
+                    case 'r':
+                    case 'b':
+                    case '"':
+                    case '\\':
+                        break;
                     default: throw new JvsException("Invalid escape sequence: \\" + esc);
                 }
-            } else {
+            } else if (c == '\n') {
                 // 检查未转义的换行符
-                if (c == '\n') {
-                    throw new JvsException("Unterminated string: newline not allowed without escape at line " + line);
-                }
-                sb.append(c);
+                throw new JvsException("Unterminated string: newline not allowed without escape at line " + line);
             }
         }
         if (isAtEnd()) throw new JvsException("Unterminated string at line " + line);
+        add(tokens, Symbol.TEXT, start + 1, current, -1);
         advance(); // 吃掉闭合引号
-        return new Token(Symbol.TEXT, sb.toString(), line);
+        return Symbol.TEXT;
     }
 
     // 辅助方法
-    private boolean isAtEnd() { return current >= source.length(); }
+    private boolean isAtEnd() { return !available(current); }
     private char advance() {
-        char c = source.charAt(current++);
+        char c = charAt(current++);
         if (c == '\n') line++;
         return c;
     }
-    private char peek() { return isAtEnd() ? '\0' : source.charAt(current); }
-    private char peekNext() { return (current + 1 >= source.length()) ? '\0' : source.charAt(current + 1); }
+    private char peek() { return isAtEnd() ? '\0' : charAt(current); }
+    private char peekNext() { return !available(current + 1) ? '\0' : charAt(current + 1); }
     private boolean checkNext(char expected) {
-        if (isAtEnd() || source.charAt(current) != expected) return false;
+        if (isAtEnd() || charAt(current) != expected) return false;
         current++;
         return true;
     }
     private void skipWhitespace() {
         while (!isAtEnd()) {
+            // 跳过的字符不再保留在缓冲区中
+            start = current;
             char c = peek();
             if (c == ' ' || c == '\r' || c == '\t') {
                 advance();
@@ -171,7 +343,99 @@ public class Lexer {
 
     private void skipComment() {
         while (peek() != '\n' && !isAtEnd()) {
+            start = current;
             advance(); // 跳过注释内容
         }
     }
-}
\ No newline at end of file
+
+    // 源码的第index个字符，流式读取时由available保证已在缓冲区中
+    private char charAt(int index) {
+        return reader == null ? source.charAt(index) : buffer[index - offset];
+    }
+
+    private boolean available(int index) {
+        if (reader == null) return index < end;
+        return index < offset + limit || fill(index);
+    }
+
+    // 读入字符直到index处，丢弃当前标记之前的字符；标记比缓冲区长时扩大缓冲区
+    private boolean fill(int index) {
+        while (index >= offset + limit) {
+            if (drained) return false;
+            if (start > offset) {
+                System.arraycopy(buffer, start - offset, buffer, 0, offset + limit - start);
+                limit -= start - offset;
+                offset = start;
+            } else if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                window = CharBuffer.wrap(buffer);
+            }
+            int n;
+            try {
+                n = reader.read(buffer, limit, buffer.length - limit);
+            } catch (IOException e) {
+                throw new JvsException("Failed to read script source: " + e.getMessage(), e);
+            }
+            if (n < 0) {
+                drained = true;
+            } else {
+                limit += n;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 内存映射的UTF-8文件：分段映射（相邻段重叠3字节，段尾不完整的字符从下一段继续解码），
+     * 解码完的段不再引用；映射建立后即关闭文件
+     */
+    private static final class MappedReader extends Reader {
+
+        private static final long CHUNK = 64L << 20;
+
+        private final MappedByteBuffer[] chunks;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        private int chunk;
+        private boolean finished;
+
+        MappedReader(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                chunks = new MappedByteBuffer[(int) Math.max(1, (size + CHUNK - 1) / CHUNK)];
+                for (int i = 0; i < chunks.length; i++) {
+                    long from = i * CHUNK;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size, from + CHUNK + 3) - from);
+                }
+            }
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (finished) return -1;
+            CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+            while (out.hasRemaining()) {
+                ByteBuffer bytes = chunks[chunk];
+                boolean last = chunk == chunks.length - 1;
+                CoderResult result = decoder.decode(bytes, out, last);
+                if (result.isError()) result.throwException();
+                if (result.isOverflow()) break;
+                if (last) {
+                    decoder.flush(out);
+                    finished = true;
+                    break;
+                }
+                long stop = chunk * CHUNK + bytes.position();
+                chunks[chunk++] = null;
+                chunks[chunk].position((int) (stop - chunk * CHUNK));
+            }
+            int n = out.position() - off;
+            return n == 0 && finished ? -1 : n;
+        }
+
+        @Override
+        public void close() {
+            Arrays.fill(chunks, null);
+            finished = true;
+        }
+    }
+}
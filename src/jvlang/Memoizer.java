@@ -0,0 +1,224 @@
+package jvlang;
+
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.ConcatExpr;
+import jvlang.expr.Expression;
+import jvlang.expr.FuncCall;
+import jvlang.expr.Literal;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.UnaryExpr;
+import jvlang.expr.Variable;
+import jvlang.model.MemoCache;
+import jvlang.stmt.Assignment;
+import jvlang.stmt.ExprStatement;
+import jvlang.stmt.FuncDefinition;
+import jvlang.stmt.IfStatement;
+import jvlang.stmt.LoopStatement;
+import jvlang.stmt.ReturnStatement;
+import jvlang.stmt.Statement;
+import jvlang.stmt.VarDeclaration;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 纯函数记忆化：在Resolver之后执行，为顶层的纯函数设置结果缓存(MemoCache)
+ * 纯函数只读写自己的参数与局部变量，不打印、不访问字段与this、不调用方法、不实例化类、不定义函数或类，
+ * 调用的函数也都是纯函数，实参相同时结果必然相同
+ * 默认关闭，系统属性jvs.memoize=true开启，=verbose时在标准错误输出记忆化的函数及缓存命中次数；
+ * 字节码虚拟机不经过FuncDefinition.call，不使用缓存
+ * @author Yumerain
+ */
+public class Memoizer {
+
+    private final Scope root;
+
+    // 设置了缓存的函数：函数名 → 最近一次设置缓存的定义，report按此输出；
+    // 重新定义时替换，缓存停用后移除
+    private final Map<String, FuncDefinition> memoized = new LinkedHashMap<>();
+
+    public Memoizer(Scope root) {
+        this.root = root;
+    }
+
+    public static boolean enabled() {
+        return "true".equalsIgnoreCase(System.getProperty("jvs.memoize")) || verbose();
+    }
+
+    public static boolean verbose() {
+        return "verbose".equalsIgnoreCase(System.getProperty("jvs.memoize"));
+    }
+
+    public void memoize(Program program) {
+        // 1. 候选：程序中只定义一次的顶层函数，函数体只访问自己的变量，记录调用的函数名
+        Map<String, FuncDefinition> candidates = new LinkedHashMap<>();
+        Map<String, Set<String>> calls = new LinkedHashMap<>();
+        Set<String> defined = new HashSet<>();
+        prune();
+        for (Statement stmt : program.statements) {
+            if (!(stmt instanceof FuncDefinition)) continue;
+            FuncDefinition function = (FuncDefinition) stmt;
+            // 重新定义的函数替换之前的定义，旧的缓存不再输出
+            memoized.remove(function.name);
+            if (!defined.add(function.name)) {
+                candidates.remove(function.name);
+                continue;
+            }
+            Set<String> callees = new HashSet<>();
+            if (statements(function.body, 0, callees)) {
+                candidates.put(function.name, function);
+                calls.put(function.name, callees);
+            }
+        }
+        // 2. 逐个排除调用了非纯函数的候选，直到不再变化
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String name : new ArrayList<>(candidates.keySet())) {
+                for (String callee : calls.get(name)) {
+                    if (!candidates.containsKey(callee) && (defined.contains(callee) || memoized(callee) == null)) {
+                        candidates.remove(name);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        // 3. 依赖的函数包括自身与直接、间接调用的函数
+        for (FuncDefinition function : candidates.values()) {
+            Map<String, FuncDefinition> dependencies = new LinkedHashMap<>();
+            dependencies(function.name, candidates, calls, dependencies);
+            function.memo = new MemoCache(dependencies);
+            memoized.put(function.name, function);
+            if (verbose()) {
+                System.err.println("Memoizer: " + function.name);
+            }
+        }
+    }
+
+    private void dependencies(String name, Map<String, FuncDefinition> candidates,
+                              Map<String, Set<String>> calls, Map<String, FuncDefinition> dependencies) {
+        if (dependencies.containsKey(name)) return;
+        FuncDefinition function = candidates.get(name);
+        if (function == null) {
+            // 之前的输入中已记忆化的函数
+            dependencies.putAll(memoized(name).memo.dependencies());
+            return;
+        }
+        dependencies.put(name, function);
+        for (String callee : calls.get(name)) {
+            dependencies(callee, candidates, calls, dependencies);
+        }
+    }
+
+    // 根作用域中仍在使用缓存的同名函数
+    private FuncDefinition memoized(String name) {
+        FuncDefinition function = root.getFunction(name);
+        return function != null && function.memo != null && !function.memo.disabled() ? function : null;
+    }
+
+    // 在标准错误输出各缓存的命中与未命中次数
+    public void report() {
+        prune();
+        for (FuncDefinition function : memoized.values()) {
+            MemoCache memo = function.memo;
+            System.err.println("Memo " + function.name + ": " + memo.hits() + " hits, "
+                    + memo.misses() + " misses, " + memo.size() + " entries");
+        }
+    }
+
+    // 移除已停用的缓存（依赖的函数被替换）
+    private void prune() {
+        memoized.values().removeIf(function -> function.memo.disabled());
+    }
+
+    // level为当前块相对函数作用域的层数，只声明变量的块不创建作用域
+    private boolean statements(List<Statement> statements, int level, Set<String> calls) {
+        for (Statement stmt : statements) {
+            if (!statement(stmt, level, calls)) return false;
+        }
+        return true;
+    }
+
+    private boolean statement(Statement stmt, int level, Set<String> calls) {
+        if (stmt instanceof VarDeclaration) {
+            Expression initializer = ((VarDeclaration) stmt).initializer;
+            return initializer == null || expression(initializer, level, calls);
+        }
+        if (stmt instanceof Assignment) {
+            Assignment assignment = (Assignment) stmt;
+            return assignment.target instanceof Variable && local((Variable) assignment.target, level)
+                    && expression(assignment.value, level, calls);
+        }
+        if (stmt instanceof ExprStatement) {
+            return expression(((ExprStatement) stmt).expression, level, calls);
+        }
+        if (stmt instanceof ReturnStatement) {
+            Expression expression = ((ReturnStatement) stmt).expression;
+            return expression == null || expression(expression, level, calls);
+        }
+        if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            return expression(ifStmt.condition, level, calls)
+                    && statements(ifStmt.thenBranch, ifStmt.thenScoped ? level + 1 : level, calls)
+                    && (ifStmt.elseBranch == null
+                        || statements(ifStmt.elseBranch, ifStmt.elseScoped ? level + 1 : level, calls));
+        }
+        if (stmt instanceof LoopStatement) {
+            LoopStatement loop = (LoopStatement) stmt;
+            return expression(loop.condition, level, calls)
+                    && statements(loop.body, loop.bodyScoped ? level + 1 : level, calls);
+        }
+        // 函数与类定义
+        return false;
+    }
+
+    private boolean expression(Expression expr, int level, Set<String> calls) {
+        if (expr instanceof Literal) {
+            return true;
+        }
+        if (expr instanceof Variable) {
+            return local((Variable) expr, level);
+        }
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            return expression(binary.left, level, calls) && expression(binary.right, level, calls);
+        }
+        if (expr instanceof LogicalExpr) {
+            LogicalExpr logical = (LogicalExpr) expr;
+            return expression(logical.left, level, calls) && expression(logical.right, level, calls);
+        }
+        if (expr instanceof ConcatExpr) {
+            for (Expression part : ((ConcatExpr) expr).parts) {
+                if (!expression(part, level, calls)) return false;
+            }
+            return true;
+        }
+        if (expr instanceof UnaryExpr) {
+            return expression(((UnaryExpr) expr).right, level, calls);
+        }
+        if (expr instanceof FuncCall) {
+            FuncCall call = (FuncCall) expr;
+            if (call.root == null) {
+                return false;
+            }
+            for (Expression arg : call.args) {
+                if (!expression(arg, level, calls)) return false;
+            }
+            calls.add(call.name);
+            return true;
+        }
+        // this、字段访问、方法调用、原生函数调用、类实例化
+        return false;
+    }
+
+    // 函数自己的参数或局部变量
+    private static boolean local(Variable variable, int level) {
+        return !variable.thisField && variable.depth >= 0 && variable.depth <= level;
+    }
+
+}
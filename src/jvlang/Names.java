@@ -0,0 +1,201 @@
+package jvlang;
+
+/**
+ * 标识符符号表：变量、函数、类、字段与方法的名称在词法分析时登记为从0开始的连续编号，
+ * 语法树节点携带编号，作用域与类定义以编号为键查找（见IdMap）；同一名称只保留一个字符串实例
+ * 线程安全：查找不加锁，登记新名称时加锁；登记的名称不会移除，符号表随引用它的对象一起回收。
+ * ProgramCache、PrecompiledCache与JvsScriptEngine各有自己的符号表，由词法分析器、程序与根作用域引用，
+ * 丢弃缓存或引擎及其程序、作用域后其中的名称即可回收；直接使用Lexer、Parser与Scope时默认使用全局符号表。
+ * 语法树节点按名称构造时在当前线程的符号表中登记：Parser、Copier、Optimizer、Resolver、
+ * BytecodeCompiler与ProgramReader执行期间为程序的符号表（见enter），其余时候为全局符号表
+ * @author Yumerain
+ */
+public final class Names {
+
+    private static final Names GLOBAL = new Names();
+
+    // 当前线程按名称构造节点时使用的符号表，未设置时为全局符号表
+    private static final ThreadLocal<Names> CURRENT = new ThreadLocal<>();
+
+    private final Object lock = new Object();
+
+    // 只在加锁时替换，替换前新表已完整填好
+    private volatile Table table = new Table(1024);
+
+    public Names() {
+    }
+
+    public static Names global() {
+        return GLOBAL;
+    }
+
+    public static Names current() {
+        Names names = CURRENT.get();
+        return names != null ? names : GLOBAL;
+    }
+
+    // 设置当前线程的符号表，返回之前的设置，由restore恢复
+    public static Names enter(Names names) {
+        Names previous = CURRENT.get();
+        CURRENT.set(names);
+        return previous;
+    }
+
+    public static void restore(Names previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    // 当前符号表中名称的编号，未登记时登记
+    public static int id(String name) {
+        return current().intern(name);
+    }
+
+    public static int id(CharSequence chars, int start, int end) {
+        return current().intern(chars, start, end);
+    }
+
+    // 当前符号表中已登记名称的编号，未登记时返回-1
+    public static int find(String name) {
+        return current().lookup(name);
+    }
+
+    public static String name(int id) {
+        return current().nameOf(id);
+    }
+
+    // 名称的编号，未登记时登记
+    public int intern(String name) {
+        int id = find(table, name, 0, name.length(), name.hashCode());
+        return id >= 0 ? id : register(name, 0, name.length(), name.hashCode());
+    }
+
+    // chars中start到end的名称的编号，已登记时不创建字符串
+    public int intern(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        int id = find(table, chars, start, end, hash);
+        return id >= 0 ? id : register(chars, start, end, hash);
+    }
+
+    // 已登记名称的编号，未登记时返回-1（不登记，宿主按名称查找与Resolver查找变量时使用）
+    public int lookup(String name) {
+        int id = find(table, name, 0, name.length(), name.hashCode());
+        if (id < 0) {
+            synchronized (lock) {
+                id = find(table, name, 0, name.length(), name.hashCode());
+            }
+        }
+        return id;
+    }
+
+    public String nameOf(int id) {
+        String[] names = table.names;
+        String name = id < names.length ? names[id] : null;
+        if (name == null) {
+            // 其它线程刚登记的名称，加锁后可见
+            synchronized (lock) {
+                name = table.names[id];
+            }
+        }
+        return name;
+    }
+
+    // 已登记的名称数，编号都小于此数
+    public int count() {
+        synchronized (lock) {
+            return table.count;
+        }
+    }
+
+    // 未找到或名称对当前线程尚不可见时返回-1
+    private static int find(Table table, CharSequence chars, int start, int end, int hash) {
+        int[] slots = table.slots;
+        int mask = slots.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            String name = table.names[id];
+            if (name != null && table.hashes[id] == hash && matches(name, chars, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    private int register(CharSequence chars, int start, int end, int hash) {
+        synchronized (lock) {
+            Table current = table;
+            int id = find(current, chars, start, end, hash);
+            if (id >= 0) {
+                return id;
+            }
+            if (current.count * 2 >= current.slots.length) {
+                current = current.resize();
+                table = current;
+            }
+            id = current.count++;
+            current.names[id] = chars.subSequence(start, end).toString();
+            current.hashes[id] = hash;
+            current.place(id, hash);
+            return id;
+        }
+    }
+
+    private static boolean matches(String name, CharSequence chars, int start, int end) {
+        if (name == chars) {
+            return true;
+        }
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // 开放寻址的散列表：slots中保存编号+1，0为空；names与hashes以编号为下标
+    private static final class Table {
+        final int[] slots;
+        final String[] names;
+        final int[] hashes;
+        int count;
+
+        Table(int capacity) {
+            slots = new int[capacity];
+            names = new String[capacity / 2];
+            hashes = new int[capacity / 2];
+        }
+
+        void place(int id, int hash) {
+            int mask = slots.length - 1;
+            int i = spread(hash) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id + 1;
+        }
+
+        Table resize() {
+            Table table = new Table(slots.length * 2);
+            System.arraycopy(names, 0, table.names, 0, count);
+            System.arraycopy(hashes, 0, table.hashes, 0, count);
+            table.count = count;
+            for (int id = 0; id < count; id++) {
+                table.place(id, hashes[id]);
+            }
+            return table;
+        }
+    }
+}
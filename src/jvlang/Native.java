@@ -0,0 +1,26 @@
+package jvlang;
+
+/**
+ * 已注册的原生函数：名称、参数个数与实现
+ * Parser把对它的调用直接解析为NativeCall，运行时不再按名称查找
+ * @author Yumerain
+ */
+public final class Native {
+
+    // 参数个数不限
+    public static final int VARARGS = -1;
+
+    public final String name;
+    public final int arity;
+    public final NativeFunction function;
+
+    public Native(String name, int arity, NativeFunction function) {
+        this.name = name;
+        this.arity = arity;
+        this.function = function;
+    }
+
+    public Object call(Output output, Object[] args) {
+        return function.call(output, args);
+    }
+}
@@ -0,0 +1,13 @@
+package jvlang;
+
+/**
+ * 由Java实现的函数，注册到Natives后脚本按名称调用
+ * @author Yumerain
+ */
+@FunctionalInterface
+public interface NativeFunction {
+
+    // 实参已按顺序求值，output为本次执行的脚本输出
+    Object call(Output output, Object[] args);
+
+}
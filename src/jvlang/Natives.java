@@ -0,0 +1,96 @@
+package jvlang;
+
+import jvlang.model.TextBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 原生函数注册表：宿主在解析前注册，交给Parser(tokens, natives)
+ * 与原生函数同名的调用解析为NativeCall；作用域中有同名的脚本函数或类时调用脚本定义（见Resolver），
+ * 新增的原生函数不改变已有脚本的含义；
+ * standard()包含内置函数print、println与builder；
+ * bind系列方法把Java方法经MethodHandle绑定为脚本函数，参数个数即方法的参数个数，转换规则见HostFunction
+ * @author Yumerain
+ */
+public class Natives {
+
+    private final Map<String, Native> functions = new HashMap<>();
+    // 注册的变化次数，已解析的程序以此判断绑定是否过期
+    private int version;
+
+    // 包含内置函数的注册表，每次返回新的实例
+    public static Natives standard() {
+        Natives natives = new Natives();
+        // 打印函数print、打印换行函数println：依次输出各参数
+        natives.register("print", Native.VARARGS, (output, args) -> {
+            for (Object arg : args) {
+                output.print(arg);
+            }
+            return null;
+        });
+        natives.register("println", Native.VARARGS, (output, args) -> {
+            for (Object arg : args) {
+                output.print(arg);
+            }
+            output.println();
+            return null;
+        });
+        // 可变字符串，以参数拼接的结果为初始内容
+        natives.register("builder", Native.VARARGS, (output, args) -> {
+            TextBuilder builder = new TextBuilder();
+            for (Object arg : args) {
+                builder.append(arg);
+            }
+            return builder;
+        });
+        return natives;
+    }
+
+    // 注册或替换原生函数，arity为Native.VARARGS时参数个数不限
+    public Natives register(String name, int arity, NativeFunction function) {
+        functions.put(name, new Native(name, arity, function));
+        version++;
+        return this;
+    }
+
+    // 绑定MethodHandle，实例方法需先bindTo接收者
+    public Natives bind(String name, MethodHandle handle) {
+        functions.put(name, HostFunction.of(name, handle));
+        version++;
+        return this;
+    }
+
+    // 绑定公开的静态方法，同名的公开静态方法只能有一个
+    public Natives bindStatic(String name, Class<?> type, String method) {
+        return bind(name, HostFunction.unreflect(HostFunction.method(type, method, true)));
+    }
+
+    // 绑定receiver的公开实例方法，同名的公开实例方法只能有一个
+    public Natives bindMethod(String name, Object receiver, String method) {
+        MethodHandle handle = HostFunction.unreflect(HostFunction.method(receiver.getClass(), method, false));
+        return bind(name, handle.bindTo(receiver));
+    }
+
+    public int version() {
+        return version;
+    }
+
+    // 已注册的名称与参数个数，预编译的程序以此判断解析时的绑定是否仍然有效
+    public String signature() {
+        List<String> entries = new ArrayList<>();
+        for (Native function : functions.values()) {
+            entries.add(function.name + "/" + function.arity);
+        }
+        Collections.sort(entries);
+        return String.join(",", entries);
+    }
+
+    public Native get(String name) {
+        return functions.get(name);
+    }
+}
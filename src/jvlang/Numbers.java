@@ -0,0 +1,40 @@
+package jvlang;
+
+/**
+ * 整数装箱：缓存范围比Long.valueOf（-128~127）更大，循环计数、下标等常见值不再分配对象；
+ * 以及宿主传入的Java值到脚本值的转换
+ * @author Yumerain
+ */
+public final class Numbers {
+
+    private static final int LOW = -1024;
+    private static final int HIGH = 16383;
+    private static final Long[] CACHE = new Long[HIGH - LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = (long) (i + LOW);
+        }
+    }
+
+    private Numbers() {
+    }
+
+    public static Long box(long value) {
+        if (value >= LOW && value <= HIGH) {
+            return CACHE[(int) value - LOW];
+        }
+        return value;
+    }
+
+    // Java的装箱值转为脚本值：Integer、Short、Byte转为Long，Float转为Double，Character转为String，其它原样返回
+    public static Object toScript(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return box(((Number) value).longValue());
+        }
+        if (value instanceof Float) return ((Float) value).doubleValue();
+        if (value instanceof Character) return value.toString();
+        return value;
+    }
+
+}
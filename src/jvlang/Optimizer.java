@@ -0,0 +1,530 @@
+package jvlang;
+
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.ClassExpr;
+import jvlang.expr.ConcatExpr;
+import jvlang.expr.Expression;
+import jvlang.expr.FieldAccess;
+import jvlang.expr.FuncCall;
+import jvlang.expr.Literal;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.MethodCall;
+import jvlang.expr.NativeCall;
+import jvlang.expr.UnaryExpr;
+import jvlang.model.FieldDeclaration;
+import jvlang.stmt.Assignment;
+import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.ExprStatement;
+import jvlang.stmt.FuncDefinition;
+import jvlang.stmt.IfStatement;
+import jvlang.stmt.LoopStatement;
+import jvlang.stmt.ReturnStatement;
+import jvlang.stmt.Statement;
+import jvlang.stmt.VarDeclaration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 语法树优化：在Parser.parse()与Resolver之间执行
+ * 折叠常量表达式、删除不可达的条件分支与循环、化简类型确定时的恒等运算（x*1、x+0、x&&true等），
+ * 并把结果一定是字符串的连续+合并为一次拼接(ConcatExpr)，
+ * 结果与未优化时一致；运行时才会报错的常量表达式（如1/0）保持原样
+ * 系统属性jvs.optimize=false关闭，=verbose时在标准错误输出删除的节点数
+ * @author Yumerain
+ */
+public class Optimizer {
+
+    private static final Long ZERO = 0L;
+    private static final Long ONE = 1L;
+
+    // 删除的节点数
+    private int removed;
+
+    public static boolean enabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("jvs.optimize"));
+    }
+
+    public static boolean verbose() {
+        return "verbose".equalsIgnoreCase(System.getProperty("jvs.optimize"));
+    }
+
+    // 返回优化后的程序，未变化的节点原样复用
+    public Program optimize(Program program) {
+        Names previous = Names.enter(program.names);
+        try {
+            int before = statementsSize(program.statements);
+            List<Statement> statements = statements(program.statements, true);
+            removed += before - statementsSize(statements);
+            if (verbose()) {
+                System.err.println("Optimizer removed " + (before - statementsSize(statements)) + " nodes");
+            }
+            return statements == program.statements ? program : new Program(statements, program.names);
+        } finally {
+            Names.restore(previous);
+        }
+    }
+
+    // 累计删除的节点数
+    public int removed() {
+        return removed;
+    }
+
+    // topLevel为程序顶层：顶层的return只结束所在的语句，含有return的分支不能展开到顶层
+    private List<Statement> statements(List<Statement> statements, boolean topLevel) {
+        List<Statement> result = new ArrayList<>(statements.size());
+        boolean changed = false;
+        for (Statement stmt : statements) {
+            Object optimized = statement(stmt, topLevel);
+            if (optimized instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<Statement> inlined = (List<Statement>) optimized;
+                result.addAll(inlined);
+                changed = true;
+            } else if (optimized != null) {
+                result.add((Statement) optimized);
+                changed |= optimized != stmt;
+            } else {
+                changed = true;
+            }
+        }
+        return changed ? result : statements;
+    }
+
+    // 返回优化后的语句；返回null表示删除，返回语句列表表示展开到所在块
+    private Object statement(Statement stmt, boolean topLevel) {
+        if (stmt instanceof VarDeclaration) {
+            VarDeclaration declaration = (VarDeclaration) stmt;
+            if (declaration.initializer == null) return stmt;
+            Expression initializer = expression(declaration.initializer);
+            if (initializer == declaration.initializer) return stmt;
+            VarDeclaration optimized = new VarDeclaration(declaration.identifier, initializer);
+            optimized.type = declaration.type;
+            return optimized;
+        }
+        if (stmt instanceof Assignment) {
+            Assignment assignment = (Assignment) stmt;
+            Expression target = assignment.target;
+            if (target instanceof FieldAccess) {
+                FieldAccess field = (FieldAccess) target;
+                Expression object = expression(field.target);
+                if (object != field.target) target = new FieldAccess(object, field.fieldId);
+            }
+            Expression value = expression(assignment.value);
+            if (target == assignment.target && value == assignment.value) return stmt;
+            return new Assignment(target, value);
+        }
+        if (stmt instanceof ExprStatement) {
+            Expression expr = expression(((ExprStatement) stmt).expression);
+            return expr == ((ExprStatement) stmt).expression ? stmt : new ExprStatement(expr);
+        }
+        if (stmt instanceof ReturnStatement) {
+            Expression expr = ((ReturnStatement) stmt).expression;
+            if (expr == null) return stmt;
+            Expression optimized = expression(expr);
+            return optimized == expr ? stmt : new ReturnStatement(optimized);
+        }
+        if (stmt instanceof IfStatement) {
+            return ifStatement((IfStatement) stmt, topLevel);
+        }
+        if (stmt instanceof LoopStatement) {
+            LoopStatement loop = (LoopStatement) stmt;
+            Expression condition = expression(loop.condition);
+            if (Boolean.FALSE.equals(literal(condition))) {
+                return null; // 循环体不会执行
+            }
+            List<Statement> body = statements(loop.body, false);
+            if (condition == loop.condition && body == loop.body) return stmt;
+            return new LoopStatement(condition, body);
+        }
+        if (stmt instanceof FuncDefinition) {
+            FuncDefinition function = (FuncDefinition) stmt;
+            List<Statement> body = statements(function.body, false);
+            return body == function.body ? stmt : new FuncDefinition(function.name, function.parameters, body);
+        }
+        if (stmt instanceof ClassDefinition) {
+            return classDefinition((ClassDefinition) stmt);
+        }
+        return stmt;
+    }
+
+    private Object ifStatement(IfStatement ifStmt, boolean topLevel) {
+        Expression condition = expression(ifStmt.condition);
+        Object value = literal(condition);
+        if (value instanceof Boolean) {
+            List<Statement> branch = (Boolean) value ? ifStmt.thenBranch : ifStmt.elseBranch;
+            if (branch == null) {
+                return null;
+            }
+            branch = statements(branch, false);
+            // 分支没有自己的声明时展开到所在块，否则保留为条件恒真的单分支
+            if (!declares(branch) && !(topLevel && returns(branch))) {
+                return branch;
+            }
+            return new IfStatement(new Literal(Boolean.TRUE), branch, null);
+        }
+        List<Statement> thenBranch = statements(ifStmt.thenBranch, false);
+        List<Statement> elseBranch = ifStmt.elseBranch == null ? null : statements(ifStmt.elseBranch, false);
+        if (condition == ifStmt.condition && thenBranch == ifStmt.thenBranch && elseBranch == ifStmt.elseBranch) {
+            return ifStmt;
+        }
+        return new IfStatement(condition, thenBranch, elseBranch);
+    }
+
+    private Statement classDefinition(ClassDefinition classDef) {
+        boolean changed = false;
+        List<FieldDeclaration> fields = new ArrayList<>(classDef.fields.size());
+        for (FieldDeclaration field : classDef.fields) {
+            Expression initializer = field.initializer == null ? null : expression(field.initializer);
+            if (initializer != field.initializer) {
+                fields.add(new FieldDeclaration(field.id, initializer));
+                changed = true;
+            } else {
+                fields.add(field);
+            }
+        }
+        List<FuncDefinition> methods = new ArrayList<>(classDef.methods.size());
+        for (FuncDefinition method : classDef.methods) {
+            Object optimized = statement(method, false);
+            methods.add((FuncDefinition) optimized);
+            changed |= optimized != method;
+        }
+        return changed ? new ClassDefinition(classDef.name, fields, methods) : classDef;
+    }
+
+    // 块内是否直接声明了变量、函数或类（展开后会改变作用域）
+    private static boolean declares(List<Statement> statements) {
+        for (Statement stmt : statements) {
+            if (stmt instanceof VarDeclaration || stmt instanceof FuncDefinition || stmt instanceof ClassDefinition) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 是否含有return（不计嵌套函数体）
+    private static boolean returns(List<Statement> statements) {
+        for (Statement stmt : statements) {
+            if (stmt instanceof ReturnStatement) return true;
+            if (stmt instanceof IfStatement) {
+                IfStatement ifStmt = (IfStatement) stmt;
+                if (returns(ifStmt.thenBranch) || (ifStmt.elseBranch != null && returns(ifStmt.elseBranch))) {
+                    return true;
+                }
+            }
+            if (stmt instanceof LoopStatement && returns(((LoopStatement) stmt).body)) return true;
+        }
+        return false;
+    }
+
+    private Expression expression(Expression expr) {
+        if (expr instanceof BinaryExpr) {
+            return binary((BinaryExpr) expr);
+        }
+        if (expr instanceof LogicalExpr) {
+            return logical((LogicalExpr) expr);
+        }
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            Expression right = expression(unary.right);
+            if (right instanceof Literal) {
+                try {
+                    return new Literal(UnaryExpr.apply(unary.operator, ((Literal) right).value));
+                } catch (RuntimeException e) {
+                    // 运行时才报错
+                }
+            }
+            return right == unary.right ? expr : new UnaryExpr(unary.operator, right);
+        }
+        if (expr instanceof FuncCall) {
+            FuncCall call = (FuncCall) expr;
+            List<Expression> args = expressions(call.args);
+            return args == call.args ? expr : new FuncCall(call.id, args);
+        }
+        if (expr instanceof NativeCall) {
+            NativeCall call = (NativeCall) expr;
+            List<Expression> args = expressions(call.args);
+            return args == call.args ? expr : new NativeCall(call.function, args);
+        }
+        if (expr instanceof MethodCall) {
+            MethodCall call = (MethodCall) expr;
+            Expression target = expression(call.target);
+            List<Expression> args = expressions(call.arguments);
+            if (target == call.target && args == call.arguments) return expr;
+            return new MethodCall(target, call.methodId, args);
+        }
+        if (expr instanceof FieldAccess) {
+            FieldAccess field = (FieldAccess) expr;
+            Expression target = expression(field.target);
+            return target == field.target ? expr : new FieldAccess(target, field.fieldId);
+        }
+        if (expr instanceof ClassExpr) {
+            ClassExpr classExpr = (ClassExpr) expr;
+            boolean changed = false;
+            Map<String, Expression> initializers = new LinkedHashMap<>();
+            for (Map.Entry<String, Expression> entry : classExpr.fieldInitializers.entrySet()) {
+                Expression value = expression(entry.getValue());
+                changed |= value != entry.getValue();
+                initializers.put(entry.getKey(), value);
+            }
+            return changed ? new ClassExpr(classExpr.className, initializers) : expr;
+        }
+        return expr;
+    }
+
+    private List<Expression> expressions(List<Expression> exprs) {
+        List<Expression> result = new ArrayList<>(exprs.size());
+        boolean changed = false;
+        for (Expression expr : exprs) {
+            Expression optimized = expression(expr);
+            changed |= optimized != expr;
+            result.add(optimized);
+        }
+        return changed ? result : exprs;
+    }
+
+    private Expression binary(BinaryExpr binary) {
+        Expression left = expression(binary.left);
+        Expression right = expression(binary.right);
+        // 常量折叠
+        if (left instanceof Literal && right instanceof Literal) {
+            try {
+                return new Literal(BinaryExpr.apply(binary.operator, ((Literal) left).value, ((Literal) right).value));
+            } catch (RuntimeException e) {
+                // 运行时才报错
+            }
+        }
+        // 恒等运算：保留的一侧仍会求值，省略的一侧是常量
+        Object l = literal(left);
+        Object r = literal(right);
+        switch (binary.operator) {
+            case PLUS:
+                // 0.0 + -0.0结果为0.0，只化简整数
+                if (ZERO.equals(r) && isLong(left)) return left;
+                if (ZERO.equals(l) && isLong(right)) return right;
+                break;
+            case MINUS:
+                if (ZERO.equals(r) && isNumber(left)) return left;
+                break;
+            case MULTIPLY:
+                if (ONE.equals(r) && isNumber(left)) return left;
+                if (ONE.equals(l) && isNumber(right)) return right;
+                break;
+            case DIVIDE:
+                if (ONE.equals(r) && isNumber(left)) return left;
+                break;
+            default:
+                break;
+        }
+        if (binary.operator == Symbol.PLUS) {
+            List<Expression> parts = concat(left, right);
+            if (parts != null) return new ConcatExpr(parts);
+        }
+        if (left == binary.left && right == binary.right) return binary;
+        return new BinaryExpr(left, binary.operator, right);
+    }
+
+    // 结果一定是字符串的+：合并两侧的拼接链，相邻的字符串常量合为一个；不足三部分时保留BinaryExpr
+    private static List<Expression> concat(Expression left, Expression right) {
+        List<Expression> leftParts = stringParts(left);
+        List<Expression> rightParts = stringParts(right);
+        if (leftParts == null && rightParts == null && !isString(left) && !isString(right)) {
+            return null;
+        }
+        List<Expression> parts = new ArrayList<>();
+        for (Expression part : leftParts != null ? leftParts : Collections.singletonList(left)) {
+            appendPart(parts, part);
+        }
+        for (Expression part : rightParts != null ? rightParts : Collections.singletonList(right)) {
+            appendPart(parts, part);
+        }
+        return parts.size() >= 3 ? parts : null;
+    }
+
+    private static void appendPart(List<Expression> parts, Expression part) {
+        int last = parts.size() - 1;
+        if (last >= 0 && isString(parts.get(last)) && isString(part)) {
+            parts.set(last, new Literal((String) literal(parts.get(last)) + literal(part)));
+        } else {
+            parts.add(part);
+        }
+    }
+
+    // 已优化的字符串拼接的各部分，不是拼接时返回null
+    private static List<Expression> stringParts(Expression expr) {
+        if (expr instanceof ConcatExpr) return ((ConcatExpr) expr).parts;
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            if (binary.operator == Symbol.PLUS && (isString(binary.left) || isString(binary.right))) {
+                return Arrays.asList(binary.left, binary.right);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isString(Expression expr) {
+        return literal(expr) instanceof String;
+    }
+
+    // 左侧为常量时短路结果已知或只剩右侧；x&&true、x||false化简为x
+    private Expression logical(LogicalExpr logical) {
+        Expression left = expression(logical.left);
+        Expression right = expression(logical.right);
+        Object l = literal(left);
+        Object r = literal(right);
+        // &&的短路值为false，||为true
+        Boolean shortValue = logical.operator == Symbol.OR;
+        if (shortValue.equals(l)) return left;
+        if (l instanceof Boolean && isBoolean(right)) return right;
+        if (!shortValue.equals(r) && r instanceof Boolean && isBoolean(left)) return left;
+        if (left == logical.left && right == logical.right) return logical;
+        return new LogicalExpr(left, logical.operator, right);
+    }
+
+    // 字面量的值，不是字面量时返回null
+    private static Object literal(Expression expr) {
+        return expr instanceof Literal ? ((Literal) expr).value : null;
+    }
+
+    // 结果一定是整数（或求值时报错）
+    private static boolean isLong(Expression expr) {
+        if (expr instanceof Literal) return ((Literal) expr).value instanceof Long;
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            return unary.operator == Symbol.MINUS && isLong(unary.right);
+        }
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            return isArithmetic(binary.operator) && isLong(binary.left) && isLong(binary.right);
+        }
+        return false;
+    }
+
+    // 结果一定是数字（或求值时报错）
+    private static boolean isNumber(Expression expr) {
+        if (expr instanceof Literal) return ((Literal) expr).value instanceof Number;
+        if (expr instanceof UnaryExpr) return ((UnaryExpr) expr).operator == Symbol.MINUS;
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            if (binary.operator == Symbol.PLUS) return isNumber(binary.left) && isNumber(binary.right);
+            return isArithmetic(binary.operator);
+        }
+        return false;
+    }
+
+    // 结果一定是布尔值（或求值时报错）
+    private static boolean isBoolean(Expression expr) {
+        if (expr instanceof Literal) return ((Literal) expr).value instanceof Boolean;
+        if (expr instanceof UnaryExpr) return ((UnaryExpr) expr).operator == Symbol.NOT;
+        if (expr instanceof BinaryExpr) return !isArithmetic(((BinaryExpr) expr).operator);
+        if (expr instanceof LogicalExpr) return true;
+        return false;
+    }
+
+    private static boolean isArithmetic(Symbol operator) {
+        return operator == Symbol.PLUS || operator == Symbol.MINUS || operator == Symbol.MULTIPLY
+                || operator == Symbol.DIVIDE || operator == Symbol.MODULO;
+    }
+
+    // 语句与表达式的节点数
+    private static int statementsSize(List<Statement> statements) {
+        int size = 0;
+        for (Statement stmt : statements) {
+            size += statementSize(stmt);
+        }
+        return size;
+    }
+
+    private static int statementSize(Statement stmt) {
+        if (stmt instanceof VarDeclaration) {
+            Expression initializer = ((VarDeclaration) stmt).initializer;
+            return 1 + (initializer == null ? 0 : expressionSize(initializer));
+        }
+        if (stmt instanceof Assignment) {
+            Assignment assignment = (Assignment) stmt;
+            return 1 + expressionSize(assignment.target) + expressionSize(assignment.value);
+        }
+        if (stmt instanceof ExprStatement) {
+            return 1 + expressionSize(((ExprStatement) stmt).expression);
+        }
+        if (stmt instanceof ReturnStatement) {
+            Expression expr = ((ReturnStatement) stmt).expression;
+            return 1 + (expr == null ? 0 : expressionSize(expr));
+        }
+        if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            return 1 + expressionSize(ifStmt.condition) + statementsSize(ifStmt.thenBranch)
+                    + (ifStmt.elseBranch == null ? 0 : statementsSize(ifStmt.elseBranch));
+        }
+        if (stmt instanceof LoopStatement) {
+            LoopStatement loop = (LoopStatement) stmt;
+            return 1 + expressionSize(loop.condition) + statementsSize(loop.body);
+        }
+        if (stmt instanceof FuncDefinition) {
+            return 1 + statementsSize(((FuncDefinition) stmt).body);
+        }
+        if (stmt instanceof ClassDefinition) {
+            ClassDefinition classDef = (ClassDefinition) stmt;
+            int size = 1;
+            for (FieldDeclaration field : classDef.fields) {
+                size += field.initializer == null ? 0 : expressionSize(field.initializer);
+            }
+            for (FuncDefinition method : classDef.methods) {
+                size += statementSize(method);
+            }
+            return size;
+        }
+        return 1;
+    }
+
+    private static int expressionSize(Expression expr) {
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            return 1 + expressionSize(binary.left) + expressionSize(binary.right);
+        }
+        if (expr instanceof LogicalExpr) {
+            LogicalExpr logical = (LogicalExpr) expr;
+            return 1 + expressionSize(logical.left) + expressionSize(logical.right);
+        }
+        if (expr instanceof ConcatExpr) {
+            return 1 + expressionsSize(((ConcatExpr) expr).parts);
+        }
+        if (expr instanceof UnaryExpr) {
+            return 1 + expressionSize(((UnaryExpr) expr).right);
+        }
+        if (expr instanceof FuncCall) {
+            return 1 + expressionsSize(((FuncCall) expr).args);
+        }
+        if (expr instanceof NativeCall) {
+            return 1 + expressionsSize(((NativeCall) expr).args);
+        }
+        if (expr instanceof MethodCall) {
+            MethodCall call = (MethodCall) expr;
+            return 1 + expressionSize(call.target) + expressionsSize(call.arguments);
+        }
+        if (expr instanceof FieldAccess) {
+            return 1 + expressionSize(((FieldAccess) expr).target);
+        }
+        if (expr instanceof ClassExpr) {
+            int size = 1;
+            for (Expression initializer : ((ClassExpr) expr).fieldInitializers.values()) {
+                size += expressionSize(initializer);
+            }
+            return size;
+        }
+        return 1;
+    }
+
+    private static int expressionsSize(Iterable<Expression> exprs) {
+        int size = 0;
+        for (Expression expr : exprs) {
+            size += expressionSize(expr);
+        }
+        return size;
+    }
+
+}
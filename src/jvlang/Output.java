@@ -0,0 +1,69 @@
+package jvlang;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+/**
+ * 脚本输出：print与println写入执行所用根作用域的Output（Scope.setOutput设置）
+ * 输出先写入缓冲区，满capacity个字符或调用flush时整批写入目标，
+ * 每次执行结束（Program.exec、VirtualMachine.run返回或抛出异常）时自动flush；
+ * 未设置时根作用域使用输出到System.out的Output。非线程安全，每次执行使用各自的根作用域与Output
+ * @author Yumerain
+ */
+public class Output implements Flushable {
+
+    // 默认缓冲的字符数
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Appendable target;
+    private final int capacity;
+    private final StringBuilder buffer;
+
+    // target可以是Writer、PrintStream、StringBuilder等
+    public Output(Appendable target) {
+        this(target, DEFAULT_CAPACITY);
+    }
+
+    public Output(Appendable target, int capacity) {
+        this.target = target;
+        this.capacity = capacity;
+        this.buffer = new StringBuilder(Math.min(capacity, DEFAULT_CAPACITY));
+    }
+
+    // 按指定字符集写入字节流
+    public Output(OutputStream out, Charset charset) {
+        this(new OutputStreamWriter(out, charset));
+    }
+
+    public void print(Object value) {
+        buffer.append(value);
+        if (buffer.length() >= capacity) {
+            flush();
+        }
+    }
+
+    public void println() {
+        print(LINE_SEPARATOR);
+    }
+
+    // 把缓冲的输出写入目标，目标可刷新时一并刷新
+    @Override
+    public void flush() {
+        try {
+            if (buffer.length() > 0) {
+                target.append(buffer);
+                buffer.setLength(0);
+            }
+            if (target instanceof Flushable) {
+                ((Flushable) target).flush();
+            }
+        } catch (IOException e) {
+            throw new JvsException("Failed to write script output", e);
+        }
+    }
+}
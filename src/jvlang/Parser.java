@@ -5,8 +5,10 @@ import jvlang.expr.Expression;
 import jvlang.expr.FieldAccess;
 import jvlang.expr.FuncCall;
 import jvlang.expr.Literal;
+import jvlang.expr.LogicalExpr;
 import jvlang.expr.ClassExpr;
 import jvlang.expr.MethodCall;
+import jvlang.expr.NativeCall;
 import jvlang.expr.ThisExpr;
 import jvlang.expr.UnaryExpr;
 import jvlang.expr.Variable;
@@ -32,47 +34,64 @@ import java.util.Map;
  */
 public class Parser {
 
-    private final List<Token> tokens;
+    private final TokenStream tokens;
+    // 原生函数注册表，调用在解析时直接绑定
+    private final Natives natives;
     private int current = 0;
 
     public Parser(List<Token> tokens) {
+        this(TokenStream.of(tokens), Natives.standard());
+    }
+
+    public Parser(List<Token> tokens, Natives natives) {
+        this(TokenStream.of(tokens), natives);
+    }
+
+    public Parser(TokenStream tokens) {
+        this(tokens, Natives.standard());
+    }
+
+    public Parser(TokenStream tokens, Natives natives) {
         this.tokens = tokens;
+        this.natives = natives;
     }
 
-    private Token peek() {
-        if (isAtEnd()) return tokens.get(tokens.size() - 1); // 返回最后一个 Token（通常是 EOF）
-        return tokens.get(current);
+    // 标记以在标记流中的下标表示，流式时只能回看最近的标记
+    private int peek() {
+        if (isAtEnd()) return tokens.size() - 1; // 返回最后一个 Token（通常是 EOF）
+        return current;
     }
 
     // 查看下一个 Token（不移动 current 指针）
-    private Token peekNext() {
+    private int peekNext() {
         int nextIndex = current + 1;
-        if (nextIndex >= tokens.size()) {
-            return tokens.get(tokens.size() - 1); // 返回 EOF Token
+        if (!tokens.has(nextIndex)) {
+            return tokens.size() - 1; // 返回 EOF Token
         }
-        return tokens.get(nextIndex);
+        return nextIndex;
     }
 
-    private Token previous() {
-        return tokens.get(current - 1);
+    private int previous() {
+        return current - 1;
     }
 
+    // 流式的标记流在此按需扫描
     private boolean isAtEnd() {
-        return current >= tokens.size();
+        return !tokens.has(current);
     }
 
-    private Token advance() {
+    private int advance() {
         if (!isAtEnd()) current++;
         return previous();
     }
 
     private boolean check(Symbol symbol) {
-        return !isAtEnd() && peek().symbol == symbol;
+        return !isAtEnd() && tokens.is(current, symbol);
     }
 
-    private Token consume(Symbol symbol, String message) {
+    private int consume(Symbol symbol, String message) {
         if (check(symbol)) return advance();
-        throw new JvsException(message + " at line " + peek().line);
+        throw new JvsException(message + " at line " + tokens.line(peek()));
     }
 
     private boolean match(Symbol symbol) {
@@ -93,8 +112,14 @@ public class Parser {
     //            -> arithMulDiv()
     //              -> factor()
     //                -> 处理字面量/变量/括号/一元运算符/函数调用
+    // 语法树节点的名称在标记流的符号表中登记
     public Program parse() {
-        return new Program(statementList());
+        Names previous = Names.enter(tokens.names());
+        try {
+            return new Program(statementList(), tokens.names());
+        } finally {
+            Names.restore(previous);
+        }
     }
 
     // 解析语句列表：用循环迭代代替了递归调用，效果与bnf一样，更高效且避免递归栈溢出
@@ -102,7 +127,7 @@ public class Parser {
     private List<Statement> statementList() {
         List<Statement> statements = new ArrayList<>();
         // 对应递归终止条件 ε (当遇到"}"或EOF)
-        while (!isAtEnd() && peek().symbol != Symbol.RBRACE) {
+        while (!isAtEnd() && tokens.symbol(peek()) != Symbol.RBRACE) {
             Statement stmt = statement();
             if (stmt != null) {
                 statements.add(stmt);
@@ -135,8 +160,8 @@ public class Parser {
             
             // 解析字段访问链
             while (match(Symbol.DOT)) {
-                Token fieldToken = consume(Symbol.IDENTIFIER, "Expect field name after '.'");
-                expr = new FieldAccess(expr, fieldToken.value.toString());
+                int fieldToken = consume(Symbol.IDENTIFIER, "Expect field name after '.'");
+                expr = new FieldAccess(expr, tokens.id(fieldToken));
             }
             
             // 检查是否是赋值
@@ -158,7 +183,7 @@ public class Parser {
         // 赋值或表达式语句
         if (checkIdentifier()) {
             // 1. 确保当前Token是标识符（由外部 checkIdentifier() 保证）
-            Token identifierToken = consume(Symbol.IDENTIFIER, "Internal error: expected identifier");
+            int identifierToken = consume(Symbol.IDENTIFIER, "Internal error: expected identifier");
 
             // 2. 查看下一个Token判断语句类型
             if (check(Symbol.DOT)) {
@@ -183,7 +208,7 @@ public class Parser {
                 consume(Symbol.ASSIGN, "Expect '=' when assignment statement"); // 消费等号
                 Expression value = expression(); // 解析右侧表达式
                 consume(Symbol.SEMICOLON, "Expect ';' after assignment statement");
-                return new Assignment(new Variable(identifierToken.value.toString()), value);
+                return new Assignment(new Variable(tokens.id(identifierToken)), value);
             } else {
                 // --- 情况3：回退并解析表达式语句 ---
                 // 回退到标识符的起始位置（因为已经消费了标识符Token）
@@ -196,12 +221,12 @@ public class Parser {
             }
         }
 
-        throw new JvsException("Unexpected token: " + peek().symbol + " at line " + peek().line);
+        throw new JvsException("Unexpected token: " + tokens.symbol(peek()) + " at line " + tokens.line(peek()));
     }
 
     // 辅助方法：检查当前Token是否为标识符
     private boolean checkIdentifier() {
-        return peek().symbol == Symbol.IDENTIFIER;
+        return tokens.symbol(peek()) == Symbol.IDENTIFIER;
     }
 
     private Statement returnStatement() {
@@ -217,7 +242,7 @@ public class Parser {
     private VarDeclaration varDeclaration() {
         // 1.无需消费var，因为match(Symbol.VAR)已处理
         // 2. 解析标识符 <identifier>
-        Token name = consume(Symbol.IDENTIFIER, "Expect variable name after 'var'");
+        int name = consume(Symbol.IDENTIFIER, "Expect variable name after 'var'");
         // 3. 解析可选的初始化表达式 [ "=" <expression> ]
         Expression initializer = null;
         if (match(Symbol.ASSIGN)) {
@@ -225,7 +250,7 @@ public class Parser {
         }
         // 4. 匹配结尾分号
         consume(Symbol.SEMICOLON, "Expect ';' after variable declaration");
-        return new VarDeclaration(name.value.toString(), initializer);
+        return new VarDeclaration(tokens.text(name), initializer);
     }
 
     // 解析表达式 <expression> -> <logical-or>
@@ -238,7 +263,7 @@ public class Parser {
         Expression expr = logicalAnd(); // 更高优先级
         while (match(Symbol.OR)) {
             Expression right = logicalAnd();
-            expr = new BinaryExpr(expr, Symbol.OR, right);
+            expr = new LogicalExpr(expr, Symbol.OR, right);
         }
         return expr;
     }
@@ -252,7 +277,7 @@ public class Parser {
         // 循环处理所有连续的 "&&" 运算符
         while (match(Symbol.AND)) {
             Expression right = equality(); // 注意：这里调用 equality()，不是递归调用 logicalAnd()
-            expr = new BinaryExpr(expr, Symbol.AND, right);
+            expr = new LogicalExpr(expr, Symbol.AND, right);
         }
         return expr;
     }
@@ -333,7 +358,7 @@ public class Parser {
     private Expression factor() {
         // 一元运算符 ! 或 -
         if (match(Symbol.MINUS) || match(Symbol.NOT)) {
-            Symbol op = previous().symbol;
+            Symbol op = tokens.symbol(previous());
             Expression right = factor(); // 递归解析右侧表达式，右结合性：!!x 解析为 !(!x)
             return new UnaryExpr(op, right);
         }
@@ -348,16 +373,16 @@ public class Parser {
             Expression expr = new ThisExpr();
             // 继续解析可能的字段访问或方法调用
             while (match(Symbol.DOT)) {
-                Token fieldToken = consume(Symbol.IDENTIFIER, "Expect field name after '.'");
-                String fieldName = fieldToken.value.toString();
+                int fieldToken = consume(Symbol.IDENTIFIER, "Expect field name after '.'");
+                int fieldId = tokens.id(fieldToken);
                 
                 // 检查是否是方法调用
                 if (match(Symbol.LPAREN)) {
                     List<Expression> args = argumentList();
                     consume(Symbol.RPAREN, "Expect ')' after method arguments");
-                    expr = new MethodCall(expr, fieldName, args);
+                    expr = new MethodCall(expr, fieldId, args);
                 } else {
-                    expr = new FieldAccess(expr, fieldName);
+                    expr = new FieldAccess(expr, fieldId);
                 }
             }
             return expr;
@@ -367,28 +392,30 @@ public class Parser {
             return identifierExpression();
         }
         // 字面量
-        Token token = advance();
-        switch (token.symbol) {
+        int token = advance();
+        switch (tokens.symbol(token)) {
             case NUMBER:
             case TEXT:
             case TRUE:
             case FALSE:
-                return new Literal(token.value);
+            case NULL:
+                return new Literal(tokens.value(token));
             default:
-                throw new JvsException("Unexpected token: " + peek().symbol + " at line " + peek().line);
+                throw new JvsException("Unexpected token: " + tokens.symbol(peek()) + " at line " + tokens.line(peek()));
         }
     }
 
     // 解析标识符开头的表达式（变量、字段访问、函数调用、方法调用、类实例化）
     private Expression identifierExpression() {
-        Token identifier = consume(Symbol.IDENTIFIER, "Expect identifier");
-        String name = identifier.value.toString();
+        int identifier = consume(Symbol.IDENTIFIER, "Expect identifier");
+        String name = tokens.text(identifier);
+        int id = tokens.id(identifier);
         
         // 情况1：标识符后跟 ( - 可能是函数调用或类实例化
         if (match(Symbol.LPAREN)) {
             // 回退，让funcCall或classInstantiation处理
             current--;
-            return parseCallOrInstantiation(name);
+            return parseCallOrInstantiation(name, id);
         }
         
         // 情况2：标识符后跟 . - 字段访问或方法调用
@@ -400,11 +427,11 @@ public class Parser {
         }
         
         // 情况3：普通变量
-        return new Variable(name);
+        return new Variable(id);
     }
 
     // 解析函数调用或类实例化
-    private Expression parseCallOrInstantiation(String name) {
+    private Expression parseCallOrInstantiation(String name, int id) {
         consume(Symbol.LPAREN, "Expect '('");
         
         // 检查是否是类实例化（参数列表中使用 field = value 形式）
@@ -426,25 +453,30 @@ public class Parser {
             // 函数调用
             List<Expression> args = argumentList();
             consume(Symbol.RPAREN, "Expect ')' after arguments");
-            return new FuncCall(name, args);
+            // 已注册的原生函数在此绑定；同名的脚本函数或类优先，由Resolver判断并检查参数个数
+            Native function = natives.get(name);
+            if (function != null) {
+                return new NativeCall(function, args);
+            }
+            return new FuncCall(id, args);
         }
     }
 
     // 解析字段访问或方法调用
     private Expression parseFieldOrMethod() {
-        Expression expr = new Variable(consume(Symbol.IDENTIFIER, "Expect identifier").value.toString());
+        Expression expr = new Variable(tokens.id(consume(Symbol.IDENTIFIER, "Expect identifier")));
         
         while (match(Symbol.DOT)) {
-            Token fieldToken = consume(Symbol.IDENTIFIER, "Expect field name after '.'");
-            String fieldName = fieldToken.value.toString();
+            int fieldToken = consume(Symbol.IDENTIFIER, "Expect field name after '.'");
+            int fieldId = tokens.id(fieldToken);
             
             // 检查是否是方法调用（后面跟着括号）
             if (match(Symbol.LPAREN)) {
                 List<Expression> args = argumentList();
                 consume(Symbol.RPAREN, "Expect ')' after method arguments");
-                expr = new MethodCall(expr, fieldName, args);
+                expr = new MethodCall(expr, fieldId, args);
             } else {
-                expr = new FieldAccess(expr, fieldName);
+                expr = new FieldAccess(expr, fieldId);
             }
         }
         
@@ -454,14 +486,14 @@ public class Parser {
     // 函数调用
     private FuncCall funcCall() {
         // 函数名
-        Token nameToken = consume(Symbol.IDENTIFIER, "Expect function name");
+        int nameToken = consume(Symbol.IDENTIFIER, "Expect function name");
         // 起始(
         consume(Symbol.LPAREN, "Expect '(' after function name");
         // 参数
         List<Expression> args = argumentList();
         // 结束)
         consume(Symbol.RPAREN, "Expect ')' after arguments");
-        return new FuncCall(nameToken.value.toString(), args);
+        return new FuncCall(tokens.id(nameToken), args);
     }
 
     // 解析参数列表
@@ -529,8 +561,8 @@ public class Parser {
     private Statement funcDefinition() {
         // consume(Symbol.FUN, "Expect 'fun' keyword"); // 消费 fun
         // 解析函数名
-        Token nameToken = consume(Symbol.IDENTIFIER, "Expect function name after 'fun'");
-        String functionName = nameToken.value.toString();
+        int nameToken = consume(Symbol.IDENTIFIER, "Expect function name after 'fun'");
+        String functionName = tokens.text(nameToken);
         // 解析参数列表
         consume(Symbol.LPAREN, "Expect '(' after function name");
         List<String> parameters = defineParameterList();
@@ -551,8 +583,8 @@ public class Parser {
         if (check(Symbol.RPAREN)) return params;
 
         do {
-            Token paramToken = consume(Symbol.IDENTIFIER, "Expect parameter name");
-            params.add(paramToken.value.toString());
+            int paramToken = consume(Symbol.IDENTIFIER, "Expect parameter name");
+            params.add(tokens.text(paramToken));
         } while (match(Symbol.COMMA));
 
         return params;
@@ -563,8 +595,8 @@ public class Parser {
         // 1. 消费 class 关键字
         // consume(Symbol.CLASS, "Expect 'class' keyword");
         // 2. 解析结构体名称
-        Token nameToken = consume(Symbol.IDENTIFIER, "Expect class name");
-        String className = nameToken.value.toString();
+        int nameToken = consume(Symbol.IDENTIFIER, "Expect class name");
+        String className = tokens.text(nameToken);
         // 3. 解析字段列表和方法列表
         consume(Symbol.LBRACE, "Expect '{' after class name");
         List<FieldDeclaration> fields = new ArrayList<>();
@@ -573,8 +605,8 @@ public class Parser {
         while (!check(Symbol.RBRACE) && !isAtEnd()) {
             if (match(Symbol.VAR)) {
                 // 字段定义
-                Token fieldToken = consume(Symbol.IDENTIFIER, "Expect field name");
-                String fieldName = fieldToken.value.toString();
+                int fieldToken = consume(Symbol.IDENTIFIER, "Expect field name");
+                int fieldId = tokens.id(fieldToken);
                 
                 Expression initializer = null;
                 if (match(Symbol.ASSIGN)) {
@@ -582,11 +614,11 @@ public class Parser {
                 }
                 
                 consume(Symbol.SEMICOLON, "Expect ';' after field declaration");
-                fields.add(new FieldDeclaration(fieldName, initializer));
+                fields.add(new FieldDeclaration(fieldId, initializer));
             } else if (match(Symbol.FUN)) {
                 // 方法定义
-                Token methodNameToken = consume(Symbol.IDENTIFIER, "Expect method name");
-                String methodName = methodNameToken.value.toString();
+                int methodNameToken = consume(Symbol.IDENTIFIER, "Expect method name");
+                String methodName = tokens.text(methodNameToken);
                 
                 consume(Symbol.LPAREN, "Expect '(' after method name");
                 List<String> parameters = defineParameterList();
@@ -598,7 +630,7 @@ public class Parser {
                 
                 methods.add(new FuncDefinition(methodName, parameters, body));
             } else {
-                throw new JvsException("Expect field or method definition in class at line " + peek().line);
+                throw new JvsException("Expect field or method definition in class at line " + tokens.line(peek()));
             }
         }
         
@@ -613,10 +645,10 @@ public class Parser {
 
         if (!check(Symbol.RPAREN)) {
             do {
-                Token fieldToken = consume(Symbol.IDENTIFIER, "Expect field name");
+                int fieldToken = consume(Symbol.IDENTIFIER, "Expect field name");
                 consume(Symbol.ASSIGN, "Expect '=' after field name");
                 Expression initExpr = expression();
-                initializers.put(fieldToken.value.toString(), initExpr);
+                initializers.put(tokens.text(fieldToken), initExpr);
             } while (match(Symbol.COMMA));
         }
 
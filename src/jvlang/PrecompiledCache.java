@@ -0,0 +1,147 @@
+package jvlang;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预编译脚本的磁盘缓存：目录中的<源码SHA-256>.jvsc保存源码解析后的语法树（格式见ProgramWriter）
+ * load时按源码摘要查找文件，存在且有效时以内存映射读取并解码，不经过Lexer与Parser；
+ * 否则解析源码并写入文件（先写临时文件再替换，多个进程可共用同一目录）。
+ * POSIX文件系统上文件权限为rw-r--r--，其他用户的进程可以读取，写入还需要目录的写权限。
+ * 源码改变后摘要不同，不会读到旧的结果；格式版本或原生函数注册表改变、文件损坏时重新解析并覆盖。
+ * 文件保存Parser的结果，Optimizer在加载后按当前设置执行。
+ * 与ProgramCache一样有自己的符号表，程序须在new Scope(cache.getNames())创建的根作用域中执行
+ * @author Yumerain
+ */
+public class PrecompiledCache {
+
+    public static final String EXTENSION = ".jvsc";
+
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+
+    private final Path directory;
+    private final Natives natives;
+    // 加载的程序中标识符所属的符号表
+    private final Names names = new Names();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PrecompiledCache(Path directory) {
+        this(directory, Natives.standard());
+    }
+
+    public PrecompiledCache(Path directory, Natives natives) {
+        this.directory = directory;
+        this.natives = natives;
+    }
+
+    // 按UTF-8读取源码文件
+    public Program load(Path source) throws IOException {
+        return load(new String(Files.readAllBytes(source), StandardCharsets.UTF_8));
+    }
+
+    public Program load(String source) {
+        byte[] digest = ProgramCache.digest(source);
+        Path file = directory.resolve(hex(digest) + EXTENSION);
+        Program program = read(file, digest);
+        if (program != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            Lexer lexer = new Lexer(source, names);
+            program = new Parser(Lexer.parallel() ? lexer.scanParallel() : lexer.scan(), natives).parse();
+            write(file, program, digest);
+        }
+        if (Optimizer.enabled()) {
+            program = new Optimizer().optimize(program);
+        }
+        return program;
+    }
+
+    // 文件不存在、已失效或无法解码时返回null，任何解码错误都按未命中处理
+    private Program read(Path file, byte[] digest) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ProgramReader(natives, names).read(buffer, digest);
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            return null;
+        }
+    }
+
+    // 写入失败（如目录不可写）或程序嵌套过深时只是不缓存
+    private void write(Path file, Program program, byte[] digest) {
+        byte[] bytes;
+        try {
+            bytes = new ProgramWriter().write(program, digest, natives.signature());
+        } catch (JvsException | StackOverflowError e) {
+            return;
+        }
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            // 临时文件创建时只有所有者可读写
+            try {
+                Files.setPosixFilePermissions(temp, FILE_PERMISSIONS);
+            } catch (UnsupportedOperationException e) {
+                // 不支持POSIX权限的文件系统保持默认权限
+            }
+            Files.write(temp, bytes);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // 临时文件留在目录中，不影响加载
+                }
+            }
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // 执行加载的程序的根作用域须使用此符号表
+    public Names getNames() {
+        return names;
+    }
+
+    // 从文件加载的次数
+    public long hits() {
+        return hits.get();
+    }
+
+    // 解析源码的次数
+    public long misses() {
+        return misses.get();
+    }
+}
@@ -6,19 +6,42 @@ import java.util.List;
 
 /**
  * 程序根节点
+ * 解析与执行会在语法树上写入根作用域相关的状态（变量地址、函数捕获的作用域、推断的变量类型等），
+ * 一个Program只在一个根作用域中执行；需要重复使用时保留未执行的Program，每次执行copy()得到的副本。
+ * 语法树中的名称编号属于names，只能在使用同一符号表的根作用域中执行
  * @author Yumerain
  */
 public class Program {
 
     public final List<Statement> statements;
+    // 名称编号所属的符号表
+    public final Names names;
 
     public Program(List<Statement> statements) {
+        this(statements, Names.current());
+    }
+
+    public Program(List<Statement> statements, Names names) {
         this.statements = statements;
+        this.names = names;
+    }
+
+    // 复制语法树，副本与原语法树互不影响
+    public Program copy() {
+        return new Copier().copy(this);
     }
 
+    // 解释器与JIT的脚本调用占用Java栈，栈溢出时转为JvsException，不中断调用线程；
+    // 深递归的脚本可用字节码虚拟机(-Djvs.engine=vm)执行。结束时刷新脚本输出
     public void exec(Scope scope) {
-        for (int i = 0; i < statements.size(); i++) {
-            statements.get(i).exec(scope);
+        try {
+            for (int i = 0; i < statements.size(); i++) {
+                statements.get(i).exec(scope);
+            }
+        } catch (StackOverflowError e) {
+            throw new JvsException("Stack overflow: recursion is too deep for the Java stack", e);
+        } finally {
+            scope.getOutput().flush();
         }
     }
 }
@@ -0,0 +1,153 @@
+package jvlang;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 已解析程序的缓存：以源码内容的SHA-256为键，保存词法、语法分析（及Optimizer）后尚未执行的Program，
+ * 命中时返回其副本(Program.copy)，不再分析源码；容量固定，超出时淘汰最久未使用的程序
+ * 线程安全，多个线程可同时取得并各自执行同一源码的程序；未命中时在锁外分析源码。
+ * 原生函数在解析时绑定，注册表变化（Natives.version）后缓存清空。
+ * 缓存有自己的符号表(getNames)，程序须在new Scope(cache.getNames())创建的根作用域中执行；
+ * 淘汰的程序中的标识符仍留在缓存的符号表中，丢弃缓存及其程序、根作用域后一起回收
+ * @author Yumerain
+ */
+public class ProgramCache {
+
+    // 默认缓存的程序数
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final Natives natives;
+    private final int capacity;
+    // 缓存的程序中标识符所属的符号表
+    private final Names names = new Names();
+
+    private final Map<Key, Program> entries;
+
+    // 缓存内容对应的原生函数注册表版本
+    private int nativesVersion;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ProgramCache() {
+        this(Natives.standard(), DEFAULT_CAPACITY);
+    }
+
+    public ProgramCache(Natives natives, int capacity) {
+        this.natives = natives;
+        this.capacity = capacity;
+        this.nativesVersion = natives.version();
+        this.entries = new LinkedHashMap<Key, Program>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Program> eldest) {
+                if (size() > ProgramCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // 返回源码对应程序的副本，可直接交给Resolver与执行引擎
+    public Program get(String source) {
+        Key key = new Key(digest(source));
+        Program program;
+        int version;
+        synchronized (this) {
+            validate();
+            program = entries.get(key);
+            if (program != null) {
+                hits++;
+                return program.copy();
+            }
+            misses++;
+            version = nativesVersion;
+        }
+        program = parse(source);
+        synchronized (this) {
+            // 解析期间注册表变化时不缓存
+            if (version == nativesVersion && natives.version() == version) {
+                entries.put(key, program);
+            }
+        }
+        return program.copy();
+    }
+
+    private Program parse(String source) {
+        Lexer lexer = new Lexer(source, names);
+        Program program = new Parser(Lexer.parallel() ? lexer.scanParallel() : lexer.scan(), natives).parse();
+        if (Optimizer.enabled()) {
+            program = new Optimizer().optimize(program);
+        }
+        return program;
+    }
+
+    private void validate() {
+        if (natives.version() != nativesVersion) {
+            entries.clear();
+            nativesVersion = natives.version();
+        }
+    }
+
+    // 执行缓存中程序的根作用域须使用此符号表
+    public Names getNames() {
+        return names;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // 源码的SHA-256，PrecompiledCache同样以此为键
+    static byte[] digest(String source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 源码摘要作为键
+    private static final class Key {
+        private final byte[] digest;
+        private final int hash;
+
+        Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(digest, ((Key) obj).digest);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package jvlang;
+
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.ClassExpr;
+import jvlang.expr.ConcatExpr;
+import jvlang.expr.Expression;
+import jvlang.expr.FieldAccess;
+import jvlang.expr.FuncCall;
+import jvlang.expr.Literal;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.MethodCall;
+import jvlang.expr.NativeCall;
+import jvlang.expr.ThisExpr;
+import jvlang.expr.UnaryExpr;
+import jvlang.expr.Variable;
+import jvlang.model.FieldDeclaration;
+import jvlang.stmt.Assignment;
+import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.ExprStatement;
+import jvlang.stmt.FuncDefinition;
+import jvlang.stmt.IfStatement;
+import jvlang.stmt.LoopStatement;
+import jvlang.stmt.ReturnStatement;
+import jvlang.stmt.Statement;
+import jvlang.stmt.VarDeclaration;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static jvlang.ProgramWriter.*;
+
+/**
+ * 从.jvsc格式解码语法树（格式见ProgramWriter），不经过Lexer与Parser
+ * 原生函数调用按名称在注册表中重新绑定；格式版本、CRC32、源码摘要或原生函数注册表的签名不符时返回null，
+ * 由调用方重新解析源码。文件中的个数与长度不超过剩余的字节数、嵌套不超过MAX_DEPTH层，
+ * 否则抛出JvsException，不按损坏的个数分配内存，也不会栈溢出
+ * @author Yumerain
+ */
+public class ProgramReader {
+
+    // 语句与表达式嵌套的最大层数
+    public static final int MAX_DEPTH = 1024;
+
+    private final Natives natives;
+    // 解码出的名称登记的符号表
+    private final Names names;
+
+    private ByteBuffer buffer;
+    private String[] strings;
+    private Literal[] constants;
+    private int depth;
+
+    public ProgramReader(Natives natives) {
+        this(natives, Names.current());
+    }
+
+    public ProgramReader(Natives natives, Names names) {
+        this.natives = natives;
+        this.names = names;
+    }
+
+    public Program read(ByteBuffer buffer, byte[] digest) {
+        Names previous = Names.enter(names);
+        try {
+            return decode(buffer, digest);
+        } finally {
+            Names.restore(previous);
+        }
+    }
+
+    private Program decode(ByteBuffer buffer, byte[] digest) {
+        this.buffer = buffer;
+        this.depth = 0;
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) return null;
+        }
+        int version = (buffer.get() & 0xFF) << 8 | (buffer.get() & 0xFF);
+        if (version != VERSION) {
+            return null;
+        }
+        // 文件内容损坏时不解码
+        int checksum = buffer.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        for (byte b : digest) {
+            if (buffer.get() != b) return null;
+        }
+        // 注册表变化后同一源码的解析结果可能不同（调用可能变为或不再是原生函数调用）
+        if (!natives.signature().equals(utf8())) {
+            return null;
+        }
+        strings = new String[count()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = utf8();
+        }
+        // 常量解码为共享的字面量节点，字面量不可变
+        constants = new Literal[count()];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = new Literal(constant());
+        }
+        List<Statement> statements = statements();
+        if (buffer.hasRemaining()) {
+            return null;
+        }
+        return new Program(statements, names);
+    }
+
+    private List<Statement> statements() {
+        int count = count();
+        List<Statement> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(statement());
+        }
+        return statements;
+    }
+
+    private Statement statement() {
+        enter();
+        Statement statement = decodeStatement();
+        depth--;
+        return statement;
+    }
+
+    private Statement decodeStatement() {
+        int tag = buffer.get();
+        switch (tag) {
+            case VAR: {
+                VarDeclaration declaration = new VarDeclaration(string(), expression());
+                if (buffer.get() != 0) {
+                    declaration.type = Symbol.valueOf(string());
+                }
+                return declaration;
+            }
+            case ASSIGN:
+                return new Assignment(expression(), expression());
+            case EXPR:
+                return new ExprStatement(expression());
+            case RETURN:
+                return new ReturnStatement(expression());
+            case IF: {
+                Expression condition = expression();
+                List<Statement> thenBranch = statements();
+                List<Statement> elseBranch = buffer.get() != 0 ? statements() : null;
+                return new IfStatement(condition, thenBranch, elseBranch);
+            }
+            case LOOP:
+                return new LoopStatement(expression(), statements());
+            case FUNCTION:
+                return function();
+            case CLASS: {
+                String name = string();
+                int fieldCount = count();
+                List<FieldDeclaration> fields = new ArrayList<>(fieldCount);
+                for (int i = 0; i < fieldCount; i++) {
+                    fields.add(new FieldDeclaration(string(), expression()));
+                }
+                int methodCount = count();
+                List<FuncDefinition> methods = new ArrayList<>(methodCount);
+                for (int i = 0; i < methodCount; i++) {
+                    methods.add(function());
+                }
+                return new ClassDefinition(name, fields, methods);
+            }
+            default:
+                throw new JvsException("Invalid statement tag " + tag + " in precompiled script");
+        }
+    }
+
+    private FuncDefinition function() {
+        String name = string();
+        int count = count();
+        List<String> parameters = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            parameters.add(string());
+        }
+        return new FuncDefinition(name, parameters, statements());
+    }
+
+    private List<Expression> expressions() {
+        int count = count();
+        List<Expression> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            expressions.add(expression());
+        }
+        return expressions;
+    }
+
+    private Expression expression() {
+        enter();
+        Expression expression = decodeExpression();
+        depth--;
+        return expression;
+    }
+
+    private Expression decodeExpression() {
+        int tag = buffer.get();
+        switch (tag) {
+            case NONE:
+                return null;
+            case LITERAL:
+                return constants[varint()];
+            case VARIABLE:
+                return new Variable(string());
+            case THIS:
+                return new ThisExpr();
+            case BINARY: {
+                Expression left = expression();
+                Symbol operator = Symbol.valueOf(string());
+                return new BinaryExpr(left, operator, expression());
+            }
+            case LOGICAL: {
+                Expression left = expression();
+                Symbol operator = Symbol.valueOf(string());
+                return new LogicalExpr(left, operator, expression());
+            }
+            case CONCAT:
+                return new ConcatExpr(expressions());
+            case UNARY:
+                return new UnaryExpr(Symbol.valueOf(string()), expression());
+            case CALL:
+                return new FuncCall(string(), expressions());
+            case NATIVE: {
+                Native function = natives.get(string());
+                if (function == null) {
+                    throw new JvsException("Unknown native function in precompiled script");
+                }
+                return new NativeCall(function, expressions());
+            }
+            case METHOD: {
+                Expression target = expression();
+                return new MethodCall(target, string(), expressions());
+            }
+            case FIELD: {
+                Expression target = expression();
+                return new FieldAccess(target, string());
+            }
+            case NEW: {
+                String className = string();
+                int count = count();
+                Map<String, Expression> initializers = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    initializers.put(string(), expression());
+                }
+                return new ClassExpr(className, initializers);
+            }
+            default:
+                throw new JvsException("Invalid expression tag " + tag + " in precompiled script");
+        }
+    }
+
+    private Object constant() {
+        int tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case LONG: {
+                long zigzag = varlong();
+                return Numbers.box((zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            case DOUBLE:
+                return Double.longBitsToDouble(buffer.getLong());
+            case STRING:
+                return strings[varint()];
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            default:
+                throw new JvsException("Invalid constant tag " + tag + " in precompiled script");
+        }
+    }
+
+    private String utf8() {
+        byte[] bytes = new byte[count()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw new JvsException("Nesting too deep in precompiled script");
+        }
+    }
+
+    // 个数或长度：每个元素至少占一个字节，超过剩余字节数时文件无效
+    private int count() {
+        long count = varlong();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new JvsException("Invalid count in precompiled script");
+        }
+        return (int) count;
+    }
+
+    private String string() {
+        return strings[varint()];
+    }
+
+    private int varint() {
+        return (int) varlong();
+    }
+
+    private long varlong() {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package jvlang;
+
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.ClassExpr;
+import jvlang.expr.ConcatExpr;
+import jvlang.expr.Expression;
+import jvlang.expr.FieldAccess;
+import jvlang.expr.FuncCall;
+import jvlang.expr.Literal;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.MethodCall;
+import jvlang.expr.NativeCall;
+import jvlang.expr.ThisExpr;
+import jvlang.expr.UnaryExpr;
+import jvlang.expr.Variable;
+import jvlang.model.FieldDeclaration;
+import jvlang.stmt.Assignment;
+import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.ExprStatement;
+import jvlang.stmt.FuncDefinition;
+import jvlang.stmt.IfStatement;
+import jvlang.stmt.LoopStatement;
+import jvlang.stmt.ReturnStatement;
+import jvlang.stmt.Statement;
+import jvlang.stmt.VarDeclaration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 把语法树编码为.jvsc格式，由ProgramReader解码
+ * 格式：魔数"JVSC"、格式版本(u16)、其后全部内容的CRC32(u32)、源码SHA-256(32字节)、解析时原生函数注册表的签名、
+ * 字符串表、常量表、语句列表；
+ * 整数都是变长编码(varint)，标识符、运算符与字符串常量只在字符串表中出现一次，以下标引用；
+ * 节点以标签字节开头，0表示空的表达式；原生函数调用只记录名称，加载时按注册表重新绑定。
+ * 嵌套超过ProgramReader.MAX_DEPTH层的程序不能编码，抛出JvsException
+ * @author Yumerain
+ */
+public class ProgramWriter {
+
+    static final byte[] MAGIC = {'J', 'V', 'S', 'C'};
+    static final int VERSION = 2;
+    // CRC32之前的魔数与版本的长度
+    static final int HEADER = 6;
+
+    // 语句标签
+    static final int VAR = 1;
+    static final int ASSIGN = 2;
+    static final int EXPR = 3;
+    static final int RETURN = 4;
+    static final int IF = 5;
+    static final int LOOP = 6;
+    static final int FUNCTION = 7;
+    static final int CLASS = 8;
+
+    // 表达式标签
+    static final int NONE = 0;
+    static final int LITERAL = 20;
+    static final int VARIABLE = 21;
+    static final int THIS = 22;
+    static final int BINARY = 23;
+    static final int LOGICAL = 24;
+    static final int CONCAT = 25;
+    static final int UNARY = 26;
+    static final int CALL = 27;
+    static final int NATIVE = 28;
+    static final int METHOD = 29;
+    static final int FIELD = 30;
+    static final int NEW = 31;
+
+    // 常量标签
+    static final int NULL = 0;
+    static final int LONG = 1;
+    static final int DOUBLE = 2;
+    static final int STRING = 3;
+    static final int TRUE = 4;
+    static final int FALSE = 5;
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    // 语句部分，字符串表与常量表在全部语句编码后才确定
+    private byte[] body = new byte[1024];
+    private int size;
+    private int depth;
+
+    // signature为解析所用注册表的Natives.signature()
+    public byte[] write(Program program, byte[] digest, String signature) {
+        statements(program.statements);
+        byte[] code = Arrays.copyOf(body, size);
+        body = new byte[1024 + 16 * strings.size()];
+        size = 0;
+        for (byte b : MAGIC) {
+            u8(b);
+        }
+        u8(VERSION >>> 8);
+        u8(VERSION);
+        // CRC32在其后内容写完后填入
+        size += 4;
+        for (byte b : digest) {
+            u8(b);
+        }
+        byte[] natives = signature.getBytes(StandardCharsets.UTF_8);
+        varint(natives.length);
+        bytes(natives);
+        varint(strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            bytes(bytes);
+        }
+        varint(constants.size());
+        for (Object value : constants) {
+            constant(value);
+        }
+        bytes(code);
+        CRC32 crc = new CRC32();
+        crc.update(body, HEADER + 4, size - HEADER - 4);
+        int value = (int) crc.getValue();
+        for (int i = 0; i < 4; i++) {
+            body[HEADER + i] = (byte) (value >>> (24 - 8 * i));
+        }
+        return Arrays.copyOf(body, size);
+    }
+
+    private void statements(List<Statement> statements) {
+        varint(statements.size());
+        for (Statement stmt : statements) {
+            statement(stmt);
+        }
+    }
+
+    private void statement(Statement stmt) {
+        enter();
+        encodeStatement(stmt);
+        depth--;
+    }
+
+    private void encodeStatement(Statement stmt) {
+        if (stmt instanceof VarDeclaration) {
+            VarDeclaration declaration = (VarDeclaration) stmt;
+            u8(VAR);
+            string(declaration.identifier);
+            expression(declaration.initializer);
+            // 是否指定了类型，指定时随后是类型名
+            u8(declaration.type != null ? 1 : 0);
+            if (declaration.type != null) {
+                string(declaration.type.name());
+            }
+        } else if (stmt instanceof Assignment) {
+            Assignment assignment = (Assignment) stmt;
+            u8(ASSIGN);
+            expression(assignment.target);
+            expression(assignment.value);
+        } else if (stmt instanceof ExprStatement) {
+            u8(EXPR);
+            expression(((ExprStatement) stmt).expression);
+        } else if (stmt instanceof ReturnStatement) {
+            u8(RETURN);
+            expression(((ReturnStatement) stmt).expression);
+        } else if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            u8(IF);
+            expression(ifStmt.condition);
+            statements(ifStmt.thenBranch);
+            u8(ifStmt.elseBranch != null ? 1 : 0);
+            if (ifStmt.elseBranch != null) {
+                statements(ifStmt.elseBranch);
+            }
+        } else if (stmt instanceof LoopStatement) {
+            LoopStatement loop = (LoopStatement) stmt;
+            u8(LOOP);
+            expression(loop.condition);
+            statements(loop.body);
+        } else if (stmt instanceof FuncDefinition) {
+            u8(FUNCTION);
+            function((FuncDefinition) stmt);
+        } else if (stmt instanceof ClassDefinition) {
+            ClassDefinition classDef = (ClassDefinition) stmt;
+            u8(CLASS);
+            string(classDef.name);
+            varint(classDef.fields.size());
+            for (FieldDeclaration field : classDef.fields) {
+                string(field.name);
+                expression(field.initializer);
+            }
+            varint(classDef.methods.size());
+            for (FuncDefinition method : classDef.methods) {
+                function(method);
+            }
+        } else {
+            throw new JvsException("Unsupported statement: " + stmt.getClass().getSimpleName());
+        }
+    }
+
+    private void function(FuncDefinition function) {
+        string(function.name);
+        varint(function.parameters.size());
+        for (String parameter : function.parameters) {
+            string(parameter);
+        }
+        statements(function.body);
+    }
+
+    private void expressions(List<Expression> expressions) {
+        varint(expressions.size());
+        for (Expression expr : expressions) {
+            expression(expr);
+        }
+    }
+
+    private void expression(Expression expr) {
+        enter();
+        encodeExpression(expr);
+        depth--;
+    }
+
+    // 与ProgramReader的嵌套层数一致，超过时读取方会拒绝
+    private void enter() {
+        if (++depth > ProgramReader.MAX_DEPTH) {
+            throw new JvsException("Nesting too deep for precompiled script");
+        }
+    }
+
+    private void encodeExpression(Expression expr) {
+        if (expr == null) {
+            u8(NONE);
+        } else if (expr instanceof Literal) {
+            u8(LITERAL);
+            varint(constantIndex(((Literal) expr).value));
+        } else if (expr instanceof Variable) {
+            u8(VARIABLE);
+            string(((Variable) expr).name);
+        } else if (expr instanceof ThisExpr) {
+            u8(THIS);
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            u8(BINARY);
+            expression(binary.left);
+            string(binary.operator.name());
+            expression(binary.right);
+        } else if (expr instanceof LogicalExpr) {
+            LogicalExpr logical = (LogicalExpr) expr;
+            u8(LOGICAL);
+            expression(logical.left);
+            string(logical.operator.name());
+            expression(logical.right);
+        } else if (expr instanceof ConcatExpr) {
+            u8(CONCAT);
+            expressions(((ConcatExpr) expr).parts);
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            u8(UNARY);
+            string(unary.operator.name());
+            expression(unary.right);
+        } else if (expr instanceof FuncCall) {
+            FuncCall call = (FuncCall) expr;
+            u8(CALL);
+            string(call.name);
+            expressions(call.args);
+        } else if (expr instanceof NativeCall) {
+            NativeCall call = (NativeCall) expr;
+            u8(NATIVE);
+            string(call.function.name);
+            expressions(call.args);
+        } else if (expr instanceof MethodCall) {
+            MethodCall call = (MethodCall) expr;
+            u8(METHOD);
+            expression(call.target);
+            string(call.methodName);
+            expressions(call.arguments);
+        } else if (expr instanceof FieldAccess) {
+            FieldAccess field = (FieldAccess) expr;
+            u8(FIELD);
+            expression(field.target);
+            string(field.fieldName);
+        } else if (expr instanceof ClassExpr) {
+            ClassExpr classExpr = (ClassExpr) expr;
+            u8(NEW);
+            string(classExpr.className);
+            varint(classExpr.fieldInitializers.size());
+            for (Map.Entry<String, Expression> entry : classExpr.fieldInitializers.entrySet()) {
+                string(entry.getKey());
+                expression(entry.getValue());
+            }
+        } else {
+            throw new JvsException("Unsupported expression: " + expr.getClass().getSimpleName());
+        }
+    }
+
+    // 写入字符串表下标
+    private void string(String value) {
+        Integer index = stringIndex.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            stringIndex.put(value, index);
+        }
+        varint(index);
+    }
+
+    // 相同的常量只保存一次；HashMap允许null作为键
+    private int constantIndex(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+            if (value instanceof String) {
+                internString((String) value);
+            }
+        }
+        return index;
+    }
+
+    // 字符串常量在编码语句时加入字符串表，常量表中引用其下标
+    private void internString(String value) {
+        if (!stringIndex.containsKey(value)) {
+            stringIndex.put(value, strings.size());
+            strings.add(value);
+        }
+    }
+
+    private void constant(Object value) {
+        if (value == null) {
+            u8(NULL);
+        } else if (value instanceof Long) {
+            u8(LONG);
+            long bits = (Long) value;
+            // zigzag编码，小的负数同样短
+            varlong((bits << 1) ^ (bits >> 63));
+        } else if (value instanceof Double) {
+            u8(DOUBLE);
+            long bits = Double.doubleToRawLongBits((Double) value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                u8((int) (bits >>> shift));
+            }
+        } else if (value instanceof String) {
+            u8(STRING);
+            varint(stringIndex.get(value));
+        } else if (value instanceof Boolean) {
+            u8((Boolean) value ? TRUE : FALSE);
+        } else {
+            throw new JvsException("Unsupported constant: " + value.getClass().getSimpleName());
+        }
+    }
+
+    private void u8(int value) {
+        if (size == body.length) {
+            body = Arrays.copyOf(body, size * 2);
+        }
+        body[size++] = (byte) value;
+    }
+
+    private void bytes(byte[] bytes) {
+        if (size + bytes.length > body.length) {
+            body = Arrays.copyOf(body, Math.max(size * 2, size + bytes.length));
+        }
+        System.arraycopy(bytes, 0, body, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void varint(int value) {
+        varlong(value & 0xFFFFFFFFL);
+    }
+
+    private void varlong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            u8((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        u8((int) value);
+    }
+}
@@ -0,0 +1,411 @@
+package jvlang;
+
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.ClassExpr;
+import jvlang.expr.ConcatExpr;
+import jvlang.expr.Expression;
+import jvlang.expr.FieldAccess;
+import jvlang.expr.FuncCall;
+import jvlang.expr.Literal;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.MethodCall;
+import jvlang.expr.NativeCall;
+import jvlang.expr.ThisExpr;
+import jvlang.expr.UnaryExpr;
+import jvlang.expr.Variable;
+import jvlang.model.FieldDeclaration;
+import jvlang.stmt.Assignment;
+import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.ExprStatement;
+import jvlang.stmt.FuncDefinition;
+import jvlang.stmt.IfStatement;
+import jvlang.stmt.LoopStatement;
+import jvlang.stmt.ReturnStatement;
+import jvlang.stmt.Statement;
+import jvlang.stmt.VarDeclaration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 静态解析：在Parser.parse()与Program.exec()之间执行，
+ * 为每个变量计算(depth, slot)地址，未定义的变量在此处报错
+ * @author Yumerain
+ */
+public class Resolver {
+
+    // 一个块对应运行时的一个作用域
+    private static class Block {
+        final Block parent;
+        // 函数（方法）作用域，其父级是定义时的作用域
+        final boolean function;
+        // 方法所属的类，方法内可直接使用字段名
+        final ClassDefinition owner;
+        // 块内全部声明（预扫描得到），槽位已分配
+        final Map<String, VarDeclaration> declarations = new HashMap<>();
+        // 按语句顺序已执行到的声明
+        final Set<String> declared = new HashSet<>();
+        // 块内定义的函数与类
+        final Set<String> functions = new HashSet<>();
+        final Set<String> classes = new HashSet<>();
+        int size;
+
+        Block(Block parent, boolean function, ClassDefinition owner) {
+            this.parent = parent;
+            this.function = function;
+            this.owner = owner;
+        }
+    }
+
+    private final Scope root;
+    private Block block;
+    // 正在解析延迟执行的代码（字段默认值），可以引用外层稍后声明的变量
+    private boolean deferred;
+
+    public Resolver(Scope root) {
+        this.root = root;
+    }
+
+    // 程序与根作用域须使用同一符号表，否则名称编号对不上
+    public void resolve(Program program) {
+        if (program.names != root.getNames()) {
+            throw new JvsException("Program and root scope use different symbol tables");
+        }
+        Names previous = Names.enter(program.names);
+        try {
+            resolveProgram(program);
+        } finally {
+            Names.restore(previous);
+        }
+    }
+
+    private void resolveProgram(Program program) {
+        block = new Block(null, false, null);
+        block.size = root.size();
+        // 根作用域中新增的变量，全部解析成功后才绑定，避免失败的输入残留变量
+        List<VarDeclaration> globals = new ArrayList<>();
+        for (Statement stmt : program.statements) {
+            if (stmt instanceof VarDeclaration) {
+                VarDeclaration declaration = (VarDeclaration) stmt;
+                if (root.getDeclaration(declaration.id) != null) {
+                    throw new JvsException("Variable already declared: " + declaration.identifier);
+                }
+                globals.add(declaration);
+            }
+        }
+        declareAll(program.statements);
+        statements(program.statements);
+        block = null;
+        for (VarDeclaration declaration : globals) {
+            root.bind(declaration);
+        }
+    }
+
+    // 预扫描块内直接声明的变量并分配槽位，同时检查块内重复定义的函数与类
+    private void declareAll(List<Statement> statements) {
+        for (Statement stmt : statements) {
+            if (stmt instanceof VarDeclaration) {
+                declare((VarDeclaration) stmt);
+            } else if (stmt instanceof FuncDefinition) {
+                String name = ((FuncDefinition) stmt).name;
+                if (!block.functions.add(name)) {
+                    throw new JvsException("Function already defined: " + name);
+                }
+            } else if (stmt instanceof ClassDefinition) {
+                String name = ((ClassDefinition) stmt).name;
+                if (!block.classes.add(name)) {
+                    throw new JvsException("class already defined: " + name);
+                }
+            }
+        }
+    }
+
+    private void declare(VarDeclaration declaration) {
+        if (block.declarations.containsKey(declaration.identifier)) {
+            throw new JvsException("Variable already declared: " + declaration.identifier);
+        }
+        declaration.slot = block.size++;
+        block.declarations.put(declaration.identifier, declaration);
+    }
+
+    // 参数和this没有声明语句，以无类型的声明占位
+    private void declareImplicit(String name) {
+        declare(new VarDeclaration(name, null));
+        block.declared.add(name);
+    }
+
+    // 在新块中解析语句列表，返回该块需要的槽位数
+    private int block(List<Statement> statements) {
+        block = new Block(block, false, null);
+        declareAll(statements);
+        statements(statements);
+        int size = block.size;
+        block = block.parent;
+        return size;
+    }
+
+    // 分支与循环体：不需要作用域时语句直接在外层块中解析，与运行时在外层作用域中执行一致
+    private int branch(List<Statement> statements, boolean scoped) {
+        if (scoped) {
+            return block(statements);
+        }
+        statements(statements);
+        return 0;
+    }
+
+    // 块内直接声明了变量或定义了函数、类时才需要独立的作用域
+    private static boolean needsScope(List<Statement> statements) {
+        for (Statement stmt : statements) {
+            if (stmt instanceof VarDeclaration || stmt instanceof FuncDefinition || stmt instanceof ClassDefinition) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void statements(List<Statement> statements) {
+        for (Statement stmt : statements) {
+            statement(stmt);
+        }
+    }
+
+    private void statement(Statement stmt) {
+        if (stmt instanceof VarDeclaration) {
+            VarDeclaration declaration = (VarDeclaration) stmt;
+            if (declaration.initializer != null) {
+                expression(declaration.initializer);
+            }
+            block.declared.add(declaration.identifier);
+        } else if (stmt instanceof Assignment) {
+            Assignment assignment = (Assignment) stmt;
+            expression(assignment.value);
+            expression(assignment.target);
+        } else if (stmt instanceof ExprStatement) {
+            expression(((ExprStatement) stmt).expression);
+        } else if (stmt instanceof ReturnStatement) {
+            ReturnStatement returnStmt = (ReturnStatement) stmt;
+            if (returnStmt.expression != null) {
+                expression(returnStmt.expression);
+            }
+            // 返回值写入所在函数的作用域，顶层的return写入根作用域
+            int depth = 0;
+            Block b = block;
+            for (; !b.function && b.parent != null; b = b.parent) {
+                depth++;
+            }
+            returnStmt.depth = depth;
+            // 函数内返回调用结果时按尾调用执行
+            returnStmt.tailCall = b.function
+                    && (returnStmt.expression instanceof FuncCall || returnStmt.expression instanceof MethodCall);
+        } else if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            expression(ifStmt.condition);
+            ifStmt.thenScoped = needsScope(ifStmt.thenBranch);
+            ifStmt.thenSize = branch(ifStmt.thenBranch, ifStmt.thenScoped);
+            if (ifStmt.elseBranch != null) {
+                ifStmt.elseScoped = needsScope(ifStmt.elseBranch);
+                ifStmt.elseSize = branch(ifStmt.elseBranch, ifStmt.elseScoped);
+            }
+        } else if (stmt instanceof LoopStatement) {
+            LoopStatement loop = (LoopStatement) stmt;
+            expression(loop.condition);
+            loop.bodyScoped = needsScope(loop.body);
+            loop.bodySize = branch(loop.body, loop.bodyScoped);
+        } else if (stmt instanceof FuncDefinition) {
+            function((FuncDefinition) stmt, null);
+        } else if (stmt instanceof ClassDefinition) {
+            ClassDefinition classDef = (ClassDefinition) stmt;
+            boolean saved = deferred;
+            deferred = true;
+            for (FieldDeclaration field : classDef.fields) {
+                if (field.initializer != null) {
+                    expression(field.initializer);
+                }
+            }
+            deferred = saved;
+            for (FuncDefinition method : classDef.methods) {
+                function(method, classDef);
+            }
+        } else {
+            throw new JvsException("Unsupported statement: " + stmt.getClass().getSimpleName());
+        }
+    }
+
+    // 函数体与参数共用一个作用域，方法的this固定在槽位0
+    private void function(FuncDefinition function, ClassDefinition owner) {
+        boolean saved = deferred;
+        deferred = false;
+        block = new Block(block, true, owner);
+        if (owner != null) {
+            declareImplicit("this");
+        }
+        for (String param : function.parameters) {
+            declareImplicit(param);
+        }
+        declareAll(function.body);
+        statements(function.body);
+        function.frameSize = block.size;
+        block = block.parent;
+        deferred = saved;
+    }
+
+    private void expression(Expression expr) {
+        if (expr instanceof Literal) {
+            return;
+        }
+        if (expr instanceof Variable) {
+            variable((Variable) expr);
+        } else if (expr instanceof ThisExpr) {
+            Variable address = lookup("this");
+            if (address == null) {
+                throw new JvsException("'this' is not bound to a class instance");
+            }
+            ((ThisExpr) expr).depth = address.depth;
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            expression(binary.left);
+            expression(binary.right);
+        } else if (expr instanceof ConcatExpr) {
+            for (Expression part : ((ConcatExpr) expr).parts) {
+                expression(part);
+            }
+        } else if (expr instanceof LogicalExpr) {
+            LogicalExpr logical = (LogicalExpr) expr;
+            expression(logical.left);
+            expression(logical.right);
+        } else if (expr instanceof UnaryExpr) {
+            expression(((UnaryExpr) expr).right);
+        } else if (expr instanceof FuncCall) {
+            FuncCall call = (FuncCall) expr;
+            for (Expression arg : call.args) {
+                expression(arg);
+            }
+            // 外层块都没有同名定义时，运行时总是在根作用域中找到被调函数
+            if (!definedInBlock(call.name)) {
+                call.root = root;
+            }
+        } else if (expr instanceof NativeCall) {
+            NativeCall call = (NativeCall) expr;
+            for (Expression arg : call.args) {
+                expression(arg);
+            }
+            nativeCall(call);
+        } else if (expr instanceof MethodCall) {
+            MethodCall call = (MethodCall) expr;
+            expression(call.target);
+            for (Expression arg : call.arguments) {
+                expression(arg);
+            }
+        } else if (expr instanceof FieldAccess) {
+            expression(((FieldAccess) expr).target);
+        } else if (expr instanceof ClassExpr) {
+            for (Expression initializer : ((ClassExpr) expr).fieldInitializers.values()) {
+                expression(initializer);
+            }
+        } else {
+            throw new JvsException("Unsupported expression: " + expr.getClass().getSimpleName());
+        }
+    }
+
+    private void variable(Variable variable) {
+        Variable address = lookup(variable.name);
+        if (address == null) {
+            throw new JvsException("Undefined variable: " + variable.name);
+        }
+        variable.depth = address.depth;
+        variable.slot = address.slot;
+        variable.declaration = address.declaration;
+        variable.thisField = address.thisField;
+        variable.fieldSlot = address.fieldSlot;
+    }
+
+    // 同名的脚本函数或类优先于原生函数，都没有时检查原生函数的参数个数
+    private void nativeCall(NativeCall call) {
+        String name = call.function.name;
+        call.script = null;
+        Block top = block;
+        while (top.parent != null) {
+            top = top.parent;
+        }
+        boolean nested = definedInBlock(name);
+        if (nested || top.functions.contains(name) || top.classes.contains(name)
+                || root.getFunction(name) != null || root.getClassDefine(name) != null) {
+            FuncCall script = new FuncCall(name, call.args);
+            if (!nested) {
+                script.root = root;
+            }
+            call.script = script;
+            return;
+        }
+        int arity = call.function.arity;
+        if (arity != Native.VARARGS && call.args.size() != arity) {
+            throw new JvsException("Function " + name + " expects " + arity + " arguments but got " + call.args.size());
+        }
+    }
+
+    // 根块以外的外层块是否定义了同名的函数或类
+    private boolean definedInBlock(String name) {
+        for (Block b = block; b.parent != null; b = b.parent) {
+            if (b.functions.contains(name) || b.classes.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 沿块链查找变量地址，找不到时返回null；未登记的名称不会有声明，不为它登记
+    private Variable lookup(String name) {
+        int id = Names.find(name);
+        if (id < 0) {
+            return null;
+        }
+        Variable address = new Variable(id);
+        int depth = 0;
+        boolean crossed = deferred;
+        for (Block b = block; b != null; b = b.parent, depth++) {
+            VarDeclaration declaration = b.declarations.get(name);
+            if (b.parent == null && declaration == null) {
+                // 根块：先前的程序或宿主已声明的变量
+                declaration = root.getDeclaration(id);
+                if (declaration != null) {
+                    return address(address, depth, declaration);
+                }
+            }
+            // 同一函数内只能引用已经声明的变量；跨越函数边界后，函数体在稍后才执行
+            if (declaration != null && (crossed || b.declared.contains(name))) {
+                return address(address, depth, declaration);
+            }
+            if (b.owner != null && b.owner.hasField(id)) {
+                address.depth = depth;
+                address.slot = 0;
+                address.declaration = b.declarations.get("this");
+                address.thisField = true;
+                address.fieldSlot = b.owner.fieldSlot(id);
+                return address;
+            }
+            if (b.function) {
+                crossed = true;
+            }
+        }
+        // 根作用域之上的宿主作用域链
+        for (Scope scope = root.getParent(); scope != null; scope = scope.getParent(), depth++) {
+            VarDeclaration declaration = scope.getDeclaration(id);
+            if (declaration != null) {
+                return address(address, depth, declaration);
+            }
+        }
+        return null;
+    }
+
+    private Variable address(Variable address, int depth, VarDeclaration declaration) {
+        address.depth = depth;
+        address.slot = declaration.slot;
+        address.declaration = declaration;
+        return address;
+    }
+
+}
@@ -2,49 +2,205 @@ package jvlang;
 
 import jvlang.stmt.FuncDefinition;
 import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.VarDeclaration;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * 作用域
+ * 变量按Resolver分配的(depth, slot)地址存放在槽位数组中，
+ * 根作用域与类实例字段另外保留按名称声明的索引；函数、类与按名称声明的变量以名称编号(Names)为键
  * @author Yumerain
  */
 public class Scope {
-    // 类定义
-    private final Map<String, ClassDefinition> classes = new HashMap<>();
-    // 函数定义
-    private final Map<String, FuncDefinition> functions = new HashMap<>();
-    // 变量定义
-    private final Map<String, Object> variables = new HashMap<>();
-    // 类型定义
-    private final Map<String, Symbol> types = new HashMap<>();
+    private static final Object[] EMPTY = new Object[0];
+
+    // 类定义，按需创建
+    private IdMap<ClassDefinition> classes;
+    // 函数定义，按需创建
+    private IdMap<FuncDefinition> functions;
+    // 变量槽位
+    private Object[] slots;
+    // 按名称声明的变量（根作用域、类实例字段），按需创建
+    private IdMap<VarDeclaration> declarations;
     // 父级作用域
     private final Scope parent;
+    // 函数与类定义的变化次数
+    private int version;
+    // 返回值寄存器：函数作用域中由return语句写入，尾调用时存放实参数组
+    private Object returnValue;
+    // 尾调用的被调函数
+    private FuncDefinition tailCall;
+    // 脚本输出，只在根作用域设置
+    private Output output;
+    // 名称编号所属的符号表，只在根作用域设置
+    private Names names;
 
-    public Scope() { this.parent = null; }
-    public Scope(Scope parent) { this.parent = parent; }
+    public Scope() { this(Names.current()); }
+    // 在指定符号表中执行的根作用域，执行的程序须使用同一符号表
+    public Scope(Names names) {
+        this(null, 0);
+        this.names = names;
+    }
+    public Scope(Scope parent) { this(parent, 0); }
+    public Scope(Scope parent, int size) {
+        this.parent = parent;
+        this.slots = size == 0 ? EMPTY : new Object[size];
+    }
 
-    public void declareVariable(String name, Object value) {
-        if (variables.containsKey(name)) {
-            throw new JvsException("Variable already declared: " + name);
+    public Scope getParent() {
+        return parent;
+    }
+
+    // 设置print与println的输出，应在根作用域上设置
+    public void setOutput(Output output) {
+        this.output = output;
+    }
+
+    // 沿作用域链查找输出，都未设置时在根作用域创建输出到System.out的Output
+    public Output getOutput() {
+        Scope scope = this;
+        while (scope.output == null && scope.parent != null) {
+            scope = scope.parent;
         }
-        variables.put(name, value);
+        if (scope.output == null) {
+            scope.output = new Output(System.out);
+        }
+        return scope.output;
+    }
+
+    // 根作用域的符号表
+    public Names getNames() {
+        Scope scope = this;
+        while (scope.parent != null) {
+            scope = scope.parent;
+        }
+        return scope.names;
+    }
+
+    // 按地址读取变量：向上depth层作用域的第slot个槽位
+    public Object getVariable(int depth, int slot) {
+        Scope scope = this;
+        while (depth-- > 0) scope = scope.parent;
+        return scope.slots[slot];
+    }
+
+    // 按地址写入变量
+    public void setVariable(int depth, int slot, Object value) {
+        Scope scope = this;
+        while (depth-- > 0) scope = scope.parent;
+        scope.slots[slot] = value;
+    }
+
+    // 写入向上depth层作用域（函数作用域）的返回值
+    public void setReturnValue(int depth, Object value) {
+        Scope scope = this;
+        while (depth-- > 0) scope = scope.parent;
+        scope.returnValue = value;
+    }
+
+    public Object getReturnValue() {
+        return returnValue;
+    }
+
+    // 向上depth层作用域（函数作用域）记录尾调用
+    public void setTailCall(int depth, FuncDefinition function, Object[] args) {
+        Scope scope = this;
+        while (depth-- > 0) scope = scope.parent;
+        scope.tailCall = function;
+        scope.returnValue = args;
+    }
+
+    public FuncDefinition getTailCall() {
+        return tailCall;
+    }
+
+    // 清空槽位，供循环体在各次迭代间复用
+    public void reset() {
+        Arrays.fill(slots, null);
+    }
+
+    // 在当前作用域的槽位上声明变量
+    public void declareVariable(int slot, Object value) {
+        slots[slot] = value;
+    }
+
+    // 按名称查找当前作用域中的变量声明（不查找父级）
+    public VarDeclaration getDeclaration(String name) {
+        if (declarations == null) {
+            return null;
+        }
+        int id = getNames().lookup(name);
+        return id >= 0 ? declarations.get(id) : null;
+    }
+
+    public VarDeclaration getDeclaration(int id) {
+        return declarations != null ? declarations.get(id) : null;
+    }
+
+    // 当前作用域按名称声明的变量名（不查找父级），按槽位顺序，只读
+    public Set<String> getVariableNames() {
+        if (declarations == null) {
+            return Collections.emptySet();
+        }
+        VarDeclaration[] sorted = new VarDeclaration[declarations.size()];
+        int count = 0;
+        for (int id : declarations.keys()) {
+            sorted[count++] = declarations.get(id);
+        }
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.slot, b.slot));
+        Set<String> result = new LinkedHashSet<>();
+        for (VarDeclaration declaration : sorted) {
+            result.add(declaration.identifier);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    // 当前作用域已按名称声明的变量个数，也是下一个可用槽位
+    public int size() {
+        return declarations != null ? declarations.size() : 0;
+    }
+
+    // 绑定按名称声明的变量到其槽位，槽位不足时扩容
+    public void bind(VarDeclaration declaration) {
+        if (declarations == null) {
+            declarations = new IdMap<>();
+        }
+        if (declarations.containsKey(declaration.id)) {
+            throw new JvsException("Variable already declared: " + declaration.identifier);
+        }
+        declarations.put(declaration.id, declaration);
+        if (declaration.slot >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(declaration.slot + 1, slots.length * 2));
+        }
+    }
+
+    public void declareVariable(String name, Object value) {
+        declareVariable(name, null, value);
     }
 
     public void declareVariable(String name, Symbol type, Object value) {
-        if (variables.containsKey(name)) {
-            throw new JvsException("Variable already declared: " + name);
+        VarDeclaration declaration;
+        Names previous = Names.enter(getNames());
+        try {
+            declaration = new VarDeclaration(name, null);
+        } finally {
+            Names.restore(previous);
         }
-        variables.put(name, value);
-        types.put(name, type);
+        declaration.type = type;
+        declaration.slot = size();
+        bind(declaration);
+        slots[declaration.slot] = value;
     }
 
     public void setVariable(String name, Object value) {
-        if (variables.containsKey(name)) {
-            Symbol type = types.get(name);
-            checkType(type, value); // 检查赋值是否符合类型
-            variables.put(name, value);
+        VarDeclaration declaration = getDeclaration(name);
+        if (declaration != null) {
+            checkType(declaration.type, value); // 检查赋值是否符合类型
+            slots[declaration.slot] = value;
         } else if (parent != null) {
             parent.setVariable(name, value);
         } else {
@@ -53,8 +209,9 @@ public class Scope {
     }
 
     public Object getVariable(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
+        VarDeclaration declaration = getDeclaration(name);
+        if (declaration != null) {
+            return slots[declaration.slot];
         } else if (parent != null) {
             return parent.getVariable(name);
         } else {
@@ -63,8 +220,9 @@ public class Scope {
     }
 
     public Symbol getType(String name) {
-        if (types.containsKey(name)) {
-            return types.get(name);
+        VarDeclaration declaration = getDeclaration(name);
+        if (declaration != null) {
+            return declaration.type;
         } else if (parent != null) {
             return parent.getType(name);
         } else {
@@ -88,39 +246,74 @@ public class Scope {
         }
     }
 
-    // 存储函数定义
-    public void defineFunction(String name, FuncDefinition function) {
-        if (functions.containsKey(name)) {
-            throw new JvsException("Function already defined: " + name);
+    // 存储函数定义，返回被替换的同名定义
+    // 同一块内的重复定义由Resolver报错，这里的替换来自控制台在后续输入中重新定义
+    public FuncDefinition defineFunction(String name, FuncDefinition function) {
+        return defineFunction(getNames().intern(name), function);
+    }
+
+    public FuncDefinition defineFunction(int id, FuncDefinition function) {
+        version++;
+        if (functions == null) {
+            functions = new IdMap<>();
         }
-        functions.put(name, function);
+        return functions.put(id, function);
     }
 
     // 查找函数定义（支持作用域链）
     public FuncDefinition getFunction(String name) {
-        if (functions.containsKey(name)) {
-            return functions.get(name);
+        int id = getNames().lookup(name);
+        return id >= 0 ? getFunction(id) : null;
+    }
+
+    public FuncDefinition getFunction(int id) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            FuncDefinition function = scope.functions != null ? scope.functions.get(id) : null;
+            if (function != null) {
+                return function;
+            }
         }
-        return parent != null ? parent.getFunction(name) : null;
+        return null;
     }
 
     public void defineClass(String name, ClassDefinition clxss) {
-        if (classes.containsKey(name)) {
-            throw new JvsException("class already defined: " + name);
+        defineClass(getNames().intern(name), clxss);
+    }
+
+    public void defineClass(int id, ClassDefinition clxss) {
+        version++;
+        if (classes == null) {
+            classes = new IdMap<>();
         }
-        classes.put(name, clxss);
+        classes.put(id, clxss);
+    }
+
+    // 本作用域及父级作用域的函数与类定义版本，任何定义变化后都会改变，调用点缓存以此失效
+    public int definitionVersion() {
+        int sum = version;
+        for (Scope scope = parent; scope != null; scope = scope.parent) {
+            sum += scope.version;
+        }
+        return sum;
     }
 
     public ClassDefinition getClassDefine(String name) {
-        ClassDefinition clxss = classes.get(name);
-        if (clxss == null && parent != null) {
-            return parent.getClassDefine(name);
+        int id = getNames().lookup(name);
+        return id >= 0 ? getClassDefine(id) : null;
+    }
+
+    public ClassDefinition getClassDefine(int id) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            ClassDefinition clxss = scope.classes != null ? scope.classes.get(id) : null;
+            if (clxss != null) {
+                return clxss;
+            }
         }
-        return clxss;
+        return null;
     }
 
     public boolean hasVariable(String name) {
-        return variables.containsKey(name) || (parent != null && parent.hasVariable(name));
+        return getDeclaration(name) != null || (parent != null && parent.hasVariable(name));
     }
 
 }
@@ -25,6 +25,7 @@ public enum Symbol {
     FOR("for"),
     TRUE("true"),
     FALSE("false"),
+    NULL("null"),
     THIS("this"),
 
     // 类型
@@ -74,6 +75,24 @@ public enum Symbol {
         return keywords.get(key);
     }
 
+    // 源码中start起length个字符是否为关键字，不创建字符串
+    public static Symbol keyword(CharSequence source, int start, int length) {
+        for (Symbol keyword : keywordArray) {
+            String value = keyword.value;
+            if (value.length() == length && value.charAt(0) == source.charAt(start) && matches(source, start, value)) {
+                return keyword;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(CharSequence source, int start, String value) {
+        for (int i = 1; i < value.length(); i++) {
+            if (source.charAt(start + i) != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
     // 关键字定义，方便快速取用
     private static final Map<String, Symbol> keywords = new HashMap<String, Symbol>() {{
         // 关键字
@@ -85,8 +104,11 @@ public enum Symbol {
         put(FOR.value, FOR);
         put(TRUE.value, TRUE);
         put(FALSE.value, FALSE);
+        put(NULL.value, NULL);
         put(THIS.value, THIS);
         put(RETURN.value, RETURN);
     }};
 
+    private static final Symbol[] keywordArray = keywords.values().toArray(new Symbol[0]);
+
 }
@@ -1,9 +1,12 @@
 package jvlang;
 
+import jvlang.jit.JitCompiler;
+import jvlang.vm.BytecodeCompiler;
+import jvlang.vm.VirtualMachine;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.List;
 
 
 /**
@@ -15,8 +18,16 @@ public class Terminal {
 	public static void main(String[] args) {
 		new Terminal().start();
 	}
-	// 根作用域
-	private final Scope root = new Scope();
+	// 已解析的输入，重复的输入不再词法与语法分析
+	private final ProgramCache programs = new ProgramCache();
+	// 根作用域，与缓存的程序使用同一符号表
+	private final Scope root = new Scope(programs.getNames());
+	// 执行引擎，字节码虚拟机在多次输入之间保留已定义的函数与类
+	private final Engine engine = Engine.current();
+	private final VirtualMachine vm = new VirtualMachine(root);
+	private final JitCompiler jit = new JitCompiler(root);
+	// 纯函数记忆化，report输出各次输入中记忆化的函数
+	private final Memoizer memoizer = new Memoizer(root);
 
 	private boolean multiLine = false;
 	private StringBuilder buff = new StringBuilder();
@@ -78,10 +89,21 @@ public class Terminal {
 	}
 	
 	public void resolve(String source) {
-		Lexer lexer = new Lexer(source);
-		List<Token> tokens = lexer.tokenize();
-		Parser parser = new Parser(tokens);
-		Program program = parser.parse();
-		program.exec(root);
+		Program program = programs.get(source);
+		new Resolver(root).resolve(program);
+		if (engine == Engine.VM) {
+			vm.run(new BytecodeCompiler().compile(program));
+		} else {
+			if (Memoizer.enabled()) {
+				memoizer.memoize(program);
+			}
+			if (engine == Engine.JIT) {
+				jit.compile(program);
+			}
+			program.exec(root);
+			if (Memoizer.verbose()) {
+				memoizer.report();
+			}
+		}
 	}
 }
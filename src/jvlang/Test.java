@@ -1,10 +1,19 @@
 package jvlang;
 
+import jvlang.jit.JitCompiler;
+import jvlang.vm.BytecodeCompiler;
+import jvlang.vm.VirtualMachine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Test {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         // 程序源代码
         String source = """
     println("=== 测试字符串 ===");
@@ -175,16 +184,124 @@ public class Test {
     calc.multiply(2);
     println("After multiply(2): ", calc.value);
     
+    println("=== 测试与原生函数同名的脚本函数 ===");
+    fun builder(n) {
+        return n * 2;
+    }
+    println("builder(3) = ", builder(3));
+
+    println("=== 测试短路求值 ===");
+    var touched = 0;
+    fun touch(value) {
+        touched = touched + 1;
+        return value;
+    }
+    var yes = true;
+    var no = false;
+    var r1 = no && touch(true);
+    var r2 = yes || touch(false);
+    var r3 = yes && touch(true);
+    var r4 = no || touch(false);
+    println("r1=", r1, ", r2=", r2, ", r3=", r3, ", r4=", r4, ", touched=", touched);
+
+    println("=== 测试超过2^53的整数比较 ===");
+    var big = 9007199254740993;
+    var near = 9007199254740992;
+    fun greater(a, b) {
+        return a > b;
+    }
+    println(big > near, ", ", big == near, ", ", big - 1 == near, ", ", greater(big, near), ", ", greater(near, big));
+
+    println("=== 测试超过Java栈深度的尾递归 ===");
+    fun countdown(n, acc) {
+        if (n == 0) {
+            return acc;
+        }
+        return countdown(n - 1, acc + 1);
+    }
+    println("countdown(1000000) = ", countdown(1000000, 0));
+
     println("=== 所有测试完成 ===");
 """;
         //System.out.println(source);
         Lexer lexer = new Lexer(source);
-        List<Token> tokens = lexer.tokenize();
+        TokenStream tokens = lexer.scan();
 
         Parser parser = new Parser(tokens);
         Program program = parser.parse();
+        // -Djvs.optimize=false 关闭优化，=verbose 输出删除的节点数
+        if (Optimizer.enabled()) {
+            program = new Optimizer().optimize(program);
+        }
+
+        Scope root = new Scope();
+        new Resolver(root).resolve(program);
+        // -Djvs.engine=vm 使用字节码虚拟机执行，输出应与解释器完全一致
+        if (Engine.current() == Engine.VM) {
+            new VirtualMachine(root).run(new BytecodeCompiler().compile(program));
+        } else {
+            // -Djvs.memoize=true 为纯函数设置结果缓存，=verbose 输出缓存命中次数
+            Memoizer memoizer = new Memoizer(root);
+            if (Memoizer.enabled()) {
+                memoizer.memoize(program);
+            }
+            // -Djvs.engine=jit 先把函数编译为JVM字节码
+            if (Engine.current() == Engine.JIT) {
+                new JitCompiler(root).compile(program);
+            }
+            program.exec(root);
+            if (Memoizer.verbose()) {
+                memoizer.report();
+            }
+        }
+        precompiled();
+        memoization();
+    }
+
+    // 预编译缓存往返：第一次解析并写入.jvsc，第二次从文件解码，两次输出相同
+    private static void precompiled() throws IOException {
+        System.out.println("=== 测试预编译缓存 ===");
+        String source = """
+    fun twice(n) {
+        return n * 2;
+    }
+    println("twice(21) = ", twice(21));
+""";
+        Path directory = Files.createTempDirectory("jvsc");
+        PrecompiledCache cache = new PrecompiledCache(directory);
+        for (int i = 0; i < 2; i++) {
+            Program program = cache.load(source);
+            Scope root = new Scope(cache.getNames());
+            new Resolver(root).resolve(program);
+            program.exec(root);
+        }
+        System.out.println("hits=" + cache.hits() + ", misses=" + cache.misses());
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
 
+    // 同一根作用域中重新定义记忆化的函数：使用新的定义，报告中只有一个缓存
+    private static void memoization() {
+        System.out.println("=== 测试重新定义记忆化的函数 ===");
+        String[] inputs = {
+                "fun square(n) { return n * n; } println(\"square(4) = \", square(4));",
+                "fun square(n) { return n + 1; } println(\"square(4) = \", square(4), \", \", square(4));"
+        };
         Scope root = new Scope();
-        program.exec(root);
+        Memoizer memoizer = new Memoizer(root);
+        for (String input : inputs) {
+            Program program = new Parser(new Lexer(input).scan()).parse();
+            new Resolver(root).resolve(program);
+            memoizer.memoize(program);
+            program.exec(root);
+        }
+        System.out.flush();
+        memoizer.report();
     }
 }
\ No newline at end of file
@@ -0,0 +1,335 @@
+package jvlang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * 标记流：以并列的int数组保存每个标记的符号(Symbol序号)、在源码中的起始位置、长度、行号与标识符的名称编号(Names)，
+ * 词法分析时不为标记、标识符与数字创建对象；数字与字符串的值在Parser取用时
+ * 直接从源码字符中得到。源码不是String（由Token列表或Reader得到）时值保存在values中
+ * 流式(Lexer.stream())时只保留最近WINDOW个标记，Parser取用时由Lexer按需扫描；
+ * 并行扫描(Lexer.scan(ForkJoinPool))时各段分别扫描，再由concat按源码顺序拼接
+ * @author Yumerain
+ */
+public final class TokenStream {
+
+    // 流式时保留的标记数，Parser最多回退两个标记
+    static final int WINDOW = 64;
+
+    private static final Symbol[] SYMBOLS = Symbol.values();
+
+    // 不超过2^53的整数与10的22次方以内的幂都能精确表示为double，一次除法的结果即正确舍入的值
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT = 1L << 53;
+
+    private final String source;
+    // 标识符登记的符号表
+    private final Names names;
+    // 扫描的源码范围，用于估计标记数
+    private final int from;
+    private final int to;
+    // 流式时为环形缓冲，下标与mask相与；否则mask为-1
+    private final int mask;
+    // 流式时尚未扫描完的词法分析器，扫描到EOF后为null
+    private Lexer lexer;
+
+    private Object[] values;
+    private int[] symbols;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    // 标识符的名称编号，其它标记为-1
+    private int[] ids;
+    private int size;
+
+    // 只扫描source中from到to的部分
+    TokenStream(String source, int from, int to, Names names) {
+        // 先按平均每个标记4个字符分配，不够时再按实际的平均长度扩容
+        this(source, names, false, null, -1, Math.max(16, (to - from) / 4), from, to);
+    }
+
+    // 值由Lexer在扫描时给出；window为true时是流式的
+    TokenStream(Lexer lexer, boolean window) {
+        this(null, lexer.names, true, window ? lexer : null, window ? WINDOW - 1 : -1, window ? WINDOW : 1024, 0, 0);
+    }
+
+    private TokenStream(String source, Names names, boolean values, Lexer lexer, int mask, int capacity, int from, int to) {
+        this.source = source;
+        this.names = names;
+        this.from = from;
+        this.to = to;
+        this.lexer = lexer;
+        this.mask = mask;
+        this.values = values ? new Object[capacity] : null;
+        this.symbols = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+        this.ids = new int[capacity];
+    }
+
+    // 由Lexer.tokenize()的结果构造，标识符登记在当前符号表中
+    public static TokenStream of(List<Token> tokens) {
+        Names names = Names.current();
+        TokenStream stream = new TokenStream(null, names, true, null, -1, Math.max(1, tokens.size()), 0, 0);
+        for (Token token : tokens) {
+            int id = token.symbol == Symbol.IDENTIFIER ? names.intern(token.value.toString()) : -1;
+            stream.add(token.symbol, 0, 0, token.line, id, token.value);
+        }
+        return stream;
+    }
+
+    // 按顺序拼接同一源码各段的标记流，除最后一段外各段末尾的EOF不保留；
+    // 各段的行号从1开始，加上lineOffsets中该段之前的行数。各段在pool中并行复制
+    static TokenStream concat(String source, TokenStream[] parts, int[] lineOffsets, ForkJoinPool pool) {
+        int total = 1;
+        for (TokenStream part : parts) {
+            total += part.size - 1;
+        }
+        TokenStream stream = new TokenStream(source, parts[0].names, false, null, -1, total, 0, source.length());
+        List<Callable<Void>> copies = new ArrayList<>(parts.length);
+        for (int i = 0; i < parts.length; i++) {
+            TokenStream part = parts[i];
+            int at = stream.size;
+            int count = i < parts.length - 1 ? part.size - 1 : part.size;
+            int offset = lineOffsets[i];
+            copies.add(() -> {
+                System.arraycopy(part.symbols, 0, stream.symbols, at, count);
+                System.arraycopy(part.starts, 0, stream.starts, at, count);
+                System.arraycopy(part.lengths, 0, stream.lengths, at, count);
+                System.arraycopy(part.ids, 0, stream.ids, at, count);
+                for (int j = 0; j < count; j++) {
+                    stream.lines[at + j] = part.lines[j] + offset;
+                }
+                return null;
+            });
+            stream.size += count;
+        }
+        for (Future<Void> copy : pool.invokeAll(copies)) {
+            try {
+                copy.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return stream;
+    }
+
+    void add(Symbol symbol, int start, int length, int line, int id) {
+        if (size == symbols.length) {
+            // 按已扫描部分每个标记的平均字符数估计剩余的标记数
+            long estimate = start > from ? (long) size * (to - from) / (start - from) + 16 : 0;
+            grow((int) Math.min(Integer.MAX_VALUE - 8, estimate + estimate / 8));
+        }
+        symbols[size] = symbol.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        ids[size] = id;
+        size++;
+    }
+
+    void add(Symbol symbol, int start, int length, int line, int id, Object value) {
+        int slot = size & mask;
+        if (slot == symbols.length) {
+            grow(0);
+        }
+        symbols[slot] = symbol.ordinal();
+        starts[slot] = start;
+        lengths[slot] = length;
+        lines[slot] = line;
+        ids[slot] = id;
+        values[slot] = value;
+        size++;
+    }
+
+    private void grow(int estimate) {
+        int capacity = Math.max(estimate, size + (size >> 1) + 16);
+        symbols = Arrays.copyOf(symbols, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        if (values != null) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    // 值是否由Lexer在扫描时给出
+    boolean keepsValues() {
+        return values != null;
+    }
+
+    // 已扫描的标记数，包括流式时已移出窗口的
+    // 标识符编号所属的符号表
+    public Names names() {
+        return names;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 下标处是否有标记（EOF之后没有）；流式时按需扫描到该标记
+    public boolean has(int index) {
+        while (index >= size && lexer != null) {
+            if (lexer.next(this) == Symbol.EOF) {
+                lexer = null;
+            }
+        }
+        return index < size;
+    }
+
+    private int slot(int index) {
+        if (mask != -1 && index <= size - WINDOW) {
+            throw new IllegalStateException("Token " + index + " is no longer in the window");
+        }
+        return index & mask;
+    }
+
+    public Symbol symbol(int index) {
+        return SYMBOLS[symbols[slot(index)]];
+    }
+
+    // 与symbol(index) == symbol相同，不取枚举数组
+    public boolean is(int index, Symbol symbol) {
+        return symbols[slot(index)] == symbol.ordinal();
+    }
+
+    public int line(int index) {
+        return lines[slot(index)];
+    }
+
+    public int start(int index) {
+        return starts[slot(index)];
+    }
+
+    public int length(int index) {
+        return lengths[slot(index)];
+    }
+
+    // 标识符的名称编号
+    public int id(int index) {
+        return ids[slot(index)];
+    }
+
+    // 标识符的名称，同一名称总是同一个字符串
+    public String text(int index) {
+        return names.nameOf(ids[slot(index)]);
+    }
+
+    // 字面量的值：NUMBER为Long或Double，TEXT为转义后的字符串，TRUE/FALSE为Boolean，IDENTIFIER为名称
+    public Object value(int index) {
+        int slot = slot(index);
+        if (values != null) {
+            return values[slot];
+        }
+        if (ids[slot] >= 0) {
+            return names.nameOf(ids[slot]);
+        }
+        return value(SYMBOLS[symbols[slot]], source, starts[slot], starts[slot] + lengths[slot], lines[slot], names);
+    }
+
+    public Token token(int index) {
+        Symbol symbol = symbol(index);
+        Object value = value(index);
+        return value != null ? new Token(symbol, value, line(index)) : new Token(symbol, line(index));
+    }
+
+    // 全部标记；流式时只有窗口中的
+    public List<Token> toList() {
+        has(Integer.MAX_VALUE - 1);
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = mask != -1 ? Math.max(0, size - WINDOW + 1) : 0; i < size; i++) {
+            tokens.add(token(i));
+        }
+        return tokens;
+    }
+
+    // chars中start到end的标记的值，标识符登记在names中
+    static Object value(Symbol symbol, CharSequence chars, int start, int end, int line, Names names) {
+        switch (symbol) {
+            case NUMBER:
+                return number(chars, start, end, line);
+            case TEXT:
+                return unescape(chars, start, end);
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case IDENTIFIER:
+                return names.nameOf(names.intern(chars, start, end));
+            default:
+                return null;
+        }
+    }
+
+    // 数字字面量由Lexer保证格式为 digits [ "." digits ]
+    private static Object number(CharSequence chars, int start, int end, int line) {
+        long mantissa = 0;
+        int point = -1;
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c == '.') {
+                point = i;
+                continue;
+            }
+            int digit = Character.digit(c, 10);
+            if (mantissa > (Long.MAX_VALUE - digit) / 10) {
+                // 有效数字过多的小数交给Double.parseDouble
+                if (point < 0 && !contains(chars, '.', i, end)) {
+                    throw new JvsException("Integer literal out of range at line " + line);
+                }
+                return Double.parseDouble(chars.subSequence(start, end).toString());
+            }
+            mantissa = mantissa * 10 + digit;
+        }
+        if (point < 0) {
+            return Numbers.box(mantissa);
+        }
+        int scale = end - point - 1;
+        if (mantissa <= MAX_EXACT && scale < POWERS_OF_TEN.length) {
+            return mantissa / POWERS_OF_TEN[scale];
+        }
+        return Double.parseDouble(chars.subSequence(start, end).toString());
+    }
+
+    // 字符串字面量的内容（不含引号），转义序列已由Lexer检查
+    private static String unescape(CharSequence chars, int start, int end) {
+        if (!contains(chars, '\\', start, end)) {
+            return chars.subSequence(start, end).toString();
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            switch (chars.charAt(++i)) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case '"': sb.append('"'); break;
+                default: sb.append('\\'); break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean contains(CharSequence chars, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) == c) return true;
+        }
+        return false;
+    }
+}
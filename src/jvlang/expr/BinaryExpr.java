@@ -1,6 +1,7 @@
 package jvlang.expr;
 
 import jvlang.JvsException;
+import jvlang.Numbers;
 import jvlang.Scope;
 import jvlang.Symbol;
 
@@ -21,6 +22,9 @@ public class BinaryExpr implements Expression {
     public final Symbol operator;
     public final Expression right;
 
+    // 按首次求值时的操作数类型选择的特化节点，类型变化后换成通用节点
+    private BinarySpecialization specialization;
+
     public BinaryExpr(Expression left, Symbol operator, Expression right) {
         this.left = left;
         this.operator = operator;
@@ -29,17 +33,123 @@ public class BinaryExpr implements Expression {
 
     @Override
     public Object eval(Scope scope) {
+        BinarySpecialization node = specialization;
+        // 数值特化：子表达式按基本类型求值，只在最后装箱一次
+        if (node == BinarySpecialization.LONG_ARITHMETIC) {
+            try {
+                return Numbers.box(evalLong(scope));
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+        if (node == BinarySpecialization.DOUBLE_ARITHMETIC) {
+            try {
+                return evalDouble(scope);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+        if (node == BinarySpecialization.LONG_COMPARISON) {
+            return longComparison(scope);
+        }
+        if (node == BinarySpecialization.DOUBLE_COMPARISON) {
+            return doubleComparison(scope);
+        }
         Object leftValue = left.eval(scope);
         Object rightValue = right.eval(scope);
+        if (node == null) {
+            node = specialization = BinarySpecialization.select(operator, leftValue, rightValue);
+        }
+        Object result = node.apply(operator, leftValue, rightValue);
+        if (result == BinarySpecialization.MISS) {
+            return generic(leftValue, rightValue);
+        }
+        return result;
+    }
+
+    @Override
+    public long evalLong(Scope scope) throws UnexpectedResultException {
+        if (specialization != BinarySpecialization.LONG_ARITHMETIC) {
+            return Expression.super.evalLong(scope);
+        }
+        long a;
+        try {
+            a = left.evalLong(scope);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(generic(e.result, right.eval(scope)));
+        }
+        long b;
+        try {
+            b = right.evalLong(scope);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(generic(Numbers.box(a), e.result));
+        }
+        return BinarySpecialization.arithmetic(operator, a, b);
+    }
 
-        // 1. 处理逻辑运算符（需要优先处理）
-        if (operator == Symbol.AND || operator == Symbol.OR) {
-            return logical(leftValue, rightValue);
+    @Override
+    public double evalDouble(Scope scope) throws UnexpectedResultException {
+        if (specialization != BinarySpecialization.DOUBLE_ARITHMETIC) {
+            return Expression.super.evalDouble(scope);
         }
+        double a;
+        try {
+            a = left.evalDouble(scope);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(generic(e.result, right.eval(scope)));
+        }
+        double b;
+        try {
+            b = right.evalDouble(scope);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(generic(a, e.result));
+        }
+        return BinarySpecialization.arithmetic(operator, a, b);
+    }
 
-        // 2. 处理比较运算符
+    private Object longComparison(Scope scope) {
+        long a;
+        try {
+            a = left.evalLong(scope);
+        } catch (UnexpectedResultException e) {
+            return generic(e.result, right.eval(scope));
+        }
+        long b;
+        try {
+            b = right.evalLong(scope);
+        } catch (UnexpectedResultException e) {
+            return generic(Numbers.box(a), e.result);
+        }
+        return longComparison(operator, a, b);
+    }
+
+    private Object doubleComparison(Scope scope) {
+        double a;
+        try {
+            a = left.evalDouble(scope);
+        } catch (UnexpectedResultException e) {
+            return generic(e.result, right.eval(scope));
+        }
+        double b;
+        try {
+            b = right.evalDouble(scope);
+        } catch (UnexpectedResultException e) {
+            return generic(a, e.result);
+        }
+        return numberComparison(operator, a, b);
+    }
+
+    // 守卫失败，此后不再特化；已求值的操作数直接走通用路径，不重复求值
+    private Object generic(Object leftValue, Object rightValue) {
+        specialization = BinarySpecialization.GENERIC;
+        return apply(operator, leftValue, rightValue);
+    }
+
+    // 对两个已求值的操作数执行运算，字节码虚拟机与解释器共用
+    public static Object apply(Symbol operator, Object leftValue, Object rightValue) {
+        // 处理比较运算符（逻辑运算符由LogicalExpr短路求值）
         if (isComparison(operator)) {
-            return comparison(leftValue, rightValue);
+            return comparison(operator, leftValue, rightValue);
         }
 
         // 数字之间的运算
@@ -78,10 +188,10 @@ public class BinaryExpr implements Expression {
 
 
     // 加法
-    private Number plus(int maxType, Number left, Number right) {
+    private static Number plus(int maxType, Number left, Number right) {
         switch (maxType) {
             case LONG:
-                return Long.valueOf(left.longValue() + right.longValue());
+                return Numbers.box(left.longValue() + right.longValue());
             case DOUBLE:
                 return Double.valueOf(left.doubleValue() + right.doubleValue());
         }
@@ -89,10 +199,10 @@ public class BinaryExpr implements Expression {
     }
 
     // 减法
-    private Number minus(int maxType, Number left, Number right) {
+    private static Number minus(int maxType, Number left, Number right) {
         switch (maxType) {
             case LONG:
-                return Long.valueOf(left.longValue() - right.longValue());
+                return Numbers.box(left.longValue() - right.longValue());
             case DOUBLE:
                 return Double.valueOf(left.doubleValue() - right.doubleValue());
         }
@@ -100,10 +210,10 @@ public class BinaryExpr implements Expression {
     }
 
     // 乘法
-    private Number multiply(int maxType, Number left, Number right) {
+    private static Number multiply(int maxType, Number left, Number right) {
         switch (maxType) {
             case LONG:
-                return Long.valueOf(left.longValue() * right.longValue());
+                return Numbers.box(left.longValue() * right.longValue());
             case DOUBLE:
                 return Double.valueOf(left.doubleValue() * right.doubleValue());
         }
@@ -111,10 +221,10 @@ public class BinaryExpr implements Expression {
     }
 
     // 除法
-    private Number divide(int maxType, Number left, Number right) {
+    private static Number divide(int maxType, Number left, Number right) {
         switch (maxType) {
             case LONG:
-                return Long.valueOf(left.longValue() / right.longValue());
+                return Numbers.box(left.longValue() / right.longValue());
             case DOUBLE:
                 return Double.valueOf(left.doubleValue() / right.doubleValue());
         }
@@ -122,10 +232,10 @@ public class BinaryExpr implements Expression {
     }
 
     // 取模
-    private Number modulo(int maxType, Number left, Number right) {
+    private static Number modulo(int maxType, Number left, Number right) {
         switch (maxType) {
             case LONG:
-                return Long.valueOf(left.longValue() % right.longValue());
+                return Numbers.box(left.longValue() % right.longValue());
             case DOUBLE:
                 return Double.valueOf(left.doubleValue() % right.doubleValue());
         }
@@ -149,36 +259,21 @@ public class BinaryExpr implements Expression {
         return UNKNOWN;
     }
 
-    // 新增方法：处理逻辑运算符
-    private Boolean logical(Object leftVal, Object rightVal) {
-        // 类型检查
-        if (!(leftVal instanceof Boolean)) {
-            throw new JvsException("Left operand of " + operator + " must be boolean");
-        }
-        if (!(rightVal instanceof Boolean)) {
-            throw new JvsException("Right operand of " + operator + " must be boolean");
-        }
-
-        boolean a = (Boolean) leftVal;
-        boolean b = (Boolean) rightVal;
-
-        switch (operator) {
-            case AND: return a && b;
-            case OR:  return a || b;
-            default:  throw new JvsException("Unreachable code");
-        }
-    }
-
     // 新增方法：处理比较运算符
-    private Boolean comparison(Object leftVal, Object rightVal) {
+    private static Boolean comparison(Symbol operator, Object leftVal, Object rightVal) {
         // 处理 null 相等性
         if (leftVal == null || rightVal == null) {
-            return nullComparison(leftVal, rightVal);
+            return nullComparison(operator, leftVal, rightVal);
         }
 
-        // 数字比较
+        // 整数之间按long精确比较
+        if (leftVal instanceof Long && rightVal instanceof Long) {
+            return longComparison(operator, (Long) leftVal, (Long) rightVal);
+        }
+
+        // 其它数字按double比较
         if (leftVal instanceof Number && rightVal instanceof Number) {
-            return numberComparison(
+            return numberComparison(operator,
                     ((Number) leftVal).doubleValue(),
                     ((Number) rightVal).doubleValue()
             );
@@ -186,7 +281,7 @@ public class BinaryExpr implements Expression {
 
         // 字符串比较
         if (leftVal instanceof String && rightVal instanceof String) {
-            return stringComparison(
+            return stringComparison(operator,
                     (String) leftVal,
                     (String) rightVal
             );
@@ -194,18 +289,31 @@ public class BinaryExpr implements Expression {
 
         // 布尔值比较
         if (leftVal instanceof Boolean && rightVal instanceof Boolean) {
-            return booleanComparison(
+            return booleanComparison(operator,
                     (Boolean) leftVal,
                     (Boolean) rightVal
             );
         }
 
         // 默认对象比较（仅支持 == 和 !=）
-        return objectComparison(leftVal, rightVal);
+        return objectComparison(operator, leftVal, rightVal);
+    }
+
+    // 整数比较具体实现
+    static Boolean longComparison(Symbol operator, long a, long b) {
+        switch (operator) {
+            case EQUAL:         return a == b;
+            case NOTEQUAL:      return a != b;
+            case LESS:          return a < b;
+            case GREATER:       return a > b;
+            case LESS_EQUAL:    return a <= b;
+            case GREATER_EQUAL: return a >= b;
+            default: throw new JvsException("Invalid comparison operator for numbers: " + operator);
+        }
     }
 
     // 数字比较具体实现
-    private Boolean numberComparison(double a, double b) {
+    static Boolean numberComparison(Symbol operator, double a, double b) {
         switch (operator) {
             case EQUAL:         return a == b;
             case NOTEQUAL:      return a != b;
@@ -218,7 +326,7 @@ public class BinaryExpr implements Expression {
     }
 
     // 字符串比较具体实现
-    private Boolean stringComparison(String a, String b) {
+    private static Boolean stringComparison(Symbol operator, String a, String b) {
         switch (operator) {
             case EQUAL:    return a.equals(b);
             case NOTEQUAL: return !a.equals(b);
@@ -231,7 +339,7 @@ public class BinaryExpr implements Expression {
     }
 
     // 布尔值比较具体实现
-    private Boolean booleanComparison(boolean a, boolean b) {
+    private static Boolean booleanComparison(Symbol operator, boolean a, boolean b) {
         switch (operator) {
             case EQUAL:    return a == b;
             case NOTEQUAL: return a != b;
@@ -240,7 +348,7 @@ public class BinaryExpr implements Expression {
     }
 
     // null值比较处理
-    private Boolean nullComparison(Object a, Object b) {
+    private static Boolean nullComparison(Symbol operator, Object a, Object b) {
         // 只有 == 和 != 支持null比较
         switch (operator) {
             case EQUAL:    return a == b;
@@ -250,7 +358,7 @@ public class BinaryExpr implements Expression {
     }
 
     // 对象比较处理（默认实现）
-    private Boolean objectComparison(Object a, Object b) {
+    private static Boolean objectComparison(Symbol operator, Object a, Object b) {
         switch (operator) {
             case EQUAL:    return a.equals(b);
             case NOTEQUAL: return !a.equals(b);
@@ -260,7 +368,7 @@ public class BinaryExpr implements Expression {
     }
 
     // 判断是否为比较运算符
-    private boolean isComparison(Symbol op) {
+    private static boolean isComparison(Symbol op) {
         return op == Symbol.EQUAL || op == Symbol.NOTEQUAL ||
                 op == Symbol.LESS || op == Symbol.GREATER ||
                 op == Symbol.LESS_EQUAL || op == Symbol.GREATER_EQUAL;
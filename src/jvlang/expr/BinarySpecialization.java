@@ -0,0 +1,121 @@
+package jvlang.expr;
+
+import jvlang.Numbers;
+import jvlang.Symbol;
+
+/**
+ * 二元运算的特化节点：根据首次观察到的操作数类型选择，守卫失败时BinaryExpr换成通用节点
+ * 通用节点即BinaryExpr.apply，结果与错误信息都以它为准；
+ * 整数与小数的特化由BinaryExpr经evalLong/evalDouble求值子表达式，中间结果不装箱
+ * @author Yumerain
+ */
+abstract class BinarySpecialization {
+
+    // 守卫不满足时返回此标记，由BinaryExpr退回通用节点
+    static final Object MISS = new Object();
+
+    abstract Object apply(Symbol operator, Object left, Object right);
+
+    // 按操作数类型选择特化节点
+    static BinarySpecialization select(Symbol operator, Object left, Object right) {
+        switch (operator) {
+            case PLUS:
+                if (left instanceof String || right instanceof String) {
+                    return STRING_CONCAT;
+                }
+                return arithmetic(left, right);
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+                return arithmetic(left, right);
+            case EQUAL:
+            case NOTEQUAL:
+            case LESS:
+            case GREATER:
+            case LESS_EQUAL:
+            case GREATER_EQUAL:
+                if (left instanceof Long && right instanceof Long) return LONG_COMPARISON;
+                if (left instanceof Double && right instanceof Double) return DOUBLE_COMPARISON;
+                return GENERIC;
+            default:
+                return GENERIC;
+        }
+    }
+
+    // 算术运算：两侧同为整数或同为小数时特化
+    private static BinarySpecialization arithmetic(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) return LONG_ARITHMETIC;
+        if (left instanceof Double && right instanceof Double) return DOUBLE_ARITHMETIC;
+        return GENERIC;
+    }
+
+    static final BinarySpecialization GENERIC = new BinarySpecialization() {
+        @Override
+        Object apply(Symbol operator, Object left, Object right) {
+            return BinaryExpr.apply(operator, left, right);
+        }
+    };
+
+    static final BinarySpecialization LONG_ARITHMETIC = new BinarySpecialization() {
+        @Override
+        Object apply(Symbol operator, Object left, Object right) {
+            if (!(left instanceof Long) || !(right instanceof Long)) return MISS;
+            return Numbers.box(arithmetic(operator, (Long) left, (Long) right));
+        }
+    };
+
+    static final BinarySpecialization DOUBLE_ARITHMETIC = new BinarySpecialization() {
+        @Override
+        Object apply(Symbol operator, Object left, Object right) {
+            if (!(left instanceof Double) || !(right instanceof Double)) return MISS;
+            return arithmetic(operator, (Double) left, (Double) right);
+        }
+    };
+
+    static final BinarySpecialization LONG_COMPARISON = new BinarySpecialization() {
+        @Override
+        Object apply(Symbol operator, Object left, Object right) {
+            if (!(left instanceof Long) || !(right instanceof Long)) return MISS;
+            return BinaryExpr.longComparison(operator, (Long) left, (Long) right);
+        }
+    };
+
+    static final BinarySpecialization DOUBLE_COMPARISON = new BinarySpecialization() {
+        @Override
+        Object apply(Symbol operator, Object left, Object right) {
+            if (!(left instanceof Double) || !(right instanceof Double)) return MISS;
+            return BinaryExpr.numberComparison(operator, (Double) left, (Double) right);
+        }
+    };
+
+    static final BinarySpecialization STRING_CONCAT = new BinarySpecialization() {
+        @Override
+        Object apply(Symbol operator, Object left, Object right) {
+            if (!(left instanceof String) && !(right instanceof String)) return MISS;
+            return String.valueOf(left).concat(String.valueOf(right));
+        }
+    };
+
+    // 算术运算符已由select确定为+-*/%
+    static long arithmetic(Symbol operator, long a, long b) {
+        switch (operator) {
+            case PLUS: return a + b;
+            case MINUS: return a - b;
+            case MULTIPLY: return a * b;
+            case DIVIDE: return a / b;
+            default: return a % b;
+        }
+    }
+
+    static double arithmetic(Symbol operator, double a, double b) {
+        switch (operator) {
+            case PLUS: return a + b;
+            case MINUS: return a - b;
+            case MULTIPLY: return a * b;
+            case DIVIDE: return a / b;
+            default: return a % b;
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package jvlang.expr;
 
 import jvlang.JvsException;
+import jvlang.Names;
 import jvlang.Scope;
 import jvlang.model.FieldDeclaration;
 import jvlang.model.ClassInstance;
@@ -15,38 +16,38 @@ import java.util.Map;
 public class ClassExpr implements Expression {
 
     public final String className;
+    // 类名的编号(Names)
+    public final int classId;
     public final Map<String, Expression> fieldInitializers;
 
     public ClassExpr(String className, Map<String, Expression> fieldInitializers) {
         this.className = className;
+        this.classId = Names.id(className);
         this.fieldInitializers = fieldInitializers;
     }
 
     @Override
     public Object eval(Scope scope) {
         // 1. 获取结构体定义
-        ClassDefinition classDef = scope.getClassDefine(className);
+        ClassDefinition classDef = scope.getClassDefine(classId);
         if (classDef == null) {
             throw new JvsException("Undefined struct: " + className);
         }
-        // 2. 创建实例作用域
-        Scope instanceScope = new Scope(scope);
+        // 2. 复制字段模板，常量默认值已经填好
+        Object[] values = classDef.newFields();
         // 3. 初始化字段值
-        for (FieldDeclaration field : classDef.fields) {
+        for (int i = 0; i < values.length; i++) {
+            FieldDeclaration field = classDef.fields.get(i);
             // 3.1 检查是否提供了初始化值
-            if (fieldInitializers.containsKey(field.name)) {
-                Object value = fieldInitializers.get(field.name).eval(scope);
-                instanceScope.declareVariable(field.name, value);
-            } else if (field.initializer != null) {
-                // 使用默认初始化表达式
-                Object value = field.initializer.eval(scope);
-                instanceScope.declareVariable(field.name, value);
-            } else {
-                // 未初始化字段设为null
-                instanceScope.declareVariable(field.name, null);
+            Expression initializer = fieldInitializers.get(field.name);
+            if (initializer != null) {
+                values[i] = initializer.eval(scope);
+            } else if (classDef.evaluatedDefault(i)) {
+                // 使用默认初始化表达式（在类定义时的作用域中求值）
+                values[i] = field.initializer.eval(classDef.definitionScope);
             }
         }
-        return new ClassInstance(classDef, instanceScope);
+        return new ClassInstance(classDef, values);
     }
 
 }
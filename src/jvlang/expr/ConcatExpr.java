@@ -0,0 +1,50 @@
+package jvlang.expr;
+
+import jvlang.Scope;
+
+import java.util.List;
+
+/**
+ * 字符串拼接链：由Optimizer把结果一定是字符串的连续+合并而成，如 a + "=" + b + "\n"
+ * 各部分依次求值，转为字符串后写入按总长度分配的缓冲区，不产生中间字符串；
+ * 第一个字符串之前的数字加法仍由第一部分的BinaryExpr计算
+ * @author Yumerain
+ */
+public class ConcatExpr implements Expression {
+
+    public final List<Expression> parts;
+
+    public ConcatExpr(List<Expression> parts) {
+        this.parts = parts;
+    }
+
+    @Override
+    public Object eval(Scope scope) {
+        String[] strings = new String[parts.size()];
+        int length = 0;
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = String.valueOf(parts.get(i).eval(scope));
+            length += strings[i].length();
+        }
+        return join(strings, length);
+    }
+
+    // 拼接已求值的各部分，字节码虚拟机与编译代码共用
+    public static String concat(Object[] values) {
+        String[] strings = new String[values.length];
+        int length = 0;
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = String.valueOf(values[i]);
+            length += strings[i].length();
+        }
+        return join(strings, length);
+    }
+
+    private static String join(String[] strings, int length) {
+        StringBuilder buffer = new StringBuilder(length);
+        for (String string : strings) {
+            buffer.append(string);
+        }
+        return buffer.toString();
+    }
+}
@@ -10,4 +10,22 @@ public interface Expression {
 
     Object eval(Scope scope);
 
+    // 按整数求值，数值运算的子表达式由此传递long，中间结果不装箱
+    default long evalLong(Scope scope) throws UnexpectedResultException {
+        Object value = eval(scope);
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        throw new UnexpectedResultException(value);
+    }
+
+    // 按小数求值
+    default double evalDouble(Scope scope) throws UnexpectedResultException {
+        Object value = eval(scope);
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        throw new UnexpectedResultException(value);
+    }
+
 }
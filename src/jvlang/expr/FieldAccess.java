@@ -1,8 +1,10 @@
 package jvlang.expr;
 
 import jvlang.JvsException;
+import jvlang.Names;
 import jvlang.Scope;
 import jvlang.model.ClassInstance;
+import jvlang.stmt.ClassDefinition;
 
 /**
  * 字段访问
@@ -12,32 +14,53 @@ public class FieldAccess implements Expression {
 
     public final Expression target;
     public final String fieldName;
+    // 字段名的编号(Names)
+    public final int fieldId;
+
+    // 访问点缓存：上次实例的类定义与字段槽位，读取与赋值共用
+    private ClassDefinition cachedClass;
+    private int cachedSlot;
 
     public FieldAccess(Expression target, String name) {
+        this(target, Names.id(name));
+    }
+
+    public FieldAccess(Expression target, int fieldId) {
         this.target = target;
-        this.fieldName = name;
+        this.fieldId = fieldId;
+        this.fieldName = Names.name(fieldId);
     }
 
     @Override
     public Object eval(Scope scope) {
         // 1. 获取目标对象
         Object targetObj = target.eval(scope);
-
         // 2. 验证是否为结构体实例
         if (!(targetObj instanceof ClassInstance)) {
             throw new JvsException("Field access on non-struct type: "
                     + targetObj.getClass().getSimpleName());
         }
-
+        // 3. 返回字段值
         ClassInstance instance = (ClassInstance) targetObj;
+        return instance.fields[slot(instance)];
+    }
 
-        // 3. 检查字段是否存在
-        if (!instance.fields.hasVariable(fieldName)) {
-            throw new JvsException("Undefined field '" + fieldName
-                    + "' in struct " + instance.definition.name);
+    // 本访问点上字段的槽位，类定义变化时重新查找
+    public int slot(ClassInstance instance) {
+        if (instance.definition != cachedClass) {
+            cachedSlot = instance.fieldSlot(fieldId);
+            cachedClass = instance.definition;
         }
+        return cachedSlot;
+    }
 
-        // 4. 返回字段值
-        return instance.fields.getVariable(fieldName);
+    // 读取已求值对象的字段，编译后的代码使用
+    public static Object get(Object targetObj, int fieldId) {
+        if (!(targetObj instanceof ClassInstance)) {
+            throw new JvsException("Field access on non-struct type: "
+                    + targetObj.getClass().getSimpleName());
+        }
+        ClassInstance instance = (ClassInstance) targetObj;
+        return instance.fields[instance.fieldSlot(fieldId)];
     }
 }
@@ -2,12 +2,10 @@ package jvlang.expr;
 
 import jvlang.ExecutionResult;
 import jvlang.JvsException;
+import jvlang.Names;
 import jvlang.Scope;
-import jvlang.model.ClassInstance;
-import jvlang.model.FieldDeclaration;
 import jvlang.stmt.ClassDefinition;
 import jvlang.stmt.FuncDefinition;
-import jvlang.stmt.Statement;
 
 import java.util.List;
 
@@ -18,82 +16,96 @@ import java.util.List;
  */
 public class FuncCall implements Expression {
 
-    private final String name;
+    public final String name;
+    // 名称编号(Names)，作用域按编号查找
+    public final int id;
 
-    private final List<Expression> args;
+    public final List<Expression> args;
+
+    // 由Resolver设置：外层块都没有定义同名的函数或类时为根作用域，
+    // 此时查找结果只取决于根作用域的定义，可以缓存在调用点
+    public Scope root;
+    // 调用点缓存：FuncDefinition或ClassDefinition，及查找时根作用域的定义版本
+    private Object cached;
+    private int cachedVersion;
 
     public FuncCall(String name, List<Expression> args) {
-        this.name = name;
+        this(Names.id(name), args);
+    }
+
+    public FuncCall(int id, List<Expression> args) {
+        this.id = id;
+        this.name = Names.name(id);
         this.args = args;
     }
 
     @Override
     public Object eval(Scope scope) {
-        // 打印函数print
-        if ("print".equals(name)) {
-            for (Expression arg : args) {
-                System.out.print(arg.eval(scope));
-            }
-            return null; // print 不返回值
+        // 用户自定义函数调用实现
+        // 1. 查找函数定义（或类定义）
+        Object target = target(scope);
+
+        // 类定义即构造函数（支持无参数类实例化）
+        if (target instanceof ClassDefinition) {
+            return ((ClassDefinition) target).newInstance();
+        }
+
+        // 2. 计算实参并执行函数体
+        return ((FuncDefinition) target).call(arguments(scope));
+    }
+
+    // 尾调用：只查找被调函数并求值实参，写入函数作用域后由FuncDefinition.call在同一层循环中执行；
+    // 类实例化不是函数调用，照常求值
+    public int tailCall(Scope scope, int depth) {
+        Object target = target(scope);
+        if (target instanceof ClassDefinition) {
+            scope.setReturnValue(depth, ((ClassDefinition) target).newInstance());
+            return ExecutionResult.RETURN;
         }
-        // 打印换行函数println
-        if ("println".equals(name)) {
-            for (Expression arg : args) {
-                System.out.print(arg.eval(scope));
+        scope.setTailCall(depth, (FuncDefinition) target, arguments(scope));
+        return ExecutionResult.TAIL_CALL;
+    }
+
+    // 查找被调的函数或类，可缓存时使用调用点缓存
+    private Object target(Scope scope) {
+        Object target;
+        if (root != null) {
+            int version = root.definitionVersion();
+            target = cached;
+            if (target == null || cachedVersion != version) {
+                target = lookup(root);
+                cached = target;
+                cachedVersion = version;
             }
-            System.out.println();
-            return null; // println 不返回值
+        } else {
+            target = lookup(scope);
         }
-        // 用户自定义函数调用实现
-        // 1. 查找函数定义
-        FuncDefinition function = scope.getFunction(name);
-        
-        // 如果找不到普通函数，尝试查找类定义即构造函数（支持无参数类实例化）
+        return target;
+    }
+
+    private Object[] arguments(Scope scope) {
+        Object[] values = new Object[args.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = args.get(i).eval(scope);
+        }
+        return values;
+    }
+
+    // 查找函数定义，找不到普通函数时查找类定义；函数的参数数量在此验证
+    private Object lookup(Scope scope) {
+        FuncDefinition function = scope.getFunction(id);
         if (function == null) {
-            ClassDefinition classDef = scope.getClassDefine(name);
+            ClassDefinition classDef = scope.getClassDefine(id);
             if (classDef != null) {
-                // 创建类实例
-                Scope instanceScope = new Scope(scope);
-                for (FieldDeclaration field : classDef.fields) {
-                    if (field.initializer != null) {
-                        Object value = field.initializer.eval(scope);
-                        instanceScope.declareVariable(field.name, value);
-                    } else {
-                        instanceScope.declareVariable(field.name, null);
-                    }
-                }
-                return new ClassInstance(classDef, instanceScope);
+                return classDef;
             }
-        }
-        
-        if (function == null) {
             throw new JvsException("Undefined function: " + name);
         }
-
-        // 2. 验证参数数量
         if (args.size() != function.parameters.size()) {
             throw new JvsException("Function " + name + " expects " +
                     function.parameters.size() + " arguments but got " + args.size());
         }
-
-        // 3. 创建函数作用域（继承函数定义时的作用域）
-        Scope funcScope = new Scope(function.definitionScope);
-
-        // 4. 绑定参数值
-        for (int i = 0; i < function.parameters.size(); i++) {
-            String paramName = function.parameters.get(i);
-            Object argValue = args.get(i).eval(scope);
-            funcScope.declareVariable(paramName, argValue);
-        }
-
-        // 5. 执行函数体
-        for (Statement stmt : function.body) {
-            ExecutionResult result = stmt.exec(funcScope);
-            if (result.isReturn) {
-                return result.returnValue; // 直接返回
-            }
-        }
-        return null; // 隐式返回 null
+        return function;
     }
 
 }
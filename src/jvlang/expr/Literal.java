@@ -18,4 +18,20 @@ public class Literal implements Expression {
     public Object eval(Scope scope) {
         return value;
     }
+
+    @Override
+    public long evalLong(Scope scope) throws UnexpectedResultException {
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        throw new UnexpectedResultException(value);
+    }
+
+    @Override
+    public double evalDouble(Scope scope) throws UnexpectedResultException {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        throw new UnexpectedResultException(value);
+    }
 }
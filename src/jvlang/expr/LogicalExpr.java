@@ -0,0 +1,49 @@
+package jvlang.expr;
+
+import jvlang.JvsException;
+import jvlang.Scope;
+import jvlang.Symbol;
+
+/**
+ * 短路逻辑运算 && 与 ||
+ * 左操作数已决定结果时（&&左侧为false、||左侧为true）不求值右操作数；
+ * 两侧求值后都必须是布尔值，否则报错
+ * @author Yumerain
+ */
+public class LogicalExpr implements Expression {
+
+    public final Expression left;
+    public final Symbol operator; // AND 或 OR
+    public final Expression right;
+
+    public LogicalExpr(Expression left, Symbol operator, Expression right) {
+        this.left = left;
+        this.operator = operator;
+        this.right = right;
+    }
+
+    @Override
+    public Object eval(Scope scope) {
+        boolean value = left(operator, left.eval(scope));
+        if (value == (operator == Symbol.OR)) {
+            return value;
+        }
+        return right(operator, right.eval(scope));
+    }
+
+    // 检查左操作数，字节码虚拟机与编译代码共用
+    public static boolean left(Symbol operator, Object value) {
+        if (!(value instanceof Boolean)) {
+            throw new JvsException("Left operand of " + operator + " must be boolean");
+        }
+        return (Boolean) value;
+    }
+
+    // 检查右操作数，右操作数即运算结果
+    public static Object right(Symbol operator, Object value) {
+        if (!(value instanceof Boolean)) {
+            throw new JvsException("Right operand of " + operator + " must be boolean");
+        }
+        return value;
+    }
+}
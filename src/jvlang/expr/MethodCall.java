@@ -2,10 +2,12 @@ package jvlang.expr;
 
 import jvlang.ExecutionResult;
 import jvlang.JvsException;
+import jvlang.Names;
 import jvlang.Scope;
 import jvlang.model.ClassInstance;
+import jvlang.model.TextBuilder;
+import jvlang.stmt.ClassDefinition;
 import jvlang.stmt.FuncDefinition;
-import jvlang.stmt.Statement;
 
 import java.util.List;
 
@@ -17,24 +19,69 @@ public class MethodCall implements Expression {
 
     public final Expression target;
     public final String methodName;
+    // 方法名的编号(Names)
+    public final int methodId;
     public final List<Expression> arguments;
 
+    // 调用点缓存：上次接收者的类定义与查到的方法。
+    // 类重新定义会产生新的ClassDefinition，旧实例仍使用旧定义的方法，因此无需另外失效
+    private ClassDefinition cachedClass;
+    private FuncDefinition cachedMethod;
+
     public MethodCall(Expression target, String methodName, List<Expression> arguments) {
+        this(target, Names.id(methodName), arguments);
+    }
+
+    public MethodCall(Expression target, int methodId, List<Expression> arguments) {
         this.target = target;
-        this.methodName = methodName;
+        this.methodId = methodId;
+        this.methodName = Names.name(methodId);
         this.arguments = arguments;
     }
 
     @Override
     public Object eval(Scope scope) {
         Object targetObj = target.eval(scope);
+        if (targetObj instanceof TextBuilder) {
+            return builder((TextBuilder) targetObj, scope);
+        }
+        ClassInstance instance = receiver(targetObj);
+        FuncDefinition method = method(instance);
+        return method.call(arguments(scope, instance));
+    }
+
+    // 尾调用：求值接收者与实参，写入函数作用域后由FuncDefinition.call在同一层循环中执行；
+    // 可变字符串的内置方法照常执行
+    public int tailCall(Scope scope, int depth) {
+        Object targetObj = target.eval(scope);
+        if (targetObj instanceof TextBuilder) {
+            scope.setReturnValue(depth, builder((TextBuilder) targetObj, scope));
+            return ExecutionResult.RETURN;
+        }
+        ClassInstance instance = receiver(targetObj);
+        FuncDefinition method = method(instance);
+        scope.setTailCall(depth, method, arguments(scope, instance));
+        return ExecutionResult.TAIL_CALL;
+    }
 
+    private Object builder(TextBuilder builder, Scope scope) {
+        TextBuilder.check(methodName, arguments.size());
+        Object argument = arguments.isEmpty() ? null : arguments.get(0).eval(scope);
+        return builder.invoke(methodName, argument);
+    }
+
+    private ClassInstance receiver(Object targetObj) {
         if (!(targetObj instanceof ClassInstance)) {
             throw new JvsException("Method call on non-class instance: " + targetObj.getClass().getSimpleName());
         }
+        return (ClassInstance) targetObj;
+    }
 
-        ClassInstance instance = (ClassInstance) targetObj;
-        FuncDefinition method = instance.getMethod(methodName);
+    private FuncDefinition method(ClassInstance instance) {
+        if (instance.definition == cachedClass) {
+            return cachedMethod;
+        }
+        FuncDefinition method = instance.getMethod(methodId);
 
         if (method == null) {
             throw new JvsException("Undefined method '" + methodName + "' in class " + instance.definition.name);
@@ -44,24 +91,19 @@ public class MethodCall implements Expression {
             throw new JvsException("Method " + methodName + " expects " +
                     method.parameters.size() + " arguments but got " + arguments.size());
         }
+        cachedClass = instance.definition;
+        cachedMethod = method;
+        return method;
+    }
 
-        Scope methodScope = new Scope(instance.fields);
-        methodScope.declareVariable("this", instance);
-
-        for (int i = 0; i < method.parameters.size(); i++) {
-            String paramName = method.parameters.get(i);
-            Object argValue = arguments.get(i).eval(scope);
-            methodScope.declareVariable(paramName, argValue);
-        }
-
-        for (Statement stmt : method.body) {
-            ExecutionResult result = stmt.exec(methodScope);
-            if (result.isReturn) {
-                return result.returnValue;
-            }
+    // 槽位0为this，参数依次在后
+    private Object[] arguments(Scope scope, ClassInstance instance) {
+        Object[] values = new Object[arguments.size() + 1];
+        values[0] = instance;
+        for (int i = 1; i < values.length; i++) {
+            values[i] = arguments.get(i - 1).eval(scope);
         }
-
-        return null;
+        return values;
     }
 
 }
@@ -0,0 +1,38 @@
+package jvlang.expr;
+
+import jvlang.Native;
+import jvlang.Scope;
+
+import java.util.List;
+
+/**
+ * 原生函数调用：由Parser根据注册表解析，直接调用Java实现，不经过作用域链查找；
+ * 作用域中有同名的脚本函数或类时，Resolver设置script，改为调用脚本定义
+ * @author Yumerain
+ */
+public class NativeCall implements Expression {
+
+    public final Native function;
+
+    public final List<Expression> args;
+
+    // 由Resolver设置：同名的脚本函数或类的调用，不为null时代替原生函数
+    public FuncCall script;
+
+    public NativeCall(Native function, List<Expression> args) {
+        this.function = function;
+        this.args = args;
+    }
+
+    @Override
+    public Object eval(Scope scope) {
+        if (script != null) {
+            return script.eval(scope);
+        }
+        Object[] values = new Object[args.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = args.get(i).eval(scope);
+        }
+        return function.call(scope.getOutput(), values);
+    }
+}
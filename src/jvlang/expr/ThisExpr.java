@@ -1,8 +1,6 @@
 package jvlang.expr;
 
-import jvlang.JvsException;
 import jvlang.Scope;
-import jvlang.model.ClassInstance;
 
 /**
  * this表达式
@@ -10,13 +8,12 @@ import jvlang.model.ClassInstance;
  */
 public class ThisExpr implements Expression {
 
+    // 由Resolver填写：所在方法作用域的层数，this固定在槽位0
+    public int depth = -1;
+
     @Override
     public Object eval(Scope scope) {
-        Object thisInstance = scope.getVariable("this");
-        if (!(thisInstance instanceof ClassInstance)) {
-            throw new JvsException("'this' is not bound to a class instance");
-        }
-        return thisInstance;
+        return scope.getVariable(depth, 0);
     }
 
 }
@@ -1,5 +1,7 @@
 package jvlang.expr;
 
+import jvlang.JvsException;
+import jvlang.Numbers;
 import jvlang.Scope;
 import jvlang.Symbol;
 
@@ -20,6 +22,48 @@ public class UnaryExpr implements Expression {
 
     @Override
     public Object eval(Scope scope) {
-        return null;
+        return apply(operator, right.eval(scope));
+    }
+
+    @Override
+    public long evalLong(Scope scope) throws UnexpectedResultException {
+        if (operator != Symbol.MINUS) {
+            return Expression.super.evalLong(scope);
+        }
+        long value;
+        try {
+            value = right.evalLong(scope);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(apply(operator, e.result));
+        }
+        return -value;
+    }
+
+    @Override
+    public double evalDouble(Scope scope) throws UnexpectedResultException {
+        if (operator != Symbol.MINUS) {
+            return Expression.super.evalDouble(scope);
+        }
+        double value;
+        try {
+            value = right.evalDouble(scope);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(apply(operator, e.result));
+        }
+        return -value;
+    }
+
+    // 对已求值的操作数执行运算，字节码虚拟机与解释器共用
+    public static Object apply(Symbol operator, Object value) {
+        if (operator == Symbol.MINUS) {
+            if (value instanceof Long) return Numbers.box(-(Long) value);
+            if (value instanceof Double) return -(Double) value;
+            throw new JvsException("Operand of - must be a number, got " + value);
+        }
+        if (operator == Symbol.NOT) {
+            if (value instanceof Boolean) return !(Boolean) value;
+            throw new JvsException("Operand of ! must be boolean, got " + value);
+        }
+        throw new JvsException("Unsupported unary operator: " + operator);
     }
 }
@@ -0,0 +1,20 @@
+package jvlang.expr;
+
+/**
+ * 按基本类型求值（evalLong、evalDouble）时结果类型不符，携带实际的求值结果，
+ * 调用方改用该结果走通用路径，不会重复求值
+ * @author Yumerain
+ */
+public class UnexpectedResultException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public final Object result;
+
+    // 只用于控制流，不记录调用栈
+    public UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+
+}
@@ -1,6 +1,9 @@
 package jvlang.expr;
 
+import jvlang.Names;
 import jvlang.Scope;
+import jvlang.model.ClassInstance;
+import jvlang.stmt.VarDeclaration;
 
 /**
  * 变量
@@ -9,14 +12,36 @@ import jvlang.Scope;
 public class Variable implements Expression {
 
     public final String name;
+    // 名称编号(Names)
+    public final int id;
 
-    public Variable(String id) {
-        this.name = id;
+    // 以下由Resolver填写：所在作用域的层数与槽位
+    public int depth = -1;
+    public int slot = -1;
+
+    // 对应的声明（参数与this也有声明，类型为空）
+    public VarDeclaration declaration;
+
+    // 方法内直接使用字段名：(depth, slot)指向this，fieldSlot为字段在实例中的槽位
+    public boolean thisField;
+    public int fieldSlot = -1;
+
+    public Variable(String name) {
+        this(Names.id(name));
+    }
+
+    public Variable(int id) {
+        this.id = id;
+        this.name = Names.name(id);
     }
 
     @Override
     public Object eval(Scope scope) {
-        // 从作用域获取值
-        return scope.getVariable(name);
+        if (thisField) {
+            ClassInstance instance = (ClassInstance) scope.getVariable(depth, slot);
+            return instance.fields[fieldSlot];
+        }
+        // 从作用域槽位获取值
+        return scope.getVariable(depth, slot);
     }
 }
@@ -0,0 +1,25 @@
+package jvlang.jit;
+
+/**
+ * 编译为JVM字节码的函数，由所在隐藏类的invoke按下标分派
+ * @author Yumerain
+ */
+public final class CompiledFunction {
+
+    // 所在的隐藏类实例，加载后设置
+    JitUnit unit;
+    final int index;
+
+    // 函数定义语句执行（注册到根作用域）后置为true，此后编译代码内的调用直接跳转到该函数
+    public boolean linked;
+
+    CompiledFunction(int index) {
+        this.index = index;
+    }
+
+    // 以已求值的实参调用，方法的实参0为this；结果可能是TailCall，由FuncDefinition.call继续执行
+    public Object invoke(Object[] args) {
+        return unit.invoke(index, args);
+    }
+
+}
@@ -0,0 +1,745 @@
+package jvlang.jit;
+
+import jvlang.JvsException;
+import jvlang.Program;
+import jvlang.Scope;
+import jvlang.Symbol;
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.ConcatExpr;
+import jvlang.expr.Expression;
+import jvlang.expr.FieldAccess;
+import jvlang.expr.FuncCall;
+import jvlang.expr.Literal;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.MethodCall;
+import jvlang.expr.NativeCall;
+import jvlang.expr.ThisExpr;
+import jvlang.expr.UnaryExpr;
+import jvlang.expr.Variable;
+import jvlang.stmt.Assignment;
+import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.ExprStatement;
+import jvlang.stmt.FuncDefinition;
+import jvlang.stmt.IfStatement;
+import jvlang.stmt.LoopStatement;
+import jvlang.stmt.ReturnStatement;
+import jvlang.stmt.Statement;
+import jvlang.stmt.VarDeclaration;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static jvlang.jit.ClassWriter.*;
+import static jvlang.jit.MethodWriter.*;
+
+/**
+ * 把顶层定义的函数与类方法编译为JVM字节码，由MethodHandles.Lookup.defineHiddenClass加载，
+ * 交给JVM的即时编译器内联优化。变量为JVM局部变量，值仍是解释器使用的Long/Double/String等对象，
+ * 运算与错误信息沿用解释器的实现；含有不支持语法（嵌套定义、类实例化表达式）的函数保持解释执行
+ * @author Yumerain
+ */
+public class JitCompiler {
+
+    private static final String UNIT = "jvlang/jit/CompiledUnit";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String OBJ = "Ljava/lang/Object;";
+    private static final String SCOPE = "jvlang/Scope";
+    private static final String OUTPUT = "jvlang/Output";
+    private static final String NATIVE = "jvlang/Native";
+    private static final String FUNCTION = "jvlang/stmt/FuncDefinition";
+    private static final String DECLARATION = "jvlang/stmt/VarDeclaration";
+    private static final String COMPILED = "jvlang/jit/CompiledFunction";
+    private static final String RUNTIME = JitRuntime.NAME;
+
+    // JVM方法参数最多255个槽位
+    private static final int MAX_PARAMETERS = 250;
+
+    private final Scope root;
+
+    public JitCompiler(Scope root) {
+        this.root = root;
+    }
+
+    // 编译程序顶层的函数与类方法，须在Resolver之后、执行之前调用
+    public void compile(Program program) {
+        List<FuncDefinition> functions = new ArrayList<>();
+        List<Boolean> isMethod = new ArrayList<>();
+        for (Statement stmt : program.statements) {
+            if (stmt instanceof FuncDefinition) {
+                functions.add((FuncDefinition) stmt);
+                isMethod.add(false);
+            } else if (stmt instanceof ClassDefinition) {
+                for (FuncDefinition method : ((ClassDefinition) stmt).methods) {
+                    functions.add(method);
+                    isMethod.add(true);
+                }
+            }
+        }
+        for (int i = functions.size() - 1; i >= 0; i--) {
+            FuncDefinition function = functions.get(i);
+            if (function.parameters.size() > MAX_PARAMETERS || !supportedStatements(function.body)) {
+                functions.remove(i);
+                isMethod.remove(i);
+            }
+        }
+        // 某个函数超出class文件的限制时去掉它重新生成，其它函数对它的调用改走查找
+        while (!functions.isEmpty()) {
+            try {
+                define(functions, isMethod);
+                return;
+            } catch (Overflow e) {
+                functions.remove(e.index);
+                isMethod.remove(e.index);
+            }
+        }
+    }
+
+    // 函数超出class文件限制
+    private static class Overflow extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+
+        Overflow(int index) {
+            super(null, null, false, false);
+            this.index = index;
+        }
+    }
+
+    private void define(List<FuncDefinition> functions, List<Boolean> isMethod) {
+        Unit unit = new Unit(functions, isMethod);
+        byte[] bytes = unit.generate();
+        JitUnit instance;
+        try {
+            Class<?> clazz = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(bytes, unit.constants.toArray(), true)
+                    .lookupClass();
+            instance = (JitUnit) clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new JvsException("Failed to load compiled functions", e);
+        }
+        for (int i = 0; i < functions.size(); i++) {
+            unit.compiled[i].unit = instance;
+            functions.get(i).compiled = unit.compiled[i];
+        }
+    }
+
+    // 检查语句是否都能编译
+    private static boolean supportedStatements(List<Statement> statements) {
+        for (Statement stmt : statements) {
+            if (!supportedStatement(stmt)) return false;
+        }
+        return true;
+    }
+
+    private static boolean supportedStatement(Statement stmt) {
+        if (stmt instanceof VarDeclaration) {
+            Expression initializer = ((VarDeclaration) stmt).initializer;
+            return initializer == null || supportedExpression(initializer);
+        }
+        if (stmt instanceof Assignment) {
+            Assignment assignment = (Assignment) stmt;
+            return (assignment.target instanceof Variable || assignment.target instanceof FieldAccess)
+                    && supportedExpression(assignment.target) && supportedExpression(assignment.value);
+        }
+        if (stmt instanceof ExprStatement) {
+            return supportedExpression(((ExprStatement) stmt).expression);
+        }
+        if (stmt instanceof ReturnStatement) {
+            Expression expr = ((ReturnStatement) stmt).expression;
+            return expr == null || supportedExpression(expr);
+        }
+        if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            return supportedExpression(ifStmt.condition) && supportedStatements(ifStmt.thenBranch)
+                    && (ifStmt.elseBranch == null || supportedStatements(ifStmt.elseBranch));
+        }
+        if (stmt instanceof LoopStatement) {
+            LoopStatement loop = (LoopStatement) stmt;
+            return supportedExpression(loop.condition) && supportedStatements(loop.body);
+        }
+        // 嵌套的函数与类定义需要运行时作用域
+        return false;
+    }
+
+    private static boolean supportedExpression(Expression expr) {
+        if (expr instanceof Literal || expr instanceof Variable || expr instanceof ThisExpr) {
+            return true;
+        }
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            return operator(binary) != null && supportedExpression(binary.left) && supportedExpression(binary.right);
+        }
+        if (expr instanceof LogicalExpr) {
+            LogicalExpr logical = (LogicalExpr) expr;
+            return supportedExpression(logical.left) && supportedExpression(logical.right);
+        }
+        if (expr instanceof ConcatExpr) {
+            return supportedExpressions(((ConcatExpr) expr).parts);
+        }
+        if (expr instanceof UnaryExpr) {
+            return supportedExpression(((UnaryExpr) expr).right);
+        }
+        if (expr instanceof FuncCall) {
+            return supportedExpressions(((FuncCall) expr).args);
+        }
+        if (expr instanceof NativeCall) {
+            return supportedExpressions(((NativeCall) expr).args);
+        }
+        if (expr instanceof MethodCall) {
+            MethodCall call = (MethodCall) expr;
+            return supportedExpression(call.target) && supportedExpressions(call.arguments);
+        }
+        if (expr instanceof FieldAccess) {
+            return supportedExpression(((FieldAccess) expr).target);
+        }
+        // 类实例化表达式的字段初始化顺序依赖运行时的类定义
+        return false;
+    }
+
+    private static boolean supportedExpressions(Iterable<Expression> exprs) {
+        for (Expression expr : exprs) {
+            if (!supportedExpression(expr)) return false;
+        }
+        return true;
+    }
+
+    // 二元运算对应的运行时方法
+    private static String operator(BinaryExpr binary) {
+        switch (binary.operator) {
+            case PLUS: return "add";
+            case MINUS: return "sub";
+            case MULTIPLY: return "mul";
+            case DIVIDE: return "div";
+            case MODULO: return "mod";
+            case EQUAL: return "eq";
+            case NOTEQUAL: return "ne";
+            case LESS: return "lt";
+            case GREATER: return "gt";
+            case LESS_EQUAL: return "le";
+            case GREATER_EQUAL: return "ge";
+            default: return null;
+        }
+    }
+
+    private static String descriptor(int parameters) {
+        StringBuilder desc = new StringBuilder("(");
+        for (int i = 0; i < parameters; i++) {
+            desc.append(OBJ);
+        }
+        return desc.append(')').append(OBJ).toString();
+    }
+
+    // 一次编译生成的隐藏类
+    private class Unit {
+        final List<FuncDefinition> functions;
+        final List<Boolean> isMethod;
+        final CompiledFunction[] compiled;
+        // 顶层函数名到下标，用于编译代码间的直接调用
+        final Map<String, Integer> byName = new HashMap<>();
+        final String[] names;
+        final ClassWriter cw = new ClassWriter(UNIT);
+        // 常量表，加载后作为隐藏类的classData存入静态字段K
+        final List<Object> constants = new ArrayList<>();
+        final Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+
+        Unit(List<FuncDefinition> functions, List<Boolean> isMethod) {
+            this.functions = functions;
+            this.isMethod = isMethod;
+            this.compiled = new CompiledFunction[functions.size()];
+            this.names = new String[functions.size()];
+            for (int i = 0; i < functions.size(); i++) {
+                FuncDefinition function = functions.get(i);
+                compiled[i] = new CompiledFunction(i);
+                names[i] = function.name + "$" + i;
+                if (!isMethod.get(i) && !byName.containsKey(function.name)) {
+                    byName.put(function.name, i);
+                }
+            }
+            // 记忆化的函数经FuncDefinition.call查缓存，不直接调用其静态方法
+            for (FuncDefinition function : functions) {
+                if (function.memo != null) {
+                    byName.remove(function.name);
+                }
+            }
+            constant(root);
+        }
+
+        int arity(int index) {
+            return functions.get(index).parameters.size() + (isMethod.get(index) ? 1 : 0);
+        }
+
+        int constant(Object value) {
+            Integer index = constantIndex.get(value);
+            if (index == null) {
+                index = constants.size();
+                if (index > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Too many constants");
+                }
+                constants.add(value);
+                constantIndex.put(value, index);
+            }
+            return index;
+        }
+
+        byte[] generate() {
+            cw.field(ACC_STATIC | ACC_FINAL, "K", "[" + OBJ);
+            staticInit();
+            constructor();
+            dispatch();
+            for (int i = 0; i < functions.size(); i++) {
+                try {
+                    MethodWriter mw = new MethodWriter(cw, arity(i));
+                    new FunctionCompiler(this, mw, i).compile(functions.get(i).body);
+                    cw.method(ACC_STATIC, names[i], descriptor(arity(i)), mw);
+                } catch (IllegalStateException e) {
+                    throw new Overflow(i);
+                }
+            }
+            return cw.toByteArray(ACC_FINAL | ACC_SUPER, OBJECT, "jvlang/jit/JitUnit");
+        }
+
+        // K = (Object[]) MethodHandles.classData(MethodHandles.lookup(), "_", Object[].class)
+        private void staticInit() {
+            MethodWriter mw = new MethodWriter(cw, 0);
+            mw.invoke(INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup",
+                    "()Ljava/lang/invoke/MethodHandles$Lookup;");
+            mw.ldcString("_");
+            mw.ldcClass("[" + OBJ);
+            mw.invoke(INVOKESTATIC, "java/lang/invoke/MethodHandles", "classData",
+                    "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)" + OBJ);
+            mw.type(CHECKCAST, "[" + OBJ, 0);
+            mw.field(PUTSTATIC, UNIT, "K", "[" + OBJ);
+            mw.op(RETURN, 0);
+            cw.method(ACC_STATIC, "<clinit>", "()V", mw);
+        }
+
+        private void constructor() {
+            MethodWriter mw = new MethodWriter(cw, 1);
+            mw.aload(0);
+            mw.invoke(INVOKESPECIAL, OBJECT, "<init>", "()V");
+            mw.op(RETURN, 0);
+            cw.method(ACC_PUBLIC, "<init>", "()V", mw);
+        }
+
+        // invoke(index, args)：按下标分派到各函数的静态方法
+        private void dispatch() {
+            MethodWriter mw = new MethodWriter(cw, 3);
+            MethodWriter.Label fallback = mw.label();
+            MethodWriter.Label[] labels = new MethodWriter.Label[functions.size()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = mw.label();
+            }
+            mw.iload(1);
+            mw.tableswitch(fallback, labels);
+            for (int i = 0; i < labels.length; i++) {
+                mw.mark(labels[i]);
+                int arity = arity(i);
+                for (int j = 0; j < arity; j++) {
+                    mw.aload(2);
+                    mw.iconst(j);
+                    mw.op(AALOAD, -1);
+                }
+                mw.invoke(INVOKESTATIC, UNIT, names[i], descriptor(arity));
+                mw.op(ARETURN, -1);
+            }
+            mw.mark(fallback);
+            mw.op(ACONST_NULL, 1);
+            mw.op(ARETURN, -1);
+            cw.method(ACC_PUBLIC, "invoke", "(I[" + OBJ + ")" + OBJ, mw);
+        }
+    }
+
+    // 单个函数的代码生成
+    private static class FunctionCompiler {
+        final Unit unit;
+        final MethodWriter mw;
+        // 正在编译的函数在Unit中的下标
+        final int index;
+        final boolean method;
+        // 方法开头，对自身的尾调用跳回这里
+        final MethodWriter.Label start;
+        // 函数体内（含嵌套块）声明的变量对应的JVM局部变量
+        final Map<VarDeclaration, Integer> locals = new IdentityHashMap<>();
+        // 当前所在块相对函数块的层数
+        int level;
+
+        FunctionCompiler(Unit unit, MethodWriter mw, int index) {
+            this.unit = unit;
+            this.mw = mw;
+            this.index = index;
+            this.method = unit.isMethod.get(index);
+            this.start = mw.label();
+        }
+
+        void compile(List<Statement> body) {
+            mw.mark(start);
+            statements(body);
+            mw.op(ACONST_NULL, 1);
+            mw.op(ARETURN, -1);
+        }
+
+        // 没有作用域的分支在外层块中，不增加层数
+        private void block(List<Statement> statements, boolean scoped) {
+            if (scoped) level++;
+            statements(statements);
+            if (scoped) level--;
+        }
+
+        private void statements(List<Statement> statements) {
+            for (Statement stmt : statements) {
+                statement(stmt);
+            }
+        }
+
+        private void statement(Statement stmt) {
+            if (stmt instanceof VarDeclaration) {
+                VarDeclaration declaration = (VarDeclaration) stmt;
+                if (declaration.initializer != null) {
+                    constant(declaration, DECLARATION);
+                    expression(declaration.initializer);
+                    runtime("init", "(L" + DECLARATION + ";" + OBJ + ")" + OBJ);
+                } else {
+                    mw.op(ACONST_NULL, 1);
+                }
+                int local = mw.newLocal();
+                locals.put(declaration, local);
+                mw.astore(local);
+            } else if (stmt instanceof Assignment) {
+                assignment((Assignment) stmt);
+            } else if (stmt instanceof ExprStatement) {
+                expression(((ExprStatement) stmt).expression);
+                mw.op(POP, -1);
+            } else if (stmt instanceof ReturnStatement) {
+                ReturnStatement returnStmt = (ReturnStatement) stmt;
+                Expression expr = returnStmt.expression;
+                if (returnStmt.tailCall && selfCall(expr)) {
+                    selfTailCall((FuncCall) expr);
+                } else if (returnStmt.tailCall) {
+                    tailCall(expr);
+                } else if (expr != null) {
+                    expression(expr);
+                } else {
+                    mw.op(ACONST_NULL, 1);
+                }
+                mw.op(ARETURN, -1);
+            } else if (stmt instanceof IfStatement) {
+                IfStatement ifStmt = (IfStatement) stmt;
+                MethodWriter.Label otherwise = mw.label();
+                expression(ifStmt.condition);
+                runtime("ifCondition", "(" + OBJ + ")Z");
+                mw.jump(IFEQ, otherwise);
+                block(ifStmt.thenBranch, ifStmt.thenScoped);
+                if (ifStmt.elseBranch != null) {
+                    MethodWriter.Label end = mw.label();
+                    mw.jump(GOTO, end);
+                    mw.mark(otherwise);
+                    block(ifStmt.elseBranch, ifStmt.elseScoped);
+                    mw.mark(end);
+                } else {
+                    mw.mark(otherwise);
+                }
+            } else if (stmt instanceof LoopStatement) {
+                LoopStatement loop = (LoopStatement) stmt;
+                MethodWriter.Label top = mw.label();
+                MethodWriter.Label end = mw.label();
+                mw.mark(top);
+                expression(loop.condition);
+                runtime("whileCondition", "(" + OBJ + ")Z");
+                mw.jump(IFEQ, end);
+                block(loop.body, loop.bodyScoped);
+                mw.jump(GOTO, top);
+                mw.mark(end);
+            } else {
+                throw new JvsException("Unsupported statement: " + stmt.getClass().getSimpleName());
+            }
+        }
+
+        private void assignment(Assignment assignment) {
+            if (assignment.target instanceof FieldAccess) {
+                // 与解释器一致：先求值右侧，再求值目标对象
+                FieldAccess field = (FieldAccess) assignment.target;
+                int value = mw.newLocal();
+                expression(assignment.value);
+                mw.astore(value);
+                expression(field.target);
+                mw.iconst(field.fieldId);
+                mw.aload(value);
+                mw.invoke(INVOKESTATIC, "jvlang/stmt/Assignment", "setField",
+                        "(" + OBJ + "I" + OBJ + ")V");
+                return;
+            }
+            Variable variable = (Variable) assignment.target;
+            if (variable.thisField) {
+                mw.aload(0);
+                mw.iconst(variable.fieldSlot);
+                expression(assignment.value);
+                runtime("setField", "(" + OBJ + "I" + OBJ + ")V");
+                return;
+            }
+            Integer local = local(variable);
+            if (local != null) {
+                if (locals.containsKey(variable.declaration)) {
+                    constant(variable.declaration, DECLARATION);
+                    expression(assignment.value);
+                    runtime("check", "(L" + DECLARATION + ";" + OBJ + ")" + OBJ);
+                } else {
+                    // 参数没有类型
+                    expression(assignment.value);
+                }
+                mw.astore(local);
+            } else {
+                root();
+                mw.iconst(variable.depth - level - 1);
+                mw.iconst(variable.slot);
+                constant(variable.declaration, DECLARATION);
+                expression(assignment.value);
+                runtime("check", "(L" + DECLARATION + ";" + OBJ + ")" + OBJ);
+                mw.invoke(INVOKEVIRTUAL, SCOPE, "setVariable", "(II" + OBJ + ")V");
+            }
+        }
+
+        // 函数内的变量返回局部变量下标，根作用域（及宿主作用域）的变量返回null
+        private Integer local(Variable variable) {
+            Integer local = locals.get(variable.declaration);
+            if (local != null) return local;
+            // 函数块中没有声明语句的变量是参数（方法的this在槽位0），与JVM参数位置一致
+            if (variable.depth == level) return variable.slot;
+            return null;
+        }
+
+        private void expression(Expression expr) {
+            if (expr instanceof Literal) {
+                literal(((Literal) expr).value);
+            } else if (expr instanceof Variable) {
+                Variable variable = (Variable) expr;
+                if (variable.thisField) {
+                    mw.aload(0);
+                    mw.iconst(variable.fieldSlot);
+                    runtime("getField", "(" + OBJ + "I)" + OBJ);
+                    return;
+                }
+                Integer local = local(variable);
+                if (local != null) {
+                    mw.aload(local);
+                } else {
+                    root();
+                    mw.iconst(variable.depth - level - 1);
+                    mw.iconst(variable.slot);
+                    mw.invoke(INVOKEVIRTUAL, SCOPE, "getVariable", "(II)" + OBJ);
+                }
+            } else if (expr instanceof ThisExpr) {
+                mw.aload(0);
+            } else if (expr instanceof BinaryExpr) {
+                BinaryExpr binary = (BinaryExpr) expr;
+                expression(binary.left);
+                expression(binary.right);
+                runtime(operator(binary), "(" + OBJ + OBJ + ")" + OBJ);
+            } else if (expr instanceof ConcatExpr) {
+                array(((ConcatExpr) expr).parts, -1);
+                mw.invoke(INVOKESTATIC, "jvlang/expr/ConcatExpr", "concat", "([" + OBJ + ")Ljava/lang/String;");
+            } else if (expr instanceof LogicalExpr) {
+                // 短路时结果即左操作数的值，跳过右操作数
+                LogicalExpr logical = (LogicalExpr) expr;
+                boolean and = logical.operator == Symbol.AND;
+                MethodWriter.Label shortCircuit = mw.label();
+                MethodWriter.Label end = mw.label();
+                expression(logical.left);
+                runtime(and ? "andLeft" : "orLeft", "(" + OBJ + ")Z");
+                mw.jump(IFEQ, shortCircuit);
+                int depth = mw.stack();
+                expression(logical.right);
+                runtime(and ? "andRight" : "orRight", "(" + OBJ + ")" + OBJ);
+                mw.jump(GOTO, end);
+                mw.mark(shortCircuit);
+                mw.stack(depth);
+                mw.field(GETSTATIC, "java/lang/Boolean", and ? "FALSE" : "TRUE", "Ljava/lang/Boolean;");
+                mw.mark(end);
+            } else if (expr instanceof UnaryExpr) {
+                UnaryExpr unary = (UnaryExpr) expr;
+                expression(unary.right);
+                runtime(unary.operator == Symbol.MINUS ? "neg" : "not", "(" + OBJ + ")" + OBJ);
+            } else if (expr instanceof FuncCall) {
+                call((FuncCall) expr);
+            } else if (expr instanceof NativeCall && ((NativeCall) expr).script != null) {
+                // 同名的脚本函数或类优先
+                call(((NativeCall) expr).script);
+            } else if (expr instanceof NativeCall) {
+                // 原生函数作为常量直接调用，实参与根作用域的输出一并传入
+                NativeCall call = (NativeCall) expr;
+                constant(call.function, NATIVE);
+                root();
+                mw.invoke(INVOKEVIRTUAL, SCOPE, "getOutput", "()L" + OUTPUT + ";");
+                array(call.args, -1);
+                mw.invoke(INVOKEVIRTUAL, NATIVE, "call", "(L" + OUTPUT + ";[" + OBJ + ")" + OBJ);
+            } else if (expr instanceof MethodCall) {
+                methodCall((MethodCall) expr);
+            } else if (expr instanceof FieldAccess) {
+                FieldAccess field = (FieldAccess) expr;
+                expression(field.target);
+                mw.iconst(field.fieldId);
+                mw.invoke(INVOKESTATIC, "jvlang/expr/FieldAccess", "get", "(" + OBJ + "I)" + OBJ);
+            } else {
+                throw new JvsException("Unsupported expression: " + expr.getClass().getSimpleName());
+            }
+        }
+
+        private void literal(Object value) {
+            if (value == null) {
+                mw.op(ACONST_NULL, 1);
+            } else if (value instanceof String) {
+                mw.ldcString((String) value);
+            } else if (value instanceof Boolean) {
+                mw.field(GETSTATIC, "java/lang/Boolean", (Boolean) value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+            } else {
+                constant(value, null);
+            }
+        }
+
+        private void call(FuncCall call) {
+            Integer target = unit.byName.get(call.name);
+            if (target == null || unit.arity(target) != call.args.size()) {
+                lookupCall(call);
+                return;
+            }
+            // 被调函数已注册时直接调用其静态方法，否则按名称查找
+            MethodWriter.Label lookup = mw.label();
+            MethodWriter.Label end = mw.label();
+            int depth = mw.stack();
+            constant(unit.compiled[target], COMPILED);
+            mw.field(GETFIELD, COMPILED, "linked", "Z");
+            mw.jump(IFEQ, lookup);
+            for (Expression arg : call.args) {
+                expression(arg);
+            }
+            mw.invoke(INVOKESTATIC, UNIT, unit.names[target], descriptor(call.args.size()));
+            runtime("resolve", "(" + OBJ + ")" + OBJ);
+            mw.jump(GOTO, end);
+            mw.mark(lookup);
+            mw.stack(depth);
+            lookupCall(call);
+            mw.mark(end);
+        }
+
+        // 是否为对正在编译的函数自身的直接调用
+        private boolean selfCall(Expression expr) {
+            if (!(expr instanceof FuncCall)) return false;
+            FuncCall call = (FuncCall) expr;
+            Integer target = unit.byName.get(call.name);
+            return target != null && target == index && unit.arity(index) == call.args.size();
+        }
+
+        // 对自身的尾调用：实参写回参数局部变量后跳回方法开头，不增加JVM调用栈；
+        // 函数已被重新定义时与普通调用一样按名称查找，结果留在栈上由return返回
+        private void selfTailCall(FuncCall call) {
+            MethodWriter.Label lookup = mw.label();
+            int depth = mw.stack();
+            constant(unit.compiled[index], COMPILED);
+            mw.field(GETFIELD, COMPILED, "linked", "Z");
+            mw.jump(IFEQ, lookup);
+            for (Expression arg : call.args) {
+                expression(arg);
+            }
+            for (int i = call.args.size() - 1; i >= 0; i--) {
+                mw.astore(i);
+            }
+            mw.jump(GOTO, start);
+            mw.mark(lookup);
+            mw.stack(depth);
+            lookupCall(call);
+        }
+
+        // 对其它函数或方法的尾调用：查找被调函数并求值实参，在栈上留下TailCall
+        private void tailCall(Expression expr) {
+            if (expr instanceof FuncCall) {
+                FuncCall call = (FuncCall) expr;
+                root();
+                mw.iconst(call.id);
+                mw.iconst(call.args.size());
+                runtime("lookup", "(L" + SCOPE + ";II)" + OBJ);
+                array(call.args, -1);
+                runtime("tailCall", "(" + OBJ + "[" + OBJ + ")" + OBJ);
+            } else {
+                MethodCall call = (MethodCall) expr;
+                int target = mw.newLocal();
+                expression(call.target);
+                mw.astore(target);
+                mw.aload(target);
+                mw.iconst(call.methodId);
+                mw.ldcString(call.methodName);
+                mw.iconst(call.arguments.size());
+                runtime("method", "(" + OBJ + "ILjava/lang/String;I)L" + FUNCTION + ";");
+                array(call.arguments, target);
+                mw.ldcString(call.methodName);
+                runtime("tailInvoke", "(L" + FUNCTION + ";[" + OBJ + "Ljava/lang/String;)" + OBJ);
+            }
+        }
+
+        private void lookupCall(FuncCall call) {
+            root();
+            root();
+            mw.iconst(call.id);
+            mw.iconst(call.args.size());
+            runtime("lookup", "(L" + SCOPE + ";II)" + OBJ);
+            array(call.args, -1);
+            runtime("call", "(L" + SCOPE + ";" + OBJ + "[" + OBJ + ")" + OBJ);
+        }
+
+        private void methodCall(MethodCall call) {
+            int target = mw.newLocal();
+            expression(call.target);
+            mw.astore(target);
+            mw.aload(target);
+            mw.iconst(call.methodId);
+            mw.ldcString(call.methodName);
+            mw.iconst(call.arguments.size());
+            runtime("method", "(" + OBJ + "ILjava/lang/String;I)L" + FUNCTION + ";");
+            array(call.arguments, target);
+            mw.ldcString(call.methodName);
+            runtime("invoke", "(L" + FUNCTION + ";[" + OBJ + "Ljava/lang/String;)" + OBJ);
+        }
+
+        // 创建实参数组，receiver不为-1时该局部变量作为第0个元素
+        private void array(List<Expression> args, int receiver) {
+            int offset = receiver < 0 ? 0 : 1;
+            mw.iconst(args.size() + offset);
+            mw.type(ANEWARRAY, OBJECT, 0);
+            if (receiver >= 0) {
+                mw.op(DUP, 1);
+                mw.iconst(0);
+                mw.aload(receiver);
+                mw.op(AASTORE, -3);
+            }
+            for (int i = 0; i < args.size(); i++) {
+                mw.op(DUP, 1);
+                mw.iconst(i + offset);
+                expression(args.get(i));
+                mw.op(AASTORE, -3);
+            }
+        }
+
+        private void root() {
+            constant(unit.constants.get(0), SCOPE);
+        }
+
+        // 加载常量表中的对象，type不为空时转换为该类型
+        private void constant(Object value, String type) {
+            int index = unit.constant(value);
+            mw.field(GETSTATIC, UNIT, "K", "[" + OBJ);
+            mw.iconst(index);
+            mw.op(AALOAD, -1);
+            if (type != null) {
+                mw.type(CHECKCAST, type, 0);
+            }
+        }
+
+        private void runtime(String name, String descriptor) {
+            mw.invoke(INVOKESTATIC, RUNTIME, name, descriptor);
+        }
+    }
+
+}
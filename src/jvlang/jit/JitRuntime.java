@@ -0,0 +1,224 @@
+package jvlang.jit;
+
+import jvlang.JvsException;
+import jvlang.Numbers;
+import jvlang.Scope;
+import jvlang.Symbol;
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.UnaryExpr;
+import jvlang.model.ClassInstance;
+import jvlang.model.TextBuilder;
+import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.FuncDefinition;
+import jvlang.stmt.VarDeclaration;
+
+/**
+ * 编译后的代码调用的运行时方法
+ * 整数运算走快速路径，其余情况交给解释器的实现，保证两者结果一致
+ * @author Yumerain
+ */
+final class JitRuntime {
+
+    static final String NAME = "jvlang/jit/JitRuntime";
+
+    // 类型检查不依赖作用域的内容
+    private static final Scope TYPES = new Scope();
+
+    private JitRuntime() {
+    }
+
+    static Object add(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return Numbers.box((Long) a + (Long) b);
+        return BinaryExpr.apply(Symbol.PLUS, a, b);
+    }
+
+    static Object sub(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return Numbers.box((Long) a - (Long) b);
+        return BinaryExpr.apply(Symbol.MINUS, a, b);
+    }
+
+    static Object mul(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return Numbers.box((Long) a * (Long) b);
+        return BinaryExpr.apply(Symbol.MULTIPLY, a, b);
+    }
+
+    static Object div(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return Numbers.box((Long) a / (Long) b);
+        return BinaryExpr.apply(Symbol.DIVIDE, a, b);
+    }
+
+    static Object mod(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return Numbers.box((Long) a % (Long) b);
+        return BinaryExpr.apply(Symbol.MODULO, a, b);
+    }
+
+    // 整数之间精确比较，其余数字与解释器一样按double进行
+    static Object eq(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return (long) (Long) a == (long) (Long) b;
+        return BinaryExpr.apply(Symbol.EQUAL, a, b);
+    }
+
+    static Object ne(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return (long) (Long) a != (long) (Long) b;
+        return BinaryExpr.apply(Symbol.NOTEQUAL, a, b);
+    }
+
+    static Object lt(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return (long) (Long) a < (long) (Long) b;
+        return BinaryExpr.apply(Symbol.LESS, a, b);
+    }
+
+    static Object gt(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return (long) (Long) a > (long) (Long) b;
+        return BinaryExpr.apply(Symbol.GREATER, a, b);
+    }
+
+    static Object le(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return (long) (Long) a <= (long) (Long) b;
+        return BinaryExpr.apply(Symbol.LESS_EQUAL, a, b);
+    }
+
+    static Object ge(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return (long) (Long) a >= (long) (Long) b;
+        return BinaryExpr.apply(Symbol.GREATER_EQUAL, a, b);
+    }
+
+    // 短路逻辑运算：检查左操作数，需要求值右操作数时返回true
+    static boolean andLeft(Object value) {
+        return LogicalExpr.left(Symbol.AND, value);
+    }
+
+    static boolean orLeft(Object value) {
+        return !LogicalExpr.left(Symbol.OR, value);
+    }
+
+    static Object andRight(Object value) {
+        return LogicalExpr.right(Symbol.AND, value);
+    }
+
+    static Object orRight(Object value) {
+        return LogicalExpr.right(Symbol.OR, value);
+    }
+
+    static Object neg(Object value) {
+        return UnaryExpr.apply(Symbol.MINUS, value);
+    }
+
+    static Object not(Object value) {
+        return UnaryExpr.apply(Symbol.NOT, value);
+    }
+
+    static boolean ifCondition(Object value) {
+        if (!(value instanceof Boolean)) {
+            throw new JvsException("If condition must be boolean, got " + value.getClass().getSimpleName());
+        }
+        return (Boolean) value;
+    }
+
+    static boolean whileCondition(Object value) {
+        if (!(value instanceof Boolean)) {
+            throw new JvsException("While condition must be boolean, got " + value.getClass().getSimpleName());
+        }
+        return (Boolean) value;
+    }
+
+    // 变量声明的初始值：推断或检查类型
+    static Object init(VarDeclaration declaration, Object value) {
+        declaration.checkInitializer(TYPES, value);
+        return value;
+    }
+
+    // 给声明过类型的变量赋值
+    static Object check(VarDeclaration declaration, Object value) {
+        TYPES.checkType(declaration.type, value);
+        return value;
+    }
+
+    // 方法内直接使用的字段名，槽位由Resolver确定
+    static Object getField(Object self, int slot) {
+        return ((ClassInstance) self).fields[slot];
+    }
+
+    static void setField(Object self, int slot, Object value) {
+        ((ClassInstance) self).fields[slot] = value;
+    }
+
+    // 按名称编号查找被调函数或类，与FuncCall一致
+    static Object lookup(Scope root, int id, int argc) {
+        FuncDefinition function = root.getFunction(id);
+        if (function == null) {
+            ClassDefinition classDef = root.getClassDefine(id);
+            if (classDef != null) {
+                return classDef;
+            }
+            throw new JvsException("Undefined function: " + root.getNames().nameOf(id));
+        }
+        if (argc != function.parameters.size()) {
+            throw new JvsException("Function " + root.getNames().nameOf(id) + " expects " +
+                    function.parameters.size() + " arguments but got " + argc);
+        }
+        return function;
+    }
+
+    static Object call(Scope root, Object target, Object[] args) {
+        if (target instanceof ClassDefinition) {
+            return ((ClassDefinition) target).newInstance();
+        }
+        return ((FuncDefinition) target).call(args);
+    }
+
+    // 方法调用，实参0为接收者
+    static Object invoke(FuncDefinition method, Object[] args, String name) {
+        if (method == null) {
+            return ((TextBuilder) args[0]).invoke(name, args.length > 1 ? args[1] : null);
+        }
+        return method.call(args);
+    }
+
+    static Object tailInvoke(FuncDefinition method, Object[] args, String name) {
+        if (method == null) {
+            return invoke(null, args, name);
+        }
+        return new TailCall(method, args);
+    }
+
+    // 尾调用：交给FuncDefinition.call执行被调函数，类实例化照常执行
+    static Object tailCall(Object target, Object[] args) {
+        if (target instanceof ClassDefinition) {
+            return ((ClassDefinition) target).newInstance();
+        }
+        return new TailCall((FuncDefinition) target, args);
+    }
+
+    // 直接调用编译函数得到TailCall时，执行完尾调用链得到结果
+    static Object resolve(Object result) {
+        if (result instanceof TailCall) {
+            TailCall tail = (TailCall) result;
+            return tail.function.call(tail.args);
+        }
+        return result;
+    }
+
+    // 查找方法并检查参数个数；可变字符串的内置方法返回null，由invoke执行
+    static FuncDefinition method(Object target, int id, String name, int argc) {
+        if (target instanceof TextBuilder) {
+            TextBuilder.check(name, argc);
+            return null;
+        }
+        if (!(target instanceof ClassInstance)) {
+            throw new JvsException("Method call on non-class instance: " + target.getClass().getSimpleName());
+        }
+        ClassInstance instance = (ClassInstance) target;
+        FuncDefinition method = instance.getMethod(id);
+        if (method == null) {
+            throw new JvsException("Undefined method '" + name + "' in class " + instance.definition.name);
+        }
+        if (argc != method.parameters.size()) {
+            throw new JvsException("Method " + name + " expects " +
+                    method.parameters.size() + " arguments but got " + argc);
+        }
+        return method;
+    }
+
+}
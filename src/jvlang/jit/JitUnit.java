@@ -0,0 +1,11 @@
+package jvlang.jit;
+
+/**
+ * 一次编译生成的隐藏类实现此接口，每个函数对应一个静态方法
+ * @author Yumerain
+ */
+interface JitUnit {
+
+    Object invoke(int index, Object[] args);
+
+}
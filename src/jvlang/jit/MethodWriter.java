@@ -0,0 +1,277 @@
+package jvlang.jit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 方法体字节码生成，记录操作数栈深度与局部变量个数
+ * 跳转使用16位偏移，方法过大时抛出IllegalStateException，由调用方放弃编译该函数
+ * @author Yumerain
+ */
+final class MethodWriter {
+
+    // 用到的JVM指令
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IFEQ = 0x99;
+    static final int GOTO = 0xa7;
+    static final int TABLESWITCH = 0xaa;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb;
+    static final int ANEWARRAY = 0xbd;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+
+    // 跳转目标
+    static final class Label {
+        int position = -1;
+        // 待回填的跳转：指令地址与偏移所在位置，wide为4字节偏移
+        final List<int[]> refs = new ArrayList<>();
+    }
+
+    private final ClassWriter cw;
+    private final List<Label> labels = new ArrayList<>();
+    private byte[] code = new byte[128];
+    private int length;
+    private int stack;
+    private int maxStack;
+    private int maxLocals;
+
+    MethodWriter(ClassWriter cw, int parameters) {
+        this.cw = cw;
+        this.maxLocals = parameters;
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+
+    int maxLocals() {
+        return maxLocals;
+    }
+
+    // 分配新的局部变量
+    int newLocal() {
+        if (maxLocals == 0xFFFF) {
+            throw new IllegalStateException("Too many locals");
+        }
+        return maxLocals++;
+    }
+
+    int stack() {
+        return stack;
+    }
+
+    // 分支汇合处恢复栈深度
+    void stack(int depth) {
+        stack = depth;
+    }
+
+    private void adjust(int delta) {
+        stack += delta;
+        if (stack > maxStack) maxStack = stack;
+    }
+
+    private void u1(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = (byte) value;
+    }
+
+    private void u2(int value) {
+        u1(value >> 8);
+        u1(value);
+    }
+
+    private void u4(int value) {
+        u2(value >> 16);
+        u2(value);
+    }
+
+    void op(int opcode, int delta) {
+        u1(opcode);
+        adjust(delta);
+    }
+
+    void iconst(int value) {
+        if (value >= -1 && value <= 5) {
+            u1(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            u1(BIPUSH);
+            u1(value);
+        } else {
+            u1(SIPUSH);
+            u2(value);
+        }
+        adjust(1);
+    }
+
+    void ldcString(String value) {
+        u1(LDC_W);
+        u2(cw.string(value));
+        adjust(1);
+    }
+
+    void ldcClass(String internalName) {
+        u1(LDC_W);
+        u2(cw.classRef(internalName));
+        adjust(1);
+    }
+
+    void aload(int local) {
+        varInsn(ALOAD, local);
+        adjust(1);
+    }
+
+    void iload(int local) {
+        varInsn(ILOAD, local);
+        adjust(1);
+    }
+
+    void astore(int local) {
+        varInsn(ASTORE, local);
+        adjust(-1);
+    }
+
+    private void varInsn(int opcode, int local) {
+        if (local > 0xFF) {
+            u1(0xc4); // wide
+            u1(opcode);
+            u2(local);
+        } else {
+            u1(opcode);
+            u1(local);
+        }
+    }
+
+    void type(int opcode, String internalName, int delta) {
+        u1(opcode);
+        u2(cw.classRef(internalName));
+        adjust(delta);
+    }
+
+    void field(int opcode, String owner, String name, String descriptor) {
+        u1(opcode);
+        u2(cw.fieldRef(owner, name, descriptor));
+        int size = slots(descriptor.charAt(0));
+        switch (opcode) {
+            case GETSTATIC: adjust(size); break;
+            case PUTSTATIC: adjust(-size); break;
+            case GETFIELD: adjust(size - 1); break;
+            default: adjust(-size - 1); break;
+        }
+    }
+
+    void invoke(int opcode, String owner, String name, String descriptor) {
+        u1(opcode);
+        u2(cw.methodRef(owner, name, descriptor));
+        int delta = returnSlots(descriptor) - argumentSlots(descriptor);
+        adjust(opcode == INVOKESTATIC ? delta : delta - 1);
+    }
+
+    void jump(int opcode, Label label) {
+        int position = length;
+        u1(opcode);
+        label.refs.add(new int[]{position, length, 0});
+        u2(0);
+        adjust(opcode == GOTO ? 0 : -1);
+    }
+
+    // tableswitch，索引从0开始
+    void tableswitch(Label defaultLabel, Label[] labels) {
+        int position = length;
+        u1(TABLESWITCH);
+        adjust(-1);
+        while (length % 4 != 0) u1(0);
+        defaultLabel.refs.add(new int[]{position, length, 1});
+        u4(0);
+        u4(0);
+        u4(labels.length - 1);
+        for (Label label : labels) {
+            label.refs.add(new int[]{position, length, 1});
+            u4(0);
+        }
+    }
+
+    Label label() {
+        Label label = new Label();
+        labels.add(label);
+        return label;
+    }
+
+    void mark(Label label) {
+        label.position = length;
+    }
+
+    byte[] toByteArray() {
+        if (length > 0xFFFF) {
+            throw new IllegalStateException("Method too large");
+        }
+        for (Label label : labels) {
+            resolve(label);
+        }
+        return Arrays.copyOf(code, length);
+    }
+
+    // 回填跳转偏移
+    private void resolve(Label label) {
+        for (int[] ref : label.refs) {
+            int offset = label.position - ref[0];
+            if (ref[2] == 1) {
+                code[ref[1]] = (byte) (offset >> 24);
+                code[ref[1] + 1] = (byte) (offset >> 16);
+                code[ref[1] + 2] = (byte) (offset >> 8);
+                code[ref[1] + 3] = (byte) offset;
+            } else {
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Branch offset too large");
+                }
+                code[ref[1]] = (byte) (offset >> 8);
+                code[ref[1] + 1] = (byte) offset;
+            }
+        }
+    }
+
+    // 描述符中的参数所占槽位
+    static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            slots += slots(c);
+            while (c == '[') c = descriptor.charAt(++i);
+            if (c == 'L') i = descriptor.indexOf(';', i);
+            i++;
+        }
+        return slots;
+    }
+
+    static int returnSlots(String descriptor) {
+        char c = descriptor.charAt(descriptor.indexOf(')') + 1);
+        return c == 'V' ? 0 : slots(c);
+    }
+
+    private static int slots(char type) {
+        return type == 'J' || type == 'D' ? 2 : 1;
+    }
+
+}
@@ -0,0 +1,20 @@
+package jvlang.jit;
+
+import jvlang.stmt.FuncDefinition;
+
+/**
+ * 编译代码中对其它函数的尾调用：不直接调用，而是作为返回值交给FuncDefinition.call，
+ * 由它在同一层循环中执行被调函数，JVM调用栈不随尾调用增长
+ * @author Yumerain
+ */
+public final class TailCall {
+
+    public final FuncDefinition function;
+    public final Object[] args;
+
+    TailCall(FuncDefinition function, Object[] args) {
+        this.function = function;
+        this.args = args;
+    }
+
+}
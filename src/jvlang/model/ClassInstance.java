@@ -1,25 +1,52 @@
 package jvlang.model;
 
+import jvlang.JvsException;
 import jvlang.Scope;
 import jvlang.stmt.ClassDefinition;
 import jvlang.stmt.FuncDefinition;
 
 /**
  * 类实例化表示
+ * 字段值按ClassDefinition计算的布局存放在数组中，实例不再引用创建时的作用域
  * @author Yumerain
  */
 public class ClassInstance {
 
     public final ClassDefinition definition;
-    public final Scope fields; // 存储字段值的独立作用域
+    public final Object[] fields; // 字段值，下标为字段槽位
+    // 实例化时类定义所在的作用域，方法在其中执行；循环中的类定义每次迭代所在的作用域不同
+    public final Scope scope;
 
-    public ClassInstance(ClassDefinition def, Scope fields) {
+    public ClassInstance(ClassDefinition def, Object[] fields) {
         this.definition = def;
         this.fields = fields;
+        this.scope = def.definitionScope;
     }
 
     public FuncDefinition getMethod(String name) {
         return definition.getMethod(name);
     }
 
+    public FuncDefinition getMethod(int id) {
+        return definition.getMethod(id);
+    }
+
+    // 按名称查找字段槽位，不存在时报错
+    public int fieldSlot(String name) {
+        int slot = definition.fieldSlot(name);
+        if (slot < 0) {
+            throw new JvsException("Undefined field '" + name + "' in struct " + definition.name);
+        }
+        return slot;
+    }
+
+    // 按名称编号查找字段槽位，不存在时报错
+    public int fieldSlot(int id) {
+        int slot = definition.fieldSlot(id);
+        if (slot < 0) {
+            throw new JvsException("Undefined field '" + definition.getNames().nameOf(id) + "' in struct " + definition.name);
+        }
+        return slot;
+    }
+
 }
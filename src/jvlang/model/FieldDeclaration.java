@@ -1,5 +1,6 @@
 package jvlang.model;
 
+import jvlang.Names;
 import jvlang.expr.Expression;
 
 /**
@@ -9,10 +10,17 @@ import jvlang.expr.Expression;
 public class FieldDeclaration {
 
     public final String name;
+    // 字段名的编号(Names)
+    public final int id;
     public final Expression initializer;
 
     public FieldDeclaration(String name, Expression initializer) {
-        this.name = name;
+        this(Names.id(name), initializer);
+    }
+
+    public FieldDeclaration(int id, Expression initializer) {
+        this.id = id;
+        this.name = Names.name(id);
         this.initializer = initializer;
     }
 
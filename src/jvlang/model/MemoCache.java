@@ -0,0 +1,142 @@
+package jvlang.model;
+
+import jvlang.Scope;
+import jvlang.stmt.FuncDefinition;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 纯函数的结果缓存：以实参值为键，容量固定，超出时淘汰最久未使用的结果
+ * 只缓存实参全部是不可变值（null、整数、小数、字符串、布尔）的调用；
+ * 函数自身或直接、间接调用的函数在根作用域中被替换后，缓存清空且不再使用
+ * @author Yumerain
+ */
+public class MemoCache {
+
+    // 未命中时get返回此标记（函数可以返回null）
+    public static final Object MISS = new Object();
+
+    // 每个函数最多缓存的结果数
+    public static final int CAPACITY = 4096;
+
+    // 缓存中代表null结果
+    private static final Object NULL = new Object();
+
+    // 由Memoizer计算：结果依赖的函数（含自身），按名称查找应得到同一个定义
+    private final Map<String, FuncDefinition> dependencies;
+
+    private final Map<Key, Object> entries = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    // 上次验证依赖时根作用域的定义版本
+    private int version = -1;
+    private boolean disabled;
+
+    private long hits;
+    private long misses;
+
+    public MemoCache(Map<String, FuncDefinition> dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    // 查找缓存的结果，scope为函数定义时的作用域；不可缓存或未命中时返回MISS
+    public Object get(Scope scope, Object[] args) {
+        if (disabled || !cacheable(args)) {
+            return MISS;
+        }
+        int current = scope.definitionVersion();
+        if (current != version) {
+            if (!valid(scope)) {
+                disabled = true;
+                entries.clear();
+                return MISS;
+            }
+            version = current;
+        }
+        Object result = entries.get(new Key(args));
+        if (result == null) {
+            misses++;
+            return MISS;
+        }
+        hits++;
+        return result == NULL ? null : result;
+    }
+
+    public void put(Object[] args, Object result) {
+        if (!disabled && cacheable(args)) {
+            entries.put(new Key(args), result == null ? NULL : result);
+        }
+    }
+
+    // 依赖的函数按名称查找仍是分析时的定义；尚未定义的函数不会出现在已缓存的结果中
+    private boolean valid(Scope scope) {
+        for (Map.Entry<String, FuncDefinition> dependency : dependencies.entrySet()) {
+            int id = dependency.getValue().id;
+            FuncDefinition function = scope.getFunction(id);
+            if (function == null ? scope.getClassDefine(id) != null
+                    : function != dependency.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean cacheable(Object[] args) {
+        for (Object arg : args) {
+            if (arg != null && !(arg instanceof Long) && !(arg instanceof Double)
+                    && !(arg instanceof String) && !(arg instanceof Boolean)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Map<String, FuncDefinition> dependencies() {
+        return dependencies;
+    }
+
+    // 依赖的函数被替换后不再使用
+    public boolean disabled() {
+        return disabled;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // 实参数组作为键，调用方不再修改
+    private static final class Key {
+        private final Object[] args;
+        private final int hash;
+
+        Key(Object[] args) {
+            this.args = args;
+            this.hash = Arrays.hashCode(args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(args, ((Key) obj).args);
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package jvlang.model;
+
+import jvlang.JvsException;
+import jvlang.Numbers;
+
+/**
+ * 可变字符串：内置函数builder(...)创建，以参数拼接的结果为初始内容
+ * 方法：append(x)追加x的字符串形式并返回自身、length()、clear()清空并返回自身、toString()；
+ * 打印与字符串拼接时取当前内容，循环中逐段追加不必每次复制已有内容
+ * @author Yumerain
+ */
+public class TextBuilder {
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    public TextBuilder append(Object value) {
+        buffer.append(value);
+        return this;
+    }
+
+    // 检查方法名与参数个数，在求值实参之前调用
+    public static void check(String method, int argc) {
+        int expected;
+        switch (method) {
+            case "append":
+                expected = 1;
+                break;
+            case "length":
+            case "clear":
+            case "toString":
+                expected = 0;
+                break;
+            default:
+                throw new JvsException("Undefined method '" + method + "' in builder");
+        }
+        if (argc != expected) {
+            throw new JvsException("Method " + method + " expects " + expected + " arguments but got " + argc);
+        }
+    }
+
+    // 调用已检查过的方法，argument为append的参数
+    public Object invoke(String method, Object argument) {
+        switch (method) {
+            case "append":
+                return append(argument);
+            case "length":
+                return Numbers.box(buffer.length());
+            case "clear":
+                buffer.setLength(0);
+                return this;
+            default:
+                return buffer.toString();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
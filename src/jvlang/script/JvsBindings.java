@@ -0,0 +1,109 @@
+package jvlang.script;
+
+import jvlang.Numbers;
+import jvlang.Scope;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.script.Bindings;
+
+/**
+ * 以根作用域为存储的Bindings：读写直接访问根作用域中按名称声明的变量，不复制
+ * put未声明的名称时声明无类型的变量，已声明的按变量类型检查；Java的Integer等转为脚本的数字，
+ * 脚本变量已被编译代码按槽位引用，不能删除
+ * @author Yumerain
+ */
+public class JvsBindings extends AbstractMap<String, Object> implements Bindings {
+
+    private final Scope root;
+
+    public JvsBindings() {
+        this(new Scope());
+    }
+
+    public JvsBindings(Scope root) {
+        this.root = root;
+    }
+
+    public Scope getScope() {
+        return root;
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        checkKey(name);
+        value = Numbers.toScript(value);
+        if (root.getDeclaration(name) == null) {
+            root.declareVariable(name, value);
+            return null;
+        }
+        Object previous = root.getVariable(name);
+        root.setVariable(name, value);
+        return previous;
+    }
+
+    @Override
+    public Object get(Object key) {
+        checkKey(key);
+        return root.getDeclaration((String) key) != null ? root.getVariable((String) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        checkKey(key);
+        return root.getDeclaration((String) key) != null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        throw new UnsupportedOperationException("Script variables cannot be removed");
+    }
+
+    @Override
+    public int size() {
+        return root.size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                Iterator<String> names = root.getVariableNames().iterator();
+                return new Iterator<Entry<String, Object>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return names.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        String name = names.next();
+                        return new SimpleImmutableEntry<>(name, root.getVariable(name));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return root.size();
+            }
+        };
+    }
+
+    // Bindings要求：键不能为null或空字符串
+    private static void checkKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException("key can not be null");
+        }
+        if (!(key instanceof String)) {
+            throw new ClassCastException("key should be a String");
+        }
+        if (((String) key).isEmpty()) {
+            throw new IllegalArgumentException("key can not be empty");
+        }
+    }
+}
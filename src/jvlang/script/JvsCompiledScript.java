@@ -0,0 +1,38 @@
+package jvlang.script;
+
+import jvlang.Program;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * 已解析的脚本：保存Parser（及Optimizer）的结果，每次eval在上下文的根作用域中执行其副本，
+ * 不再词法与语法分析，不同的Bindings中定义的函数互不影响
+ * @author Yumerain
+ */
+public class JvsCompiledScript extends CompiledScript {
+
+    private final JvsScriptEngine engine;
+    private final Program program;
+
+    JvsCompiledScript(JvsScriptEngine engine, Program program) {
+        this.engine = engine;
+        this.program = program;
+    }
+
+    public Program getProgram() {
+        return program;
+    }
+
+    @Override
+    public Object eval(ScriptContext context) throws ScriptException {
+        return engine.execute(program.copy(), context);
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+}
@@ -0,0 +1,301 @@
+package jvlang.script;
+
+import jvlang.Engine;
+import jvlang.JvsException;
+import jvlang.Memoizer;
+import jvlang.Natives;
+import jvlang.Numbers;
+import jvlang.Output;
+import jvlang.Program;
+import jvlang.ProgramCache;
+import jvlang.Resolver;
+import jvlang.Scope;
+import jvlang.jit.JitCompiler;
+import jvlang.model.ClassInstance;
+import jvlang.stmt.FuncDefinition;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+
+/**
+ * javax.script引擎：ENGINE_SCOPE的Bindings即脚本的根作用域(JvsBindings)，多次eval共享变量、函数与类；
+ * 源码经ProgramCache解析，相同的源码不再词法与语法分析；compile得到的CompiledScript可多次执行；
+ * invokeFunction按名称调用根作用域中的函数，查到的函数定义缓存在引擎中，函数重新定义后重新查找
+ * 脚本由解释器执行，-Djvs.engine=jit时编译顶层函数；字节码虚拟机的函数不在根作用域中，不用于此引擎。
+ * 其它类型的ENGINE_SCOPE Bindings（包括不是由本引擎createBindings创建的JvsBindings）在执行前复制到
+ * 新的根作用域，执行后写回，其中定义的函数不能再调用。
+ * 原生函数在compile之前通过getNatives()注册，注册后缓存的程序失效。非线程安全。
+ * 标识符登记在引擎的ProgramCache的符号表中，随引擎一起回收
+ * @author Yumerain
+ */
+public class JvsScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+
+    private final ScriptEngineFactory factory;
+    private final Natives natives;
+    // eval与compile的源码经此缓存解析
+    private final ProgramCache programs;
+
+    // 函数句柄缓存：函数名 → 根作用域中的函数定义，根作用域或其定义版本变化时清空
+    private final Map<String, FuncDefinition> functions = new HashMap<>();
+    private Scope functionsRoot;
+    private int functionsVersion;
+
+    public JvsScriptEngine() {
+        this(new JvsScriptEngineFactory(), Natives.standard());
+    }
+
+    JvsScriptEngine(ScriptEngineFactory factory) {
+        this(factory, Natives.standard());
+    }
+
+    public JvsScriptEngine(ScriptEngineFactory factory, Natives natives) {
+        this.factory = factory;
+        this.natives = natives;
+        this.programs = new ProgramCache(natives, ProgramCache.DEFAULT_CAPACITY);
+        context.setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
+    }
+
+    // 原生函数注册表，注册后解析的脚本才能调用
+    public Natives getNatives() {
+        return natives;
+    }
+
+    public ProgramCache getProgramCache() {
+        return programs;
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new JvsBindings(new Scope(programs.getNames()));
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return execute(parse(script), context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        return new JvsCompiledScript(this, parse(script));
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    private Program parse(String script) throws ScriptException {
+        try {
+            return programs.get(script);
+        } catch (JvsException e) {
+            throw scriptException(e);
+        }
+    }
+
+    // 在上下文的根作用域中解析并执行，脚本没有结果值，返回null
+    Object execute(Program program, ScriptContext context) throws ScriptException {
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        // 使用其它符号表的根作用域不能执行本引擎解析的程序，按其它类型的Bindings处理
+        JvsBindings target = bindings instanceof JvsBindings
+                && ((JvsBindings) bindings).getScope().getNames() == programs.getNames()
+                ? (JvsBindings) bindings : (JvsBindings) createBindings();
+        if (target != bindings && bindings != null) {
+            target.putAll(bindings);
+        }
+        Scope root = target.getScope();
+        Writer writer = context.getWriter();
+        if (writer != null) {
+            root.setOutput(new Output(writer));
+        }
+        try {
+            new Resolver(root).resolve(program);
+            if (Memoizer.enabled()) {
+                new Memoizer(root).memoize(program);
+            }
+            if (Engine.current() == Engine.JIT) {
+                new JitCompiler(root).compile(program);
+            }
+            program.exec(root);
+            return null;
+        } catch (JvsException e) {
+            throw scriptException(e);
+        } finally {
+            if (target != bindings && bindings != null) {
+                bindings.putAll(target);
+            }
+        }
+    }
+
+    @Override
+    public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+        FuncDefinition function = function(name);
+        if (function == null) {
+            throw new NoSuchMethodException("Undefined function: " + name);
+        }
+        return invoke(function, null, args);
+    }
+
+    @Override
+    public Object invokeMethod(Object thiz, String name, Object... args) throws ScriptException, NoSuchMethodException {
+        ClassInstance instance = instance(thiz);
+        FuncDefinition method = instance.getMethod(name);
+        if (method == null) {
+            throw new NoSuchMethodException("Undefined method '" + name + "' in class " + instance.definition.name);
+        }
+        return invoke(method, instance, args);
+    }
+
+    @Override
+    public <T> T getInterface(Class<T> clasz) {
+        return proxy(null, clasz);
+    }
+
+    @Override
+    public <T> T getInterface(Object thiz, Class<T> clasz) {
+        return proxy(instance(thiz), clasz);
+    }
+
+    // 根作用域中的函数，缓存查找结果
+    private FuncDefinition function(String name) {
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        if (!(bindings instanceof JvsBindings)) {
+            return null;
+        }
+        Scope root = ((JvsBindings) bindings).getScope();
+        int version = root.definitionVersion();
+        if (root != functionsRoot || version != functionsVersion) {
+            functions.clear();
+            functionsRoot = root;
+            functionsVersion = version;
+        }
+        FuncDefinition function = functions.get(name);
+        if (function == null) {
+            function = root.getFunction(name);
+            if (function != null) {
+                functions.put(name, function);
+            }
+        }
+        return function;
+    }
+
+    // 以Java实参调用函数，方法的实参0为this；结束时刷新脚本输出
+    private Object invoke(FuncDefinition function, ClassInstance thiz, Object[] args) throws ScriptException {
+        int argc = args != null ? args.length : 0;
+        if (argc != function.parameters.size()) {
+            throw new ScriptException("Function " + function.name + " expects "
+                    + function.parameters.size() + " arguments but got " + argc);
+        }
+        int offset = thiz != null ? 1 : 0;
+        Object[] values = new Object[argc + offset];
+        if (thiz != null) {
+            values[0] = thiz;
+        }
+        for (int i = 0; i < argc; i++) {
+            values[i + offset] = Numbers.toScript(args[i]);
+        }
+        try {
+            return function.call(values);
+        } catch (JvsException e) {
+            throw scriptException(e);
+        } catch (StackOverflowError e) {
+            throw scriptException(new JvsException("Stack overflow: recursion is too deep for the Java stack", e));
+        } finally {
+            function.definitionScope.getOutput().flush();
+        }
+    }
+
+    private static ClassInstance instance(Object thiz) {
+        if (!(thiz instanceof ClassInstance)) {
+            throw new IllegalArgumentException("Not a script class instance: " + thiz);
+        }
+        return (ClassInstance) thiz;
+    }
+
+    // 接口的每个方法都有同名的脚本函数（或方法）时返回代理，否则返回null
+    private <T> T proxy(ClassInstance thiz, Class<T> clasz) {
+        if (clasz == null || !clasz.isInterface()) {
+            throw new IllegalArgumentException("Not an interface: " + clasz);
+        }
+        for (Method method : clasz.getMethods()) {
+            FuncDefinition function = thiz != null ? thiz.getMethod(method.getName()) : function(method.getName());
+            if (function == null) {
+                return null;
+            }
+        }
+        Object proxy = Proxy.newProxyInstance(clasz.getClassLoader(), new Class<?>[]{clasz}, (self, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return self == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(self);
+                    default:
+                        return clasz.getName() + "@jvscript";
+                }
+            }
+            Object result = thiz != null
+                    ? invokeMethod(thiz, method.getName(), args)
+                    : invokeFunction(method.getName(), args);
+            return toJava(result, method.getReturnType());
+        });
+        return clasz.cast(proxy);
+    }
+
+    // 脚本值转为接口方法的返回类型
+    private static Object toJava(Object value, Class<?> type) {
+        if (type == void.class) return null;
+        if (!(value instanceof Number)) return value;
+        Number number = (Number) value;
+        if (type == int.class || type == Integer.class) return number.intValue();
+        if (type == short.class || type == Short.class) return number.shortValue();
+        if (type == byte.class || type == Byte.class) return number.byteValue();
+        if (type == float.class || type == Float.class) return number.floatValue();
+        if (type == double.class || type == Double.class) return number.doubleValue();
+        if (type == long.class || type == Long.class) return number.longValue();
+        return value;
+    }
+
+    private static ScriptException scriptException(JvsException e) {
+        ScriptException exception = new ScriptException(e.getMessage());
+        exception.initCause(e);
+        return exception;
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringBuilder source = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                source.append(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return source.toString();
+    }
+}
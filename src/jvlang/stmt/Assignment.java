@@ -25,28 +25,41 @@ public class Assignment implements Statement {
     }
 
     @Override
-    public ExecutionResult exec(Scope scope) {
+    public int exec(Scope scope) {
         Object value = this.value.eval(scope);
 
         if (target instanceof Variable) {
             // 普通变量赋值
-            String varName = ((Variable) target).name;
-            scope.setVariable(varName, value);
+            Variable variable = (Variable) target;
+            if (variable.thisField) {
+                ClassInstance instance = (ClassInstance) scope.getVariable(variable.depth, variable.slot);
+                instance.fields[variable.fieldSlot] = value;
+            } else {
+                scope.checkType(variable.declaration.type, value); // 检查赋值是否符合类型
+                scope.setVariable(variable.depth, variable.slot, value);
+            }
         } else if (target instanceof FieldAccess) {
             // 字段赋值
             FieldAccess fieldAccess = (FieldAccess) target;
             Object instance = fieldAccess.target.eval(scope);
-
             if (!(instance instanceof ClassInstance)) {
                 throw new JvsException("Field assignment on non-struct instance");
             }
-
             ClassInstance struct = (ClassInstance) instance;
-            struct.fields.setVariable(fieldAccess.fieldName, value);
+            struct.fields[fieldAccess.slot(struct)] = value;
         } else {
             throw new JvsException("Invalid assignment target");
         }
         return ExecutionResult.CONTINUE;
     }
 
+    // 给已求值对象的字段赋值，编译后的代码使用
+    public static void setField(Object instance, int fieldId, Object value) {
+        if (!(instance instanceof ClassInstance)) {
+            throw new JvsException("Field assignment on non-struct instance");
+        }
+        ClassInstance struct = (ClassInstance) instance;
+        struct.fields[struct.fieldSlot(fieldId)] = value;
+    }
+
 }
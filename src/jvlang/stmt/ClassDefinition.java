@@ -1,13 +1,15 @@
 package jvlang.stmt;
 
 import jvlang.ExecutionResult;
+import jvlang.IdMap;
+import jvlang.Names;
 import jvlang.Scope;
+import jvlang.expr.Literal;
+import jvlang.model.ClassInstance;
 import jvlang.model.FieldDeclaration;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 结构体定义
@@ -16,40 +18,123 @@ import java.util.Map;
 public class ClassDefinition implements Statement {
 
     public final String name;
+    // 类名的编号(Names)
+    public final int id;
+
+    // 名称编号所属的符号表，构造时的当前符号表
+    private final Names names;
 
     public final List<FieldDeclaration> fields;
 
     public final List<FuncDefinition> methods;
 
-    private final Map<String, FuncDefinition> methodMap = new HashMap<>();
+    // 方法名编号 → 方法
+    private final IdMap<FuncDefinition> methodMap;
+
+    // 字段布局：字段名编号 → 实例字段数组的下标，与fields的顺序一致
+    private final IdMap<Integer> fieldSlots;
+
+    // 字段默认值模板：常量默认值在此预先求出，实例化时整体复制
+    private final Object[] template;
+
+    // 默认值不是常量的字段，实例化时仍需求值
+    private final boolean[] evaluated;
+
+    // 定义时的作用域，字段默认值在此作用域中求值
+    public Scope definitionScope;
 
     public ClassDefinition(String name, List<FieldDeclaration> fields) {
-        this.name = name;
-        this.fields = fields;
-        this.methods = new ArrayList<>();
+        this(name, fields, null);
     }
 
     public ClassDefinition(String name, List<FieldDeclaration> fields, List<FuncDefinition> methods) {
         this.name = name;
+        this.names = Names.current();
+        this.id = names.intern(name);
         this.fields = fields;
         this.methods = methods != null ? methods : new ArrayList<FuncDefinition>();
+        this.methodMap = new IdMap<>(this.methods.size());
         for (FuncDefinition method : this.methods) {
-            methodMap.put(method.name, method);
+            method.method = true;
+            methodMap.put(method.id, method);
+        }
+        this.fieldSlots = new IdMap<>(fields.size());
+        this.template = new Object[fields.size()];
+        this.evaluated = new boolean[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            FieldDeclaration field = fields.get(i);
+            fieldSlots.put(field.id, i);
+            if (field.initializer instanceof Literal) {
+                template[i] = ((Literal) field.initializer).value;
+            } else {
+                evaluated[i] = field.initializer != null;
+            }
         }
     }
 
     @Override
-    public ExecutionResult exec(Scope scope) {
+    public int exec(Scope scope) {
+        this.definitionScope = scope;
         for (FuncDefinition method : methods) {
             method.definitionScope = scope;
         }
         // 将类型注册到作用域
-        scope.defineClass(name, this);
+        scope.defineClass(id, this);
         return ExecutionResult.CONTINUE;
     }
 
+    // 创建实例，非常量的字段默认值在类定义时的作用域中求值
+    public ClassInstance newInstance() {
+        Object[] values = newFields();
+        for (int i = 0; i < values.length; i++) {
+            if (evaluated[i]) {
+                values[i] = fields.get(i).initializer.eval(definitionScope);
+            }
+        }
+        return new ClassInstance(this, values);
+    }
+
+    // 复制字段模板：常量默认值已填好，其余字段为null
+    public Object[] newFields() {
+        return template.clone();
+    }
+
+    // 字段的默认值是否需要在实例化时求值
+    public boolean evaluatedDefault(int slot) {
+        return evaluated[slot];
+    }
+
     public FuncDefinition getMethod(String name) {
-        return methodMap.get(name);
+        int id = names.lookup(name);
+        return id >= 0 ? methodMap.get(id) : null;
+    }
+
+    public FuncDefinition getMethod(int id) {
+        return methodMap.get(id);
+    }
+
+    // 字段在实例字段数组中的下标，不存在时返回-1
+    public int fieldSlot(String name) {
+        int id = names.lookup(name);
+        return id >= 0 ? fieldSlot(id) : -1;
+    }
+
+    public int fieldSlot(int id) {
+        Integer slot = fieldSlots.get(id);
+        return slot != null ? slot : -1;
+    }
+
+    public boolean hasField(String name) {
+        int id = names.lookup(name);
+        return id >= 0 && fieldSlots.containsKey(id);
+    }
+
+    public boolean hasField(int id) {
+        return fieldSlots.containsKey(id);
+    }
+
+    public Names getNames() {
+        return names;
     }
 
 }
@@ -17,7 +17,7 @@ public class ExprStatement implements Statement {
     }
 
     @Override
-    public ExecutionResult exec(Scope scope) {
+    public int exec(Scope scope) {
         expression.eval(scope);
         return ExecutionResult.CONTINUE;
     }
@@ -1,7 +1,12 @@
 package jvlang.stmt;
 
 import jvlang.ExecutionResult;
+import jvlang.Names;
 import jvlang.Scope;
+import jvlang.jit.CompiledFunction;
+import jvlang.jit.TailCall;
+import jvlang.model.ClassInstance;
+import jvlang.model.MemoCache;
 
 import java.util.List;
 
@@ -12,6 +17,8 @@ import java.util.List;
 public class FuncDefinition implements Statement {
 
     public final String name;
+    // 函数名的编号(Names)
+    public final int id;
 
     public final List<String> parameters;
 
@@ -19,18 +26,88 @@ public class FuncDefinition implements Statement {
 
     public Scope definitionScope;
 
+    // 类的方法：在实参0（this）实例化时类定义所在的作用域中执行
+    public boolean method;
+
+    // 由Resolver计算：函数作用域的槽位数（参数、方法的this与函数体变量）
+    public int frameSize;
+
+    // 由JitCompiler设置：编译为JVM字节码后的函数，为空时解释执行
+    public CompiledFunction compiled;
+
+    // 由Memoizer设置：纯函数的结果缓存，为空时每次调用都执行函数体
+    public MemoCache memo;
+
     public FuncDefinition(String name, List<String> parameters, List<Statement> body) {
         this.name = name;
+        this.id = Names.id(name);
         this.parameters = parameters;
         this.body = body;
     }
 
     @Override
-    public ExecutionResult exec(Scope scope) {
+    public int exec(Scope scope) {
         // 捕获定义时的作用域
         this.definitionScope = scope;
         // 将函数注册到当前作用域
-        this.definitionScope.defineFunction(name, this);
+        FuncDefinition replaced = this.definitionScope.defineFunction(id, this);
+        // 编译代码对被替换函数的直接调用改为按名称查找
+        if (replaced != null && replaced.compiled != null) {
+            replaced.compiled.linked = false;
+        }
+        if (compiled != null) {
+            compiled.linked = true;
+        }
         return ExecutionResult.CONTINUE;
     }
+
+    // 以已求值的实参调用，方法的实参0为this
+    public Object call(Object[] args) {
+        if (memo == null) {
+            return execute(args);
+        }
+        Object result = memo.get(definitionScope, args);
+        if (result == MemoCache.MISS) {
+            result = execute(args);
+            memo.put(args, result);
+        }
+        return result;
+    }
+
+    // 尾调用在此循环中换成被调函数继续执行，不增加Java调用栈
+    private Object execute(Object[] args) {
+        FuncDefinition function = this;
+        while (true) {
+            if (function.compiled != null) {
+                // 编译代码对其它函数的尾调用以TailCall返回
+                Object result = function.compiled.invoke(args);
+                if (!(result instanceof TailCall)) {
+                    return result;
+                }
+                TailCall tail = (TailCall) result;
+                function = tail.function;
+                args = tail.args;
+                continue;
+            }
+            // 函数作用域继承函数定义时的作用域，参数依次占用前面的槽位
+            Scope parent = function.method ? ((ClassInstance) args[0]).scope : function.definitionScope;
+            Scope funcScope = new Scope(parent, function.frameSize);
+            for (int i = 0; i < args.length; i++) {
+                funcScope.declareVariable(i, args[i]);
+            }
+            int status = ExecutionResult.CONTINUE;
+            for (Statement stmt : function.body) {
+                status = stmt.exec(funcScope);
+                if (status != ExecutionResult.CONTINUE) break;
+            }
+            if (status == ExecutionResult.RETURN) {
+                return funcScope.getReturnValue(); // 直接返回
+            }
+            if (status != ExecutionResult.TAIL_CALL) {
+                return null; // 隐式返回 null
+            }
+            function = funcScope.getTailCall();
+            args = (Object[]) funcScope.getReturnValue();
+        }
+    }
 }
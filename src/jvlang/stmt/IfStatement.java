@@ -19,6 +19,13 @@ public class IfStatement implements Statement {
 
     public final List<Statement> elseBranch;
 
+    // 由Resolver计算：两个分支作用域的槽位数
+    public int thenSize;
+    public int elseSize;
+    // 由Resolver计算：分支内有声明或定义时才创建作用域，否则在外层作用域中执行
+    public boolean thenScoped;
+    public boolean elseScoped;
+
     public IfStatement(Expression condition, List<Statement> thenBranch, List<Statement> elseBranch) {
         this.condition = condition;
         this.thenBranch = thenBranch;
@@ -26,7 +33,7 @@ public class IfStatement implements Statement {
     }
 
     @Override
-    public ExecutionResult exec(Scope scope) {
+    public int exec(Scope scope) {
         // 1. 计算条件表达式
         Object condValue = condition.eval(scope);
         // 2. 确保结果为布尔类型
@@ -36,20 +43,19 @@ public class IfStatement implements Statement {
         boolean conditionResult = (Boolean) condValue;
         // 3. 根据条件执行对应分支
         if (conditionResult) {
-            return executeBranch(thenBranch, scope);
+            return executeBranch(thenBranch, thenScoped ? new Scope(scope, thenSize) : scope);
         } else if (elseBranch != null) {
-            return executeBranch(elseBranch, scope);
+            return executeBranch(elseBranch, elseScoped ? new Scope(scope, elseSize) : scope);
         }
         return ExecutionResult.CONTINUE;
     }
 
-    // 执行分支语句（自动创建子作用域）
-    private ExecutionResult executeBranch(List<Statement> branch, Scope parentScope) {
-        Scope branchScope = new Scope(parentScope); // 创建子作用域
+    // 执行分支语句
+    private int executeBranch(List<Statement> branch, Scope branchScope) {
         for (Statement stmt : branch) {
-            ExecutionResult result = stmt.exec(branchScope);
-            if (result.isReturn) {
-                return result;
+            int status = stmt.exec(branchScope);
+            if (status != ExecutionResult.CONTINUE) {
+                return status;
             }
         }
         return ExecutionResult.CONTINUE;
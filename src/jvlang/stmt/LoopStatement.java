@@ -16,13 +16,45 @@ public class LoopStatement implements Statement {
     public final Expression condition;
     public final List<Statement> body;
 
+    // 由Resolver计算：循环体作用域的槽位数
+    public int bodySize;
+    // 由Resolver计算：循环体内有声明或定义时才创建作用域，否则在外层作用域中执行
+    public boolean bodyScoped;
+
+    // 循环体内（包括嵌套的分支与循环中）定义了函数或类：定义会捕获作用域，每次迭代都要创建新的作用域
+    private final boolean defines;
+
     public LoopStatement(Expression condition, List<Statement> body) {
         this.condition = condition;
         this.body = body;
+        this.defines = defines(body);
+    }
+
+    // 语句列表及其中嵌套的分支与循环是否定义了函数或类
+    private static boolean defines(List<Statement> statements) {
+        if (statements == null) {
+            return false;
+        }
+        for (Statement stmt : statements) {
+            if (stmt instanceof FuncDefinition || stmt instanceof ClassDefinition) {
+                return true;
+            }
+            if (stmt instanceof IfStatement) {
+                IfStatement ifStmt = (IfStatement) stmt;
+                if (defines(ifStmt.thenBranch) || defines(ifStmt.elseBranch)) {
+                    return true;
+                }
+            } else if (stmt instanceof LoopStatement && ((LoopStatement) stmt).defines) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
-    public ExecutionResult exec(Scope scope) {
+    public int exec(Scope scope) {
+        // 只声明变量的循环体在各次迭代间复用同一个作用域，每次迭代前清空
+        Scope frame = bodyScoped && !defines ? new Scope(scope, bodySize) : null;
         while (true) {
             // 1. 计算条件
             Object condValue = condition.eval(scope);
@@ -35,10 +67,21 @@ public class LoopStatement implements Statement {
             // 3. 条件为 false 时退出循环
             if (!(Boolean) condValue) break;
 
-            // 4. 执行循环体（每次迭代创建新作用域）
-            Scope loopScope = new Scope(scope);
+            // 4. 执行循环体
+            Scope loopScope;
+            if (frame != null) {
+                frame.reset();
+                loopScope = frame;
+            } else if (bodyScoped) {
+                loopScope = new Scope(scope, bodySize);
+            } else {
+                loopScope = scope;
+            }
             for (Statement stmt : body) {
-                stmt.exec(loopScope);
+                int status = stmt.exec(loopScope);
+                if (status != ExecutionResult.CONTINUE) {
+                    return status; // 循环体内的return结束整个函数
+                }
             }
         }
         return ExecutionResult.CONTINUE;
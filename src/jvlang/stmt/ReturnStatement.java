@@ -3,6 +3,8 @@ package jvlang.stmt;
 import jvlang.ExecutionResult;
 import jvlang.Scope;
 import jvlang.expr.Expression;
+import jvlang.expr.FuncCall;
+import jvlang.expr.MethodCall;
 
 /**
  * 返回值语句
@@ -11,15 +13,27 @@ import jvlang.expr.Expression;
 public class ReturnStatement implements Statement {
 
     // 可为 null，表示无返回值
-    private final Expression expression;
+    public final Expression expression;
+
+    // 由Resolver计算：当前作用域到函数作用域的层数
+    public int depth;
+
+    // 由Resolver标记：函数内返回函数或方法调用的结果，按尾调用执行
+    public boolean tailCall;
 
     public ReturnStatement(Expression expression) {
         this.expression = expression;
     }
 
     @Override
-    public ExecutionResult exec(Scope scope) {
+    public int exec(Scope scope) {
+        if (tailCall) {
+            return expression instanceof FuncCall
+                    ? ((FuncCall) expression).tailCall(scope, depth)
+                    : ((MethodCall) expression).tailCall(scope, depth);
+        }
         Object value = (expression != null) ? expression.eval(scope) : null;
-        return ExecutionResult.returnWith(value);
+        scope.setReturnValue(depth, value);
+        return ExecutionResult.RETURN;
     }
 }
\ No newline at end of file
@@ -1,6 +1,5 @@
 package jvlang.stmt;
 
-import jvlang.ExecutionResult;
 import jvlang.Scope;
 
 /**
@@ -9,6 +8,7 @@ import jvlang.Scope;
  */
 public interface Statement {
 
-    ExecutionResult exec(Scope scope);
+    // 返回完成状态：ExecutionResult.CONTINUE、RETURN或TAIL_CALL
+    int exec(Scope scope);
 
 }
@@ -2,10 +2,12 @@ package jvlang.stmt;
 
 import jvlang.ExecutionResult;
 import jvlang.JvsException;
+import jvlang.Names;
 import jvlang.Scope;
 import jvlang.Symbol;
 import jvlang.expr.Expression;
 import jvlang.model.ClassInstance;
+import jvlang.model.TextBuilder;
 
 /**
  * 变量声明语句 <var-declaration>
@@ -14,31 +16,41 @@ import jvlang.model.ClassInstance;
 public class VarDeclaration implements Statement {
 
     public final String identifier;
+    // 变量名的编号(Names)
+    public final int id;
 
     public final Expression initializer;
 
     public Symbol type;
 
+    // 由Resolver分配的槽位
+    public int slot = -1;
+
     public VarDeclaration(String identifier, Expression initializer) {
         this.identifier = identifier;
+        this.id = Names.id(identifier);
         this.initializer = initializer;
     }
 
-    public ExecutionResult exec(Scope scope) {
+    public int exec(Scope scope) {
         Object value = null;
         if (initializer != null) {
             value = initializer.eval(scope);
-            // 如果未指定类型，推断类型
-            if (this.type == null) {
-                this.type = inferType(value);
-            } else {
-                scope.checkType(this.type, value); // 检查初始化值是否符合指定类型
-            }
+            checkInitializer(scope, value);
         }
-        scope.declareVariable(identifier, this.type, value);
+        scope.declareVariable(slot, value);
         return ExecutionResult.CONTINUE;
     }
 
+    // 检查初始化值：未指定类型时推断类型，否则检查是否符合指定类型
+    public void checkInitializer(Scope scope, Object value) {
+        if (this.type == null) {
+            this.type = inferType(value);
+        } else {
+            scope.checkType(this.type, value);
+        }
+    }
+
     // 根据值推断类型
     private Symbol inferType(Object value) {
         if (value instanceof Long) return Symbol.INT;
@@ -46,6 +58,7 @@ public class VarDeclaration implements Statement {
         if (value instanceof Boolean) return Symbol.BOOL;
         if (value instanceof String) return Symbol.TEXT;
         if (value instanceof ClassInstance) return null; // 类实例使用动态类型
+        if (value instanceof TextBuilder) return null; // 可变字符串同样使用动态类型
         throw new JvsException("Cannot infer type for value: " + value);
     }
 
@@ -0,0 +1,712 @@
+package jvlang.vm;
+
+import jvlang.JvsException;
+import jvlang.Names;
+import jvlang.Names;
+import jvlang.Program;
+import jvlang.Symbol;
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.ClassExpr;
+import jvlang.expr.ConcatExpr;
+import jvlang.expr.Expression;
+import jvlang.expr.FieldAccess;
+import jvlang.expr.FuncCall;
+import jvlang.expr.Literal;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.MethodCall;
+import jvlang.expr.NativeCall;
+import jvlang.expr.ThisExpr;
+import jvlang.expr.UnaryExpr;
+import jvlang.expr.Variable;
+import jvlang.model.FieldDeclaration;
+import jvlang.stmt.Assignment;
+import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.ExprStatement;
+import jvlang.stmt.FuncDefinition;
+import jvlang.stmt.IfStatement;
+import jvlang.stmt.LoopStatement;
+import jvlang.stmt.ReturnStatement;
+import jvlang.stmt.Statement;
+import jvlang.stmt.VarDeclaration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static jvlang.vm.Opcodes.*;
+
+/**
+ * 字节码编译器：把经过Resolver解析的Program编译为函数原型
+ * 变量地址沿用Resolver的(depth, slot)：根块的变量在根作用域中，
+ * 函数及其嵌套块的变量平铺为帧内的局部变量，被内层函数引用的局部变量放在单元中
+ * @author Yumerain
+ */
+public class BytecodeCompiler {
+
+    private static final int[] NO_IDS = new int[0];
+
+    // 编译中的函数
+    private static class FnState {
+        final FnState enclosing;
+        final String name;
+        final int arity;
+        byte[] code = new byte[64];
+        int length;
+        final List<Object> constants = new ArrayList<>();
+        final Map<Object, Integer> constantIndex = new HashMap<>();
+        final List<Boolean> upvalueFromLocal = new ArrayList<>();
+        final List<Integer> upvalueIndex = new ArrayList<>();
+        int nextLocal;
+        int numLocals;
+        int stack;
+        int maxStack;
+
+        FnState(FnState enclosing, String name, int arity) {
+            this.enclosing = enclosing;
+            this.name = name;
+            this.arity = arity;
+        }
+
+        int addUpvalue(boolean fromLocal, int index) {
+            for (int i = 0; i < upvalueIndex.size(); i++) {
+                if (upvalueFromLocal.get(i) == fromLocal && upvalueIndex.get(i) == index) {
+                    return i;
+                }
+            }
+            upvalueFromLocal.add(fromLocal);
+            upvalueIndex.add(index);
+            return upvalueIndex.size() - 1;
+        }
+
+        FunctionProto build() {
+            boolean[] fromLocal = new boolean[upvalueIndex.size()];
+            int[] index = new int[upvalueIndex.size()];
+            for (int i = 0; i < index.length; i++) {
+                fromLocal[i] = upvalueFromLocal.get(i);
+                index[i] = upvalueIndex.get(i);
+            }
+            return new FunctionProto(name, arity, numLocals, maxStack, Arrays.copyOf(code, length),
+                    constants.toArray(), fromLocal, index);
+        }
+    }
+
+    // 与Resolver的块一一对应
+    private static class Block {
+        final Block parent;
+        final FnState fn;
+        // 根块的变量在根作用域中
+        final boolean root;
+        // 函数体块，跨过它之后可以引用外层稍后定义的函数
+        final boolean function;
+        // 变量槽位slot对应局部变量base + slot
+        final int base;
+        // 被内层函数捕获的槽位
+        final boolean[] captured;
+        // 块内定义的函数与类：名称 → 局部变量下标（总在单元中）
+        final Map<String, Integer> functions = new HashMap<>();
+        final Map<String, Integer> classes = new HashMap<>();
+        // 按语句顺序已经定义的函数与类
+        final Set<String> defined = new HashSet<>();
+
+        Block(Block parent, FnState fn, boolean root, boolean function, int base, boolean[] captured) {
+            this.parent = parent;
+            this.fn = fn;
+            this.root = root;
+            this.function = function;
+            this.base = base;
+            this.captured = captured;
+        }
+    }
+
+    // 分析阶段得到的被捕获槽位，以块的语句列表为键
+    private final Map<List<Statement>, boolean[]> captured = new IdentityHashMap<>();
+    private FnState fn;
+    private Block block;
+    // 顶层语句中的return只结束当前这条顶层语句
+    private List<Integer> topLevelReturns;
+
+    public FunctionProto compile(Program program) {
+        Names previous = Names.enter(program.names);
+        try {
+            return compileProgram(program);
+        } finally {
+            Names.restore(previous);
+        }
+    }
+
+    private FunctionProto compileProgram(Program program) {
+        FnState main = new FnState(null, "<main>", 0);
+        fn = main;
+        block = new Block(null, main, true, false, 0, null);
+        for (Statement stmt : program.statements) {
+            scanStatement(stmt);
+        }
+
+        topLevelReturns = new ArrayList<>();
+        for (Statement stmt : program.statements) {
+            statement(stmt);
+            for (int jump : topLevelReturns) {
+                patch(jump);
+            }
+            topLevelReturns.clear();
+        }
+        emit(RETURN_NULL, 0);
+        block = null;
+        fn = null;
+        return main.build();
+    }
+
+    // ---------------- 分析：找出被内层函数捕获的局部变量 ----------------
+
+    private void scanBlock(List<Statement> statements, int size, boolean function) {
+        boolean[] slots = new boolean[size];
+        captured.put(statements, slots);
+        block = new Block(block, fn, false, function, 0, slots);
+        for (Statement stmt : statements) {
+            scanStatement(stmt);
+        }
+        block = block.parent;
+    }
+
+    // 与Resolver一致：没有作用域的分支在外层块中
+    private void scanBranch(List<Statement> statements, int size, boolean scoped) {
+        if (scoped) {
+            scanBlock(statements, size, false);
+        } else {
+            for (Statement stmt : statements) {
+                scanStatement(stmt);
+            }
+        }
+    }
+
+    private void scanFunction(FuncDefinition function) {
+        FnState saved = fn;
+        fn = new FnState(saved, function.name, 0);
+        scanBlock(function.body, function.frameSize, true);
+        fn = saved;
+    }
+
+    private void scanStatement(Statement stmt) {
+        if (stmt instanceof VarDeclaration) {
+            scanExpression(((VarDeclaration) stmt).initializer);
+        } else if (stmt instanceof Assignment) {
+            scanExpression(((Assignment) stmt).value);
+            scanExpression(((Assignment) stmt).target);
+        } else if (stmt instanceof ExprStatement) {
+            scanExpression(((ExprStatement) stmt).expression);
+        } else if (stmt instanceof ReturnStatement) {
+            scanExpression(((ReturnStatement) stmt).expression);
+        } else if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            scanExpression(ifStmt.condition);
+            scanBranch(ifStmt.thenBranch, ifStmt.thenSize, ifStmt.thenScoped);
+            if (ifStmt.elseBranch != null) {
+                scanBranch(ifStmt.elseBranch, ifStmt.elseSize, ifStmt.elseScoped);
+            }
+        } else if (stmt instanceof LoopStatement) {
+            LoopStatement loop = (LoopStatement) stmt;
+            scanExpression(loop.condition);
+            scanBranch(loop.body, loop.bodySize, loop.bodyScoped);
+        } else if (stmt instanceof FuncDefinition) {
+            scanFunction((FuncDefinition) stmt);
+        } else if (stmt instanceof ClassDefinition) {
+            ClassDefinition classDef = (ClassDefinition) stmt;
+            FnState saved = fn;
+            for (FieldDeclaration field : classDef.fields) {
+                fn = new FnState(saved, field.name, 0);
+                scanExpression(field.initializer);
+            }
+            fn = saved;
+            for (FuncDefinition method : classDef.methods) {
+                scanFunction(method);
+            }
+        }
+    }
+
+    private void scanExpression(Expression expr) {
+        if (expr instanceof Variable) {
+            markCaptured(((Variable) expr).depth, ((Variable) expr).slot);
+        } else if (expr instanceof ThisExpr) {
+            markCaptured(((ThisExpr) expr).depth, 0);
+        } else if (expr instanceof BinaryExpr) {
+            scanExpression(((BinaryExpr) expr).left);
+            scanExpression(((BinaryExpr) expr).right);
+        } else if (expr instanceof ConcatExpr) {
+            for (Expression part : ((ConcatExpr) expr).parts) {
+                scanExpression(part);
+            }
+        } else if (expr instanceof LogicalExpr) {
+            scanExpression(((LogicalExpr) expr).left);
+            scanExpression(((LogicalExpr) expr).right);
+        } else if (expr instanceof UnaryExpr) {
+            scanExpression(((UnaryExpr) expr).right);
+        } else if (expr instanceof FuncCall) {
+            for (Expression arg : ((FuncCall) expr).args) {
+                scanExpression(arg);
+            }
+        } else if (expr instanceof NativeCall) {
+            for (Expression arg : ((NativeCall) expr).args) {
+                scanExpression(arg);
+            }
+        } else if (expr instanceof MethodCall) {
+            scanExpression(((MethodCall) expr).target);
+            for (Expression arg : ((MethodCall) expr).arguments) {
+                scanExpression(arg);
+            }
+        } else if (expr instanceof FieldAccess) {
+            scanExpression(((FieldAccess) expr).target);
+        } else if (expr instanceof ClassExpr) {
+            for (Expression initializer : ((ClassExpr) expr).fieldInitializers.values()) {
+                scanExpression(initializer);
+            }
+        }
+    }
+
+    private void markCaptured(int depth, int slot) {
+        Block target = block;
+        for (int i = 0; i < depth && !target.root; i++) {
+            target = target.parent;
+        }
+        if (!target.root && target.fn != fn) {
+            target.captured[slot] = true;
+        }
+    }
+
+    // ---------------- 编译 ----------------
+
+    private void enterBlock(List<Statement> statements, int size, boolean function) {
+        Block b = new Block(block, fn, false, function, fn.nextLocal, captured.get(statements));
+        fn.nextLocal += size;
+        // 块内定义的函数与类占用额外的局部变量
+        for (Statement stmt : statements) {
+            if (stmt instanceof FuncDefinition) {
+                String name = ((FuncDefinition) stmt).name;
+                if (b.functions.containsKey(name)) {
+                    throw new JvsException("Function already defined: " + name);
+                }
+                b.functions.put(name, fn.nextLocal++);
+            } else if (stmt instanceof ClassDefinition) {
+                String name = ((ClassDefinition) stmt).name;
+                if (b.classes.containsKey(name)) {
+                    throw new JvsException("class already defined: " + name);
+                }
+                b.classes.put(name, fn.nextLocal++);
+            }
+        }
+        fn.numLocals = Math.max(fn.numLocals, fn.nextLocal);
+        block = b;
+        // 进入块时为被捕获的变量创建单元，参数则装入单元
+        for (int slot = 0; slot < size; slot++) {
+            if (b.captured[slot]) {
+                emitU32(function && slot < fn.arity ? BOX_LOCAL : NEW_CELL, 0, b.base + slot);
+            }
+        }
+        for (int local : b.functions.values()) {
+            emitU32(NEW_CELL, 0, local);
+        }
+        for (int local : b.classes.values()) {
+            emitU32(NEW_CELL, 0, local);
+        }
+    }
+
+    private void leaveBlock() {
+        fn.nextLocal = block.base;
+        block = block.parent;
+    }
+
+    private void compileBlock(List<Statement> statements, int size, boolean scoped) {
+        if (scoped) {
+            enterBlock(statements, size, false);
+        }
+        for (Statement stmt : statements) {
+            statement(stmt);
+        }
+        if (scoped) {
+            leaveBlock();
+        }
+    }
+
+    private FunctionProto function(FuncDefinition function, boolean method) {
+        FnState saved = fn;
+        fn = new FnState(saved, function.name, function.parameters.size() + (method ? 1 : 0));
+        enterBlock(function.body, function.frameSize, true);
+        for (Statement stmt : function.body) {
+            statement(stmt);
+        }
+        emit(RETURN_NULL, 0);
+        leaveBlock();
+        FunctionProto proto = fn.build();
+        fn = saved;
+        return proto;
+    }
+
+    private void statement(Statement stmt) {
+        if (stmt instanceof VarDeclaration) {
+            VarDeclaration declaration = (VarDeclaration) stmt;
+            if (declaration.initializer != null) {
+                expression(declaration.initializer);
+                emitU32(DECLARE, 0, constant(declaration));
+            } else {
+                emit(NULL, 1);
+            }
+            store(0, declaration.slot);
+        } else if (stmt instanceof Assignment) {
+            assignment((Assignment) stmt);
+        } else if (stmt instanceof ExprStatement) {
+            expression(((ExprStatement) stmt).expression);
+            emit(POP, -1);
+        } else if (stmt instanceof ReturnStatement) {
+            Expression expr = ((ReturnStatement) stmt).expression;
+            if (fn.enclosing == null) {
+                // 顶层的return：求值后跳到当前顶层语句之后
+                if (expr != null) {
+                    expression(expr);
+                    emit(POP, -1);
+                }
+                topLevelReturns.add(jump(JUMP));
+            } else if (expr != null) {
+                expression(expr);
+                emit(RETURN, -1);
+            } else {
+                emit(RETURN_NULL, 0);
+            }
+        } else if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            expression(ifStmt.condition);
+            fn.stack--;
+            int elseJump = jump(IF_FALSE);
+            compileBlock(ifStmt.thenBranch, ifStmt.thenSize, ifStmt.thenScoped);
+            if (ifStmt.elseBranch != null) {
+                int endJump = jump(JUMP);
+                patch(elseJump);
+                compileBlock(ifStmt.elseBranch, ifStmt.elseSize, ifStmt.elseScoped);
+                patch(endJump);
+            } else {
+                patch(elseJump);
+            }
+        } else if (stmt instanceof LoopStatement) {
+            LoopStatement loop = (LoopStatement) stmt;
+            int top = fn.length;
+            expression(loop.condition);
+            fn.stack--;
+            int exitJump = jump(LOOP_FALSE);
+            compileBlock(loop.body, loop.bodySize, loop.bodyScoped);
+            emit(JUMP, 0);
+            emitU32(top);
+            patch(exitJump);
+        } else if (stmt instanceof FuncDefinition) {
+            FuncDefinition function = (FuncDefinition) stmt;
+            emitU32(CLOSURE, 1, constant(function(function, false)));
+            define(function.name, function.id, block.functions, DEFINE_FUNCTION);
+        } else if (stmt instanceof ClassDefinition) {
+            classDefinition((ClassDefinition) stmt);
+        } else {
+            throw new JvsException("Unsupported statement: " + stmt.getClass().getSimpleName());
+        }
+    }
+
+    // 根块的定义按名称编号注册为全局，嵌套块的定义写入块内的单元
+    private void define(String name, int id, Map<String, Integer> locals, int globalOp) {
+        if (block.root) {
+            emitU32(globalOp, -1, constant(id));
+        } else {
+            emitU32(STORE_CELL, -1, locals.get(name));
+            block.defined.add(name);
+        }
+    }
+
+    private void classDefinition(ClassDefinition classDef) {
+        for (FuncDefinition method : classDef.methods) {
+            emitU32(CLOSURE, 1, constant(function(method, true)));
+        }
+        // 非常量的字段默认值编译为无参函数，在类定义处创建闭包，实例化时调用；常量默认值在类的字段模板中
+        boolean[] hasDefault = new boolean[classDef.fields.size()];
+        int defaults = 0;
+        for (int i = 0; i < classDef.fields.size(); i++) {
+            FieldDeclaration field = classDef.fields.get(i);
+            if (!classDef.evaluatedDefault(i)) continue;
+            FnState saved = fn;
+            fn = new FnState(saved, classDef.name + "." + field.name, 0);
+            expression(field.initializer);
+            emit(RETURN, -1);
+            FunctionProto proto = fn.build();
+            fn = saved;
+            emitU32(CLOSURE, 1, constant(proto));
+            hasDefault[i] = true;
+            defaults++;
+        }
+        emitU32(CLASS, 1 - classDef.methods.size() - defaults, constant(new ClassProto(classDef, hasDefault)));
+        define(classDef.name, classDef.id, block.classes, DEFINE_CLASS);
+    }
+
+    private void assignment(Assignment assignment) {
+        if (assignment.target instanceof Variable) {
+            Variable variable = (Variable) assignment.target;
+            expression(assignment.value);
+            if (variable.thisField) {
+                load(variable.depth, variable.slot);
+                emitU32(SET_SLOT, -2, variable.fieldSlot);
+                return;
+            }
+            // 只有带初始化值的声明才会推断出类型
+            VarDeclaration declaration = variable.declaration;
+            if (declaration.initializer != null || declaration.type != null) {
+                emitU32(CHECK_TYPE, 0, constant(declaration));
+            }
+            store(variable.depth, variable.slot);
+        } else if (assignment.target instanceof FieldAccess) {
+            FieldAccess fieldAccess = (FieldAccess) assignment.target;
+            expression(assignment.value);
+            expression(fieldAccess.target);
+            emitU32(SET_FIELD, -2, constant(fieldAccess.fieldId));
+        } else {
+            throw new JvsException("Invalid assignment target");
+        }
+    }
+
+    private void expression(Expression expr) {
+        if (expr instanceof Literal) {
+            Object value = ((Literal) expr).value;
+            if (value == null) {
+                emit(NULL, 1);
+            } else {
+                emitU32(CONST, 1, constant(value));
+            }
+        } else if (expr instanceof Variable) {
+            Variable variable = (Variable) expr;
+            load(variable.depth, variable.slot);
+            if (variable.thisField) {
+                emitU32(GET_SLOT, 0, variable.fieldSlot);
+            }
+        } else if (expr instanceof ThisExpr) {
+            load(((ThisExpr) expr).depth, 0);
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            expression(binary.left);
+            expression(binary.right);
+            emit(binaryOpcode(binary.operator), -1);
+        } else if (expr instanceof ConcatExpr) {
+            List<Expression> parts = ((ConcatExpr) expr).parts;
+            for (Expression part : parts) {
+                expression(part);
+            }
+            emitU32(CONCAT, 1 - parts.size(), parts.size());
+        } else if (expr instanceof LogicalExpr) {
+            // 短路时左操作数即结果，跳过右操作数
+            LogicalExpr logical = (LogicalExpr) expr;
+            boolean and = logical.operator == Symbol.AND;
+            expression(logical.left);
+            int end = jump(and ? AND : OR);
+            fn.stack--;
+            expression(logical.right);
+            emit(and ? AND_RIGHT : OR_RIGHT, 0);
+            patch(end);
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            expression(unary.right);
+            emit(unary.operator == Symbol.MINUS ? NEG : NOT, 0);
+        } else if (expr instanceof FuncCall) {
+            funcCall((FuncCall) expr);
+        } else if (expr instanceof NativeCall && ((NativeCall) expr).script != null) {
+            // 同名的脚本函数或类优先
+            funcCall(((NativeCall) expr).script);
+        } else if (expr instanceof NativeCall) {
+            NativeCall call = (NativeCall) expr;
+            for (Expression arg : call.args) {
+                expression(arg);
+            }
+            emitU32(NATIVE, 1 - call.args.size(), constant(call.function));
+            emitU32(call.args.size());
+        } else if (expr instanceof MethodCall) {
+            MethodCall call = (MethodCall) expr;
+            expression(call.target);
+            for (Expression arg : call.arguments) {
+                expression(arg);
+            }
+            emitU32(INVOKE_METHOD, -call.arguments.size(), constant(call.methodId));
+            emitU32(call.arguments.size());
+        } else if (expr instanceof FieldAccess) {
+            FieldAccess fieldAccess = (FieldAccess) expr;
+            expression(fieldAccess.target);
+            emitU32(GET_FIELD, 0, constant(fieldAccess.fieldId));
+        } else if (expr instanceof ClassExpr) {
+            ClassExpr classExpr = (ClassExpr) expr;
+            boolean local = loadDefinition(classExpr.className, true);
+            int[] ids = new int[classExpr.fieldInitializers.size()];
+            int count = 0;
+            for (Map.Entry<String, Expression> initializer : classExpr.fieldInitializers.entrySet()) {
+                ids[count++] = Names.id(initializer.getKey());
+                expression(initializer.getValue());
+            }
+            emitU32(local ? NEW : NEW_GLOBAL, local ? -ids.length : 1 - ids.length, constant(classExpr.classId));
+            emitU32(constant(ids));
+        } else {
+            throw new JvsException("Unsupported expression: " + expr.getClass().getSimpleName());
+        }
+    }
+
+    private void funcCall(FuncCall call) {
+        if (loadDefinition(call.name, false)) {
+            for (Expression arg : call.args) {
+                expression(arg);
+            }
+            emitU32(INVOKE, -call.args.size(), constant(call.id));
+            emitU32(call.args.size());
+        } else if (loadDefinition(call.name, true)) {
+            // 无参实例化块内定义的类，与解释器一样忽略参数
+            emitU32(NEW, 0, constant(call.id));
+            emitU32(constant(NO_IDS));
+        } else {
+            for (Expression arg : call.args) {
+                expression(arg);
+            }
+            emitU32(CALL, 1 - call.args.size(), constant(call.id));
+            emitU32(call.args.size());
+        }
+    }
+
+    // 查找块内定义的函数或类并装载其单元，找不到时按名称在全局查找
+    private boolean loadDefinition(String name, boolean klass) {
+        // 字段默认值函数在稍后实例化时才执行
+        boolean crossed = block.fn != fn;
+        for (Block b = block; !b.root; b = b.parent) {
+            Integer local = klass ? b.classes.get(name) : b.functions.get(name);
+            if (local != null && (crossed || b.defined.contains(name))) {
+                if (b.fn == fn) {
+                    emitU32(LOAD_CELL, 1, local);
+                } else {
+                    emitU32(LOAD_UPVAL, 1, upvalue(fn, b.fn, local));
+                }
+                return true;
+            }
+            if (b.function) {
+                crossed = true;
+            }
+        }
+        return false;
+    }
+
+    private void load(int depth, int slot) {
+        access(depth, slot, true);
+    }
+
+    private void store(int depth, int slot) {
+        access(depth, slot, false);
+    }
+
+    private void access(int depth, int slot, boolean load) {
+        Block target = block;
+        for (int i = 0; i < depth; i++) {
+            if (target.root) {
+                // 根作用域之上的宿主作用域
+                emitGlobal(load, depth - i, slot);
+                return;
+            }
+            target = target.parent;
+        }
+        if (target.root) {
+            emitGlobal(load, 0, slot);
+            return;
+        }
+        int local = target.base + slot;
+        if (target.fn != fn) {
+            emitU32(load ? LOAD_UPVAL : STORE_UPVAL, load ? 1 : -1, upvalue(fn, target.fn, local));
+        } else if (target.captured[slot]) {
+            emitU32(load ? LOAD_CELL : STORE_CELL, load ? 1 : -1, local);
+        } else {
+            emitU32(load ? LOAD_LOCAL : STORE_LOCAL, load ? 1 : -1, local);
+        }
+    }
+
+    private void emitGlobal(boolean load, int depth, int slot) {
+        emit(load ? LOAD_GLOBAL : STORE_GLOBAL, load ? 1 : -1);
+        emitU8(depth);
+        emitU32(slot);
+    }
+
+    // 逐层向外捕获外层函数的局部变量单元
+    private int upvalue(FnState current, FnState target, int local) {
+        if (current.enclosing == target) {
+            return current.addUpvalue(true, local);
+        }
+        return current.addUpvalue(false, upvalue(current.enclosing, target, local));
+    }
+
+    private static int binaryOpcode(Symbol operator) {
+        switch (operator) {
+            case PLUS: return ADD;
+            case MINUS: return SUB;
+            case MULTIPLY: return MUL;
+            case DIVIDE: return DIV;
+            case MODULO: return MOD;
+            case EQUAL: return EQ;
+            case NOTEQUAL: return NE;
+            case LESS: return LT;
+            case LESS_EQUAL: return LE;
+            case GREATER: return GT;
+            case GREATER_EQUAL: return GE;
+            default: throw new JvsException("Unsupported operator: " + operator);
+        }
+    }
+
+    // ---------------- 指令输出 ----------------
+
+    private int constant(Object value) {
+        boolean shared = value instanceof String || value instanceof Number || value instanceof Boolean;
+        if (shared) {
+            Integer index = fn.constantIndex.get(value);
+            if (index != null) return index;
+        }
+        int index = fn.constants.size();
+        fn.constants.add(value);
+        if (shared) {
+            fn.constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private void emit(int opcode, int stackEffect) {
+        emitU8(opcode);
+        fn.stack += stackEffect;
+        fn.maxStack = Math.max(fn.maxStack, fn.stack);
+    }
+
+    private void emitU32(int opcode, int stackEffect, int operand) {
+        emit(opcode, stackEffect);
+        emitU32(operand);
+    }
+
+    private void emitU8(int value) {
+        if (fn.length == fn.code.length) {
+            fn.code = Arrays.copyOf(fn.code, fn.length * 2);
+        }
+        fn.code[fn.length++] = (byte) value;
+    }
+
+    private void emitU32(int value) {
+        emitU8(value >>> 24);
+        emitU8(value >> 16);
+        emitU8(value >> 8);
+        emitU8(value);
+    }
+
+    // 输出跳转指令，返回待回填的操作数位置
+    private int jump(int opcode) {
+        emit(opcode, 0);
+        emitU32(0);
+        return fn.length - 4;
+    }
+
+    private void patch(int position) {
+        fn.code[position] = (byte) (fn.length >>> 24);
+        fn.code[position + 1] = (byte) (fn.length >> 16);
+        fn.code[position + 2] = (byte) (fn.length >> 8);
+        fn.code[position + 3] = (byte) fn.length;
+    }
+
+}
@@ -0,0 +1,15 @@
+package jvlang.vm;
+
+/**
+ * 被内层函数捕获的变量单元
+ * @author Yumerain
+ */
+final class Cell {
+
+    Object value;
+
+    Cell(Object value) {
+        this.value = value;
+    }
+
+}
@@ -0,0 +1,20 @@
+package jvlang.vm;
+
+import jvlang.stmt.ClassDefinition;
+
+/**
+ * 编译后的类定义，执行CLASS指令时与方法、字段默认值闭包组合成VmClass
+ * @author Yumerain
+ */
+final class ClassProto {
+
+    final ClassDefinition definition;
+    // 各字段是否有默认值，顺序与definition.fields一致
+    final boolean[] hasDefault;
+
+    ClassProto(ClassDefinition definition, boolean[] hasDefault) {
+        this.definition = definition;
+        this.hasDefault = hasDefault;
+    }
+
+}
@@ -0,0 +1,17 @@
+package jvlang.vm;
+
+/**
+ * 函数运行时的值：函数原型与捕获的变量单元
+ * @author Yumerain
+ */
+final class Closure {
+
+    final FunctionProto proto;
+    final Cell[] upvalues;
+
+    Closure(FunctionProto proto, Cell[] upvalues) {
+        this.proto = proto;
+        this.upvalues = upvalues;
+    }
+
+}
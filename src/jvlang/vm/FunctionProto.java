@@ -0,0 +1,34 @@
+package jvlang.vm;
+
+/**
+ * 编译后的函数原型：字节码、常量池与捕获变量描述
+ * @author Yumerain
+ */
+public final class FunctionProto {
+
+    public final String name;
+    // 参数个数，方法包含槽位0的this
+    final int arity;
+    // 局部变量个数（参数、函数体及嵌套块的变量）
+    final int numLocals;
+    // 操作数栈最大深度
+    final int maxStack;
+    final byte[] code;
+    final Object[] constants;
+    // 捕获变量：来自外层函数的局部变量单元，或外层闭包已捕获的单元
+    final boolean[] upvalueFromLocal;
+    final int[] upvalueIndex;
+
+    FunctionProto(String name, int arity, int numLocals, int maxStack, byte[] code, Object[] constants,
+                  boolean[] upvalueFromLocal, int[] upvalueIndex) {
+        this.name = name;
+        this.arity = arity;
+        this.numLocals = numLocals;
+        this.maxStack = maxStack;
+        this.code = code;
+        this.constants = constants;
+        this.upvalueFromLocal = upvalueFromLocal;
+        this.upvalueIndex = upvalueIndex;
+    }
+
+}
@@ -0,0 +1,83 @@
+package jvlang.vm;
+
+/**
+ * 虚拟机指令集
+ * 每条指令1字节操作码，操作数为大端序的u8/u32，跳转地址为函数内的绝对偏移；
+ * 操作数都是32位的，函数的代码长度、常量数、局部变量数与调用的参数个数都不受16位的限制
+ * @author Yumerain
+ */
+final class Opcodes {
+
+    // 常量与栈操作
+    static final int CONST = 0;             // u32常量下标
+    static final int NULL = 1;
+    static final int POP = 2;
+
+    // 局部变量，下标相对于帧基址
+    static final int LOAD_LOCAL = 3;        // u32
+    static final int STORE_LOCAL = 4;       // u32，出栈写入
+    static final int NEW_CELL = 5;          // u32，局部变量置为新的单元（被内层函数捕获的变量）
+    static final int BOX_LOCAL = 6;         // u32，把参数装入单元
+    static final int LOAD_CELL = 7;         // u32
+    static final int STORE_CELL = 8;        // u32
+    static final int LOAD_UPVAL = 9;        // u32，闭包捕获的单元
+    static final int STORE_UPVAL = 10;      // u32
+
+    // 根作用域变量
+    static final int LOAD_GLOBAL = 11;      // u8层数（相对根作用域），u32槽位
+    static final int STORE_GLOBAL = 12;     // u8，u32
+
+    // 类型检查，操作数为VarDeclaration常量，不出栈
+    static final int DECLARE = 13;          // 推断或检查初始化值类型
+    static final int CHECK_TYPE = 14;       // 检查赋值类型
+
+    // 运算
+    static final int ADD = 15;
+    static final int SUB = 16;
+    static final int MUL = 17;
+    static final int DIV = 18;
+    static final int MOD = 19;
+    static final int EQ = 20;
+    static final int NE = 21;
+    static final int LT = 22;
+    static final int LE = 23;
+    static final int GT = 24;
+    static final int GE = 25;
+    static final int AND = 26;              // u32，左操作数为false时留在栈上并跳转，否则出栈
+    static final int OR = 27;               // u32，左操作数为true时留在栈上并跳转，否则出栈
+    static final int NEG = 28;
+    static final int NOT = 29;
+
+    // 跳转
+    static final int JUMP = 30;             // u32
+    static final int IF_FALSE = 31;         // u32，if条件为false时跳转
+    static final int LOOP_FALSE = 32;       // u32，for条件为false时跳转
+
+    // 调用
+    static final int CALL = 33;             // u32函数名编号，u32参数个数：按名称调用全局函数，或无参实例化类
+    static final int INVOKE = 34;           // u32函数名编号，u32参数个数：调用参数之下的闭包
+    static final int INVOKE_METHOD = 35;    // u32方法名编号，u32参数个数：参数之下为实例
+    static final int RETURN = 36;
+    static final int RETURN_NULL = 37;
+
+    // 定义
+    static final int CLOSURE = 38;          // u32函数原型常量
+    static final int CLASS = 39;            // u32类原型常量，出栈方法与字段默认值闭包
+    static final int DEFINE_FUNCTION = 40;  // u32名称编号，出栈闭包注册为全局函数
+    static final int DEFINE_CLASS = 41;     // u32名称编号，出栈类注册为全局类
+
+    // 类实例
+    static final int NEW = 42;              // u32字段名编号数组：初始化值之下为类
+    static final int NEW_GLOBAL = 43;       // u32类名编号，u32字段名编号数组
+    static final int GET_FIELD = 44;        // u32字段名编号
+    static final int SET_FIELD = 45;        // u32字段名编号，出栈实例与值
+    static final int GET_SLOT = 48;         // u32字段槽位，方法内直接使用的字段
+    static final int SET_SLOT = 49;         // u32字段槽位，出栈实例与值
+    static final int AND_RIGHT = 50;        // 检查&&的右操作数为布尔值，不出栈
+    static final int OR_RIGHT = 51;         // 检查||的右操作数为布尔值，不出栈
+    static final int CONCAT = 52;           // u32个数，出栈各部分拼接为一个字符串
+    static final int NATIVE = 46;           // u32原生函数，u32参数个数，出栈参数并压入结果
+
+    private Opcodes() {
+    }
+}
@@ -0,0 +1,532 @@
+package jvlang.vm;
+
+import jvlang.IdMap;
+import jvlang.JvsException;
+import jvlang.Names;
+import jvlang.Native;
+import jvlang.Numbers;
+import jvlang.Scope;
+import jvlang.Symbol;
+import jvlang.expr.BinaryExpr;
+import jvlang.expr.ConcatExpr;
+import jvlang.expr.LogicalExpr;
+import jvlang.expr.UnaryExpr;
+import jvlang.model.ClassInstance;
+import jvlang.model.TextBuilder;
+import jvlang.stmt.ClassDefinition;
+import jvlang.stmt.VarDeclaration;
+
+import java.util.Arrays;
+
+import static jvlang.vm.Opcodes.*;
+
+/**
+ * 基于栈的字节码虚拟机
+ * 操作数与各调用帧的局部变量都放在同一个连续的值栈上，
+ * 调用参数直接成为被调函数的前几个局部变量，脚本调用不占用Java栈，
+ * 递归深度只受调用帧数上限（系统属性jvs.maxDepth，默认DEFAULT_MAX_DEPTH）限制，与-Xss无关
+ * @author Yumerain
+ */
+public class VirtualMachine {
+
+    private static final Cell[] NO_UPVALUES = new Cell[0];
+    private static final int[] NO_IDS = new int[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    // 默认的调用帧数上限
+    public static final int DEFAULT_MAX_DEPTH = 1_000_000;
+
+    // 根作用域：顶层变量与解释器一样存放在其槽位中
+    private final Scope root;
+    // 根作用域的符号表，报错时由编号取得名称
+    private final Names names;
+    // 顶层定义的函数与类，跨多次run保留（控制台逐行输入）
+    private final IdMap<Closure> functions = new IdMap<>();
+    private final IdMap<VmClass> classes = new IdMap<>();
+
+    private Object[] stack = new Object[256];
+    private int sp;
+
+    // 调用帧
+    private Closure[] frames = new Closure[64];
+    private int[] frameIps = new int[64];
+    private int[] frameBases = new int[64];
+    // 返回后栈顶的位置，返回值写在这里
+    private int[] frameReturns = new int[64];
+    private int fp;
+    // 调用帧数上限，超出时抛出JvsException
+    private int maxDepth = Integer.getInteger("jvs.maxDepth", DEFAULT_MAX_DEPTH);
+
+    public VirtualMachine(Scope root) {
+        this.root = root;
+        this.names = root.getNames();
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public void run(FunctionProto main) {
+        int savedSp = sp;
+        int savedFp = fp;
+        try {
+            call(new Closure(main, NO_UPVALUES));
+        } finally {
+            root.getOutput().flush();
+            Arrays.fill(stack, savedSp, stack.length, null);
+            Arrays.fill(frames, savedFp, frames.length, null);
+            sp = savedSp;
+            fp = savedFp;
+        }
+    }
+
+    // 在当前栈顶调用无参闭包并执行到其返回
+    private Object call(Closure closure) {
+        pushFrame(closure, sp, sp);
+        return execute(fp - 1);
+    }
+
+    private void pushFrame(Closure closure, int base, int returnSp) {
+        if (fp >= maxDepth) {
+            throw new JvsException("Stack overflow: call depth exceeds " + maxDepth);
+        }
+        if (fp == frames.length) {
+            int size = fp * 2;
+            frames = Arrays.copyOf(frames, size);
+            frameIps = Arrays.copyOf(frameIps, size);
+            frameBases = Arrays.copyOf(frameBases, size);
+            frameReturns = Arrays.copyOf(frameReturns, size);
+        }
+        FunctionProto proto = closure.proto;
+        int required = base + proto.numLocals + proto.maxStack;
+        if (required > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(required, stack.length * 2));
+        }
+        frames[fp] = closure;
+        frameIps[fp] = 0;
+        frameBases[fp] = base;
+        frameReturns[fp] = returnSp;
+        fp++;
+        sp = base + proto.numLocals;
+    }
+
+    // 尾调用：调用指令后紧跟RETURN时，把参数[from, top)移到当前帧的基址，
+    // 被调函数复用当前调用帧，返回位置不变，调用帧数不增加
+    private void replaceFrame(Closure closure, int from, int top) {
+        int base = frameBases[fp - 1];
+        int count = top - from;
+        System.arraycopy(stack, from, stack, base, count);
+        Arrays.fill(stack, base + count, top, null);
+        FunctionProto proto = closure.proto;
+        int required = base + proto.numLocals + proto.maxStack;
+        if (required > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(required, stack.length * 2));
+        }
+        frames[fp - 1] = closure;
+        frameIps[fp - 1] = 0;
+        sp = base + proto.numLocals;
+    }
+
+    // 执行当前调用帧，直到调用帧数回到stopAt时返回
+    private Object execute(int stopAt) {
+        frames:
+        for (;;) {
+            // 切换调用帧后重新装载
+            Closure closure = frames[fp - 1];
+            FunctionProto proto = closure.proto;
+            byte[] code = proto.code;
+            Object[] constants = proto.constants;
+            Object[] stack = this.stack;
+            int ip = frameIps[fp - 1];
+            int base = frameBases[fp - 1];
+            int sp = this.sp;
+
+            for (;;) {
+                switch (code[ip++]) {
+                    case CONST:
+                        stack[sp++] = constants[u32(code, ip)];
+                        ip += 4;
+                        break;
+                    case NULL:
+                        stack[sp++] = null;
+                        break;
+                    case POP:
+                        stack[--sp] = null;
+                        break;
+                    case LOAD_LOCAL:
+                        stack[sp++] = stack[base + u32(code, ip)];
+                        ip += 4;
+                        break;
+                    case STORE_LOCAL:
+                        stack[base + u32(code, ip)] = stack[--sp];
+                        ip += 4;
+                        break;
+                    case NEW_CELL:
+                        stack[base + u32(code, ip)] = new Cell(null);
+                        ip += 4;
+                        break;
+                    case BOX_LOCAL: {
+                        int local = base + u32(code, ip);
+                        stack[local] = new Cell(stack[local]);
+                        ip += 4;
+                        break;
+                    }
+                    case LOAD_CELL:
+                        stack[sp++] = ((Cell) stack[base + u32(code, ip)]).value;
+                        ip += 4;
+                        break;
+                    case STORE_CELL:
+                        ((Cell) stack[base + u32(code, ip)]).value = stack[--sp];
+                        ip += 4;
+                        break;
+                    case LOAD_UPVAL:
+                        stack[sp++] = closure.upvalues[u32(code, ip)].value;
+                        ip += 4;
+                        break;
+                    case STORE_UPVAL:
+                        closure.upvalues[u32(code, ip)].value = stack[--sp];
+                        ip += 4;
+                        break;
+                    case LOAD_GLOBAL:
+                        stack[sp++] = root.getVariable(code[ip] & 0xFF, u32(code, ip + 1));
+                        ip += 5;
+                        break;
+                    case STORE_GLOBAL:
+                        root.setVariable(code[ip] & 0xFF, u32(code, ip + 1), stack[--sp]);
+                        ip += 5;
+                        break;
+                    case DECLARE:
+                        ((VarDeclaration) constants[u32(code, ip)]).checkInitializer(root, stack[sp - 1]);
+                        ip += 4;
+                        break;
+                    case CHECK_TYPE:
+                        root.checkType(((VarDeclaration) constants[u32(code, ip)]).type, stack[sp - 1]);
+                        ip += 4;
+                        break;
+                    case ADD: {
+                        Object r = stack[--sp];
+                        Object l = stack[sp - 1];
+                        stack[sp - 1] = l instanceof Long && r instanceof Long
+                                ? (Object) Numbers.box((Long) l + (Long) r) : BinaryExpr.apply(Symbol.PLUS, l, r);
+                        break;
+                    }
+                    case SUB: {
+                        Object r = stack[--sp];
+                        Object l = stack[sp - 1];
+                        stack[sp - 1] = l instanceof Long && r instanceof Long
+                                ? (Object) Numbers.box((Long) l - (Long) r) : BinaryExpr.apply(Symbol.MINUS, l, r);
+                        break;
+                    }
+                    case MUL: {
+                        Object r = stack[--sp];
+                        Object l = stack[sp - 1];
+                        stack[sp - 1] = l instanceof Long && r instanceof Long
+                                ? (Object) Numbers.box((Long) l * (Long) r) : BinaryExpr.apply(Symbol.MULTIPLY, l, r);
+                        break;
+                    }
+                    case DIV: sp = binary(stack, sp, Symbol.DIVIDE); break;
+                    case MOD: sp = binary(stack, sp, Symbol.MODULO); break;
+                    case EQ: sp = binary(stack, sp, Symbol.EQUAL); break;
+                    case NE: sp = binary(stack, sp, Symbol.NOTEQUAL); break;
+                    case LT: sp = binary(stack, sp, Symbol.LESS); break;
+                    case LE: sp = binary(stack, sp, Symbol.LESS_EQUAL); break;
+                    case GT: sp = binary(stack, sp, Symbol.GREATER); break;
+                    case GE: sp = binary(stack, sp, Symbol.GREATER_EQUAL); break;
+                    case AND:
+                        if (LogicalExpr.left(Symbol.AND, stack[sp - 1])) {
+                            stack[--sp] = null;
+                            ip += 4;
+                        } else {
+                            ip = u32(code, ip);
+                        }
+                        break;
+                    case OR:
+                        if (LogicalExpr.left(Symbol.OR, stack[sp - 1])) {
+                            ip = u32(code, ip);
+                        } else {
+                            stack[--sp] = null;
+                            ip += 4;
+                        }
+                        break;
+                    case AND_RIGHT:
+                        LogicalExpr.right(Symbol.AND, stack[sp - 1]);
+                        break;
+                    case OR_RIGHT:
+                        LogicalExpr.right(Symbol.OR, stack[sp - 1]);
+                        break;
+                    case NEG:
+                        stack[sp - 1] = UnaryExpr.apply(Symbol.MINUS, stack[sp - 1]);
+                        break;
+                    case NOT:
+                        stack[sp - 1] = UnaryExpr.apply(Symbol.NOT, stack[sp - 1]);
+                        break;
+                    case JUMP:
+                        ip = u32(code, ip);
+                        break;
+                    case IF_FALSE: {
+                        Object cond = stack[--sp];
+                        if (!(cond instanceof Boolean)) {
+                            throw new JvsException("If condition must be boolean, got " + cond.getClass().getSimpleName());
+                        }
+                        ip = (Boolean) cond ? ip + 4 : u32(code, ip);
+                        break;
+                    }
+                    case LOOP_FALSE: {
+                        Object cond = stack[--sp];
+                        if (!(cond instanceof Boolean)) {
+                            throw new JvsException("While condition must be boolean, got " + cond.getClass().getSimpleName());
+                        }
+                        ip = (Boolean) cond ? ip + 4 : u32(code, ip);
+                        break;
+                    }
+                    case CALL: {
+                        int id = (Integer) constants[u32(code, ip)];
+                        int argc = u32(code, ip + 4);
+                        ip += 8;
+                        Closure function = functions.get(id);
+                        if (function != null) {
+                            checkArity("Function ", id, function.proto.arity, argc);
+                            frameIps[fp - 1] = ip;
+                            if (code[ip] == RETURN) {
+                                replaceFrame(function, sp - argc, sp);
+                            } else {
+                                pushFrame(function, sp - argc, sp - argc);
+                            }
+                            continue frames;
+                        }
+                        VmClass type = classes.get(id);
+                        if (type == null) {
+                            throw new JvsException("Undefined function: " + names.nameOf(id));
+                        }
+                        // 无参实例化类，与解释器一样忽略参数
+                        sp -= argc;
+                        this.sp = sp;
+                        Object instance = instantiate(type, NO_IDS, NO_VALUES);
+                        stack = this.stack;
+                        stack[sp++] = instance;
+                        break;
+                    }
+                    case INVOKE: {
+                        int id = (Integer) constants[u32(code, ip)];
+                        int argc = u32(code, ip + 4);
+                        ip += 8;
+                        Closure function = (Closure) stack[sp - argc - 1];
+                        if (function == null) {
+                            throw new JvsException("Undefined function: " + names.nameOf(id));
+                        }
+                        checkArity("Function ", id, function.proto.arity, argc);
+                        frameIps[fp - 1] = ip;
+                        if (code[ip] == RETURN) {
+                            replaceFrame(function, sp - argc, sp);
+                        } else {
+                            pushFrame(function, sp - argc, sp - argc - 1);
+                        }
+                        continue frames;
+                    }
+                    case INVOKE_METHOD: {
+                        int id = (Integer) constants[u32(code, ip)];
+                        int argc = u32(code, ip + 4);
+                        ip += 8;
+                        Object target = stack[sp - argc - 1];
+                        if (target instanceof TextBuilder) {
+                            String name = names.nameOf(id);
+                            TextBuilder.check(name, argc);
+                            Object result = ((TextBuilder) target).invoke(name, argc == 1 ? stack[sp - 1] : null);
+                            Arrays.fill(stack, sp - argc, sp, null);
+                            sp -= argc;
+                            stack[sp - 1] = result;
+                            break;
+                        }
+                        if (!(target instanceof VmInstance)) {
+                            throw new JvsException("Method call on non-class instance: " + target.getClass().getSimpleName());
+                        }
+                        VmClass type = ((VmInstance) target).type;
+                        Closure method = type.methods.get(id);
+                        if (method == null) {
+                            throw new JvsException("Undefined method '" + names.nameOf(id) + "' in class " + type.definition.name);
+                        }
+                        // 实例留在栈上成为方法的槽位0（this）
+                        checkArity("Method ", id, method.proto.arity - 1, argc);
+                        frameIps[fp - 1] = ip;
+                        if (code[ip] == RETURN) {
+                            replaceFrame(method, sp - argc - 1, sp);
+                        } else {
+                            pushFrame(method, sp - argc - 1, sp - argc - 1);
+                        }
+                        continue frames;
+                    }
+                    case RETURN:
+                    case RETURN_NULL: {
+                        Object result = code[ip - 1] == RETURN ? stack[sp - 1] : null;
+                        int returnSp = frameReturns[--fp];
+                        frames[fp] = null;
+                        if (fp == stopAt) {
+                            this.sp = returnSp;
+                            return result;
+                        }
+                        this.stack[returnSp] = result;
+                        this.sp = returnSp + 1;
+                        continue frames;
+                    }
+                    case CLOSURE: {
+                        FunctionProto function = (FunctionProto) constants[u32(code, ip)];
+                        ip += 4;
+                        Cell[] upvalues = new Cell[function.upvalueIndex.length];
+                        for (int i = 0; i < upvalues.length; i++) {
+                            int index = function.upvalueIndex[i];
+                            upvalues[i] = function.upvalueFromLocal[i] ? (Cell) stack[base + index] : closure.upvalues[index];
+                        }
+                        stack[sp++] = new Closure(function, upvalues);
+                        break;
+                    }
+                    case CLASS: {
+                        ClassProto classProto = (ClassProto) constants[u32(code, ip)];
+                        ip += 4;
+                        ClassDefinition definition = classProto.definition;
+                        Closure[] defaults = new Closure[definition.fields.size()];
+                        for (int i = defaults.length - 1; i >= 0; i--) {
+                            if (classProto.hasDefault[i]) {
+                                defaults[i] = (Closure) stack[--sp];
+                            }
+                        }
+                        VmClass type = new VmClass(definition, defaults);
+                        int methods = definition.methods.size();
+                        sp -= methods;
+                        for (int i = 0; i < methods; i++) {
+                            type.methods.put(definition.methods.get(i).id, (Closure) stack[sp + i]);
+                        }
+                        stack[sp++] = type;
+                        break;
+                    }
+                    case DEFINE_FUNCTION: {
+                        int id = (Integer) constants[u32(code, ip)];
+                        ip += 4;
+                        // 同一程序内的重复定义已由Resolver报错，这里是控制台重新定义
+                        functions.put(id, (Closure) stack[--sp]);
+                        break;
+                    }
+                    case DEFINE_CLASS: {
+                        int id = (Integer) constants[u32(code, ip)];
+                        ip += 4;
+                        classes.put(id, (VmClass) stack[--sp]);
+                        break;
+                    }
+                    case NEW:
+                    case NEW_GLOBAL: {
+                        boolean global = code[ip - 1] == NEW_GLOBAL;
+                        int classId = (Integer) constants[u32(code, ip)];
+                        int[] ids = (int[]) constants[u32(code, ip + 4)];
+                        ip += 8;
+                        Object[] values = Arrays.copyOfRange(stack, sp - ids.length, sp);
+                        sp -= ids.length;
+                        Object type = global ? classes.get(classId) : stack[--sp];
+                        if (!(type instanceof VmClass)) {
+                            throw new JvsException("Undefined struct: " + names.nameOf(classId));
+                        }
+                        this.sp = sp;
+                        Object instance = instantiate((VmClass) type, ids, values);
+                        stack = this.stack;
+                        stack[sp++] = instance;
+                        break;
+                    }
+                    case GET_FIELD: {
+                        int id = (Integer) constants[u32(code, ip)];
+                        ip += 4;
+                        Object target = stack[sp - 1];
+                        if (!(target instanceof ClassInstance)) {
+                            throw new JvsException("Field access on non-struct type: " + target.getClass().getSimpleName());
+                        }
+                        ClassInstance instance = (ClassInstance) target;
+                        stack[sp - 1] = instance.fields[instance.fieldSlot(id)];
+                        break;
+                    }
+                    case SET_FIELD: {
+                        int id = (Integer) constants[u32(code, ip)];
+                        ip += 4;
+                        Object target = stack[--sp];
+                        Object value = stack[--sp];
+                        if (!(target instanceof ClassInstance)) {
+                            throw new JvsException("Field assignment on non-struct instance");
+                        }
+                        ClassInstance instance = (ClassInstance) target;
+                        instance.fields[instance.fieldSlot(id)] = value;
+                        break;
+                    }
+                    case GET_SLOT: {
+                        int slot = u32(code, ip);
+                        ip += 4;
+                        stack[sp - 1] = ((ClassInstance) stack[sp - 1]).fields[slot];
+                        break;
+                    }
+                    case SET_SLOT: {
+                        int slot = u32(code, ip);
+                        ip += 4;
+                        Object target = stack[--sp];
+                        ((ClassInstance) target).fields[slot] = stack[--sp];
+                        break;
+                    }
+                    case CONCAT: {
+                        int count = u32(code, ip);
+                        ip += 4;
+                        Object[] parts = Arrays.copyOfRange(stack, sp - count, sp);
+                        Arrays.fill(stack, sp - count + 1, sp, null);
+                        sp -= count - 1;
+                        stack[sp - 1] = ConcatExpr.concat(parts);
+                        break;
+                    }
+                    case NATIVE: {
+                        Native function = (Native) constants[u32(code, ip)];
+                        int argc = u32(code, ip + 4);
+                        ip += 8;
+                        Object[] args = Arrays.copyOfRange(stack, sp - argc, sp);
+                        Arrays.fill(stack, sp - argc, sp, null);
+                        sp -= argc;
+                        stack[sp++] = function.call(root.getOutput(), args);
+                        break;
+                    }
+                    default:
+                        throw new JvsException("Unknown opcode " + code[ip - 1] + " in " + proto.name);
+                }
+            }
+        }
+    }
+
+    private static int u32(byte[] code, int ip) {
+        return (code[ip] & 0xFF) << 24 | (code[ip + 1] & 0xFF) << 16 | (code[ip + 2] & 0xFF) << 8 | (code[ip + 3] & 0xFF);
+    }
+
+    private static int binary(Object[] stack, int sp, Symbol operator) {
+        Object r = stack[--sp];
+        stack[sp - 1] = BinaryExpr.apply(operator, stack[sp - 1], r);
+        return sp;
+    }
+
+    private void checkArity(String kind, int id, int expected, int argc) {
+        if (argc != expected) {
+            throw new JvsException(kind + names.nameOf(id) + " expects " + expected + " arguments but got " + argc);
+        }
+    }
+
+    // 创建实例：字段按定义顺序取显式初始化值，否则调用默认值闭包，都没有则保留字段模板中的常量或null
+    private VmInstance instantiate(VmClass type, int[] ids, Object[] values) {
+        ClassDefinition definition = type.definition;
+        Object[] fields = definition.newFields();
+        for (int i = 0; i < fields.length; i++) {
+            int index = indexOf(ids, definition.fields.get(i).id);
+            if (index >= 0) {
+                fields[i] = values[index];
+            } else if (type.defaults[i] != null) {
+                fields[i] = call(type.defaults[i]);
+            }
+        }
+        return new VmInstance(type, fields);
+    }
+
+    private static int indexOf(int[] ids, int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) return i;
+        }
+        return -1;
+    }
+
+}
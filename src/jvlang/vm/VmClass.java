@@ -0,0 +1,23 @@
+package jvlang.vm;
+
+import jvlang.IdMap;
+import jvlang.stmt.ClassDefinition;
+
+/**
+ * 虚拟机中的类：方法与字段默认值都是在类定义处创建的闭包
+ * @author Yumerain
+ */
+final class VmClass {
+
+    final ClassDefinition definition;
+    // 方法名编号 → 方法闭包
+    final IdMap<Closure> methods = new IdMap<>();
+    // 字段默认值，顺序与definition.fields一致，无默认值为null
+    final Closure[] defaults;
+
+    VmClass(ClassDefinition definition, Closure[] defaults) {
+        this.definition = definition;
+        this.defaults = defaults;
+    }
+
+}
@@ -0,0 +1,18 @@
+package jvlang.vm;
+
+import jvlang.model.ClassInstance;
+
+/**
+ * 虚拟机创建的类实例，记录所属的VmClass以便查找方法闭包
+ * @author Yumerain
+ */
+final class VmInstance extends ClassInstance {
+
+    final VmClass type;
+
+    VmInstance(VmClass type, Object[] fields) {
+        super(type.definition, fields);
+        this.type = type;
+    }
+
+}